@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces local files at once, so that other threads and processes never
+ * read a partly written file and a crash never leaves one behind.
+ */
+final class AtomicFiles {
+
+  /**
+   * Writes the new contents of a file
+   */
+  interface Contents {
+    void writeTo(File file) throws IOException;
+  }
+
+  private AtomicFiles() {
+  }
+
+  /**
+   * Write the contents to a temporary file with a unique name next to the
+   * given file and move it in place of the file. The temporary file is
+   * removed if anything fails. Missing parent directories are created.
+   */
+  static void replace(File file, Contents contents) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    Files.createDirectories(dir.toPath());
+    // the prefix must have at least 3 characters
+    File tmp = File.createTempFile("." + file.getName() + ".", ".tmp", dir);
+    try {
+      contents.writeTo(tmp);
+      Files.move(tmp.toPath(), file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Drains a sequence of result batches on a background thread so that the
+ * request for the next page is already in flight while the current page is
+ * being consumed. At most depth fetched batches are buffered at any time.
+ */
+class BatchPrefetcher implements BatchSource {
+
+  private static final Object END_OF_DATA = new Object();
+
+  private final BlockingQueue<Object> buffer;
+  private final ExecutorService executor;
+  private boolean done;
+
+  BatchPrefetcher(final Iterator<ResultsBatch<Map<String, Object>>> batches,
+                  int depth) {
+    Preconditions.checkArgument(depth > 0,
+        "Prefetch depth must be positive, got %s", depth);
+    this.buffer = new ArrayBlockingQueue<>(depth);
+    this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("nav-batch-prefetcher-%d")
+        .setDaemon(true)
+        .build());
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          try {
+            while (batches.hasNext()) {
+              buffer.put(batches.next());
+            }
+            buffer.put(END_OF_DATA);
+          } catch (RuntimeException | Error e) {
+            // hand the failure over to the consumer
+            buffer.put(e);
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    executor.shutdown();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public ResultsBatch<Map<String, Object>> take() {
+    if (done) {
+      return null;
+    }
+    Object next;
+    try {
+      next = buffer.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+    if (next == END_OF_DATA) {
+      close();
+      return null;
+    }
+    if (next instanceof Throwable) {
+      close();
+      throw Throwables.propagate((Throwable) next);
+    }
+    return (ResultsBatch<Map<String, Object>>) next;
+  }
+
+  @Override
+  public void close() {
+    done = true;
+    executor.shutdownNow();
+    buffer.clear();
+  }
+}
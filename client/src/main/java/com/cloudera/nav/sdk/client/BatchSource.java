@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Source of result batches that are fetched in the background
+ */
+interface BatchSource extends Closeable {
+
+  /**
+   * Wait for the next batch. Failures while fetching are re-thrown here.
+   *
+   * @return the next batch or null if there are no more batches
+   */
+  ResultsBatch<Map<String, Object>> take();
+
+  /**
+   * Stop fetching and discard any buffered batches
+   */
+  @Override
+  void close();
+}
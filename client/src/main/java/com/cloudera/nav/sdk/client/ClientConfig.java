@@ -37,6 +37,50 @@ public class ClientConfig {
   private String sslTrustStoreType;
   private String sslTrustStoreLocation;
   private String sslTrustStorePassword;
+  private int prefetchDepth;
+  private int extractionParallelism = 1;
+  private boolean orderedExtraction = true;
+  private boolean streamingExtraction;
+  private int maxConnectionsPerRoute = 10;
+  private int maxConnections = 20;
+  private int connectTimeoutMillis = 30000;
+  private int readTimeoutMillis;
+  private long idleConnectionTimeoutMillis = 60000;
+  private long keepAliveMillis = 30000;
+  private int asyncWriteBatchSize = 1000;
+  private long asyncWriteFlushIntervalMillis = 1000;
+  private int asyncWriteMaxInFlight = 2;
+  private int asyncWriteQueueSize = 10000;
+  private boolean streamingWrites;
+  private int writeBatchSize = 5000;
+  private long writeBatchMaxBytes = 0;
+  private int writeMaxRetries = 2;
+  private long sourceCacheTtlMillis = 300000;
+  private int maxQueryLength = 32768;
+  private int lookupParallelism = 4;
+  private int lookupPageSize = 1000;
+  private int entityCacheMaxEntries = 0;
+  private long entityCacheMaxBytes = 64L * 1024 * 1024;
+  private long entityCacheTtlMillis = 300000;
+  private boolean adaptivePageSize = false;
+  private int minPageSize = 100;
+  private int maxPageSize = 50000;
+  private long pageTargetMillis = 2000;
+  private long pageTargetBytes = 32L * 1024 * 1024;
+  private boolean responseCompression = true;
+  private boolean writeCompression = false;
+  private int maxConcurrentRequests = 0;
+  private double maxRequestsPerSecond = 0;
+  private long targetRequestLatencyMillis = 0;
+  private int requestMaxRetries = 3;
+  private long retryBackoffMillis = 500;
+  private long retryMaxBackoffMillis = 30000;
+  private boolean requestHedging = false;
+  private String modelCacheDir;
+  private long modelCacheTtlMillis = 24L * 60 * 60 * 1000;
+  private boolean coalesceRelations;
+  private boolean skipUnchangedWrites;
+  private String writeDigestFile;
 
   /**
    * @return Location of Navigator
@@ -191,5 +235,552 @@ public class ClientConfig {
     this.sslTrustStoreType = sslTrustStoreType;
   }
 
+  /**
+   * @return number of result batches that are fetched ahead of the consumer
+   *         during extraction. 0 (the default) disables prefetching
+   */
+  public int getPrefetchDepth() {
+    return prefetchDepth;
+  }
+
+  public void setPrefetchDepth(int prefetchDepth) {
+    this.prefetchDepth = prefetchDepth;
+  }
+
+  /**
+   * @return maximum number of extractorRunId partitions that are queried
+   *         concurrently during extraction. 1 (the default) queries them one
+   *         after another
+   */
+  public int getExtractionParallelism() {
+    return extractionParallelism;
+  }
+
+  public void setExtractionParallelism(int extractionParallelism) {
+    this.extractionParallelism = extractionParallelism;
+  }
+
+  /**
+   * @return whether parallel extraction returns results in the same order as
+   *         serial extraction. If false, results are returned as soon as any
+   *         partition produces them
+   */
+  public boolean isOrderedExtraction() {
+    return orderedExtraction;
+  }
+
+  public void setOrderedExtraction(boolean orderedExtraction) {
+    this.orderedExtraction = orderedExtraction;
+  }
+
+  /**
+   * @return whether extraction parses each result batch from the response one
+   *         result at a time instead of reading the whole batch into memory.
+   *         Only applies when neither prefetching nor parallel extraction is
+   *         enabled
+   */
+  public boolean isStreamingExtraction() {
+    return streamingExtraction;
+  }
+
+  public void setStreamingExtraction(boolean streamingExtraction) {
+    this.streamingExtraction = streamingExtraction;
+  }
+
+  /**
+   * @return maximum number of pooled connections to the Navigator server
+   */
+  public int getMaxConnectionsPerRoute() {
+    return maxConnectionsPerRoute;
+  }
+
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+  }
+
+  /**
+   * @return maximum number of pooled connections across all routes
+   */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  /**
+   * @return timeout in milliseconds for establishing a connection, 0 for no
+   *         timeout
+   */
+  public int getConnectTimeoutMillis() {
+    return connectTimeoutMillis;
+  }
+
+  public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+  }
+
+  /**
+   * @return timeout in milliseconds between packets of a response, 0 (the
+   *         default) for no timeout
+   */
+  public int getReadTimeoutMillis() {
+    return readTimeoutMillis;
+  }
+
+  public void setReadTimeoutMillis(int readTimeoutMillis) {
+    this.readTimeoutMillis = readTimeoutMillis;
+  }
+
+  /**
+   * @return time in milliseconds after which idle pooled connections are
+   *         closed
+   */
+  public long getIdleConnectionTimeoutMillis() {
+    return idleConnectionTimeoutMillis;
+  }
+
+  public void setIdleConnectionTimeoutMillis(long idleConnectionTimeoutMillis) {
+    this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+  }
+
+  /**
+   * @return time in milliseconds to keep a connection alive when the server
+   *         does not specify a keep-alive timeout
+   */
+  public long getKeepAliveMillis() {
+    return keepAliveMillis;
+  }
+
+  public void setKeepAliveMillis(long keepAliveMillis) {
+    this.keepAliveMillis = keepAliveMillis;
+  }
+
+  /**
+   * @return number of entities and relations after which the asynchronous
+   *         writer sends a batch
+   */
+  public int getAsyncWriteBatchSize() {
+    return asyncWriteBatchSize;
+  }
+
+  public void setAsyncWriteBatchSize(int asyncWriteBatchSize) {
+    this.asyncWriteBatchSize = asyncWriteBatchSize;
+  }
+
+  /**
+   * @return maximum time in milliseconds a write waits in the asynchronous
+   *         writer before its batch is sent
+   */
+  public long getAsyncWriteFlushIntervalMillis() {
+    return asyncWriteFlushIntervalMillis;
+  }
+
+  public void setAsyncWriteFlushIntervalMillis(
+      long asyncWriteFlushIntervalMillis) {
+    this.asyncWriteFlushIntervalMillis = asyncWriteFlushIntervalMillis;
+  }
+
+  /**
+   * @return maximum number of batches the asynchronous writer sends
+   *         concurrently
+   */
+  public int getAsyncWriteMaxInFlight() {
+    return asyncWriteMaxInFlight;
+  }
+
+  public void setAsyncWriteMaxInFlight(int asyncWriteMaxInFlight) {
+    this.asyncWriteMaxInFlight = asyncWriteMaxInFlight;
+  }
+
+  /**
+   * @return maximum number of writes queued in the asynchronous writer before
+   *         producers are blocked
+   */
+  public int getAsyncWriteQueueSize() {
+    return asyncWriteQueueSize;
+  }
+
+  public void setAsyncWriteQueueSize(int asyncWriteQueueSize) {
+    this.asyncWriteQueueSize = asyncWriteQueueSize;
+  }
+
+  /**
+   * @return true if writes are serialized directly to a chunked request body
+   *         while walking the entity graph instead of being collected first
+   */
+  public boolean isStreamingWrites() {
+    return streamingWrites;
+  }
+
+  public void setStreamingWrites(boolean streamingWrites) {
+    this.streamingWrites = streamingWrites;
+  }
+
+  /**
+   * @return maximum number of entities and relations sent in a single write
+   *         request. Larger writes are split into several requests. 0 means
+   *         no limit
+   */
+  public int getWriteBatchSize() {
+    return writeBatchSize;
+  }
+
+  public void setWriteBatchSize(int writeBatchSize) {
+    this.writeBatchSize = writeBatchSize;
+  }
+
+  /**
+   * @return maximum estimated size in bytes of the serialized metadata sent
+   *         in a single write request. Estimating it serializes every entity
+   *         and relation an extra time. 0, the default, means no limit
+   */
+  public long getWriteBatchMaxBytes() {
+    return writeBatchMaxBytes;
+  }
+
+  public void setWriteBatchMaxBytes(long writeBatchMaxBytes) {
+    this.writeBatchMaxBytes = writeBatchMaxBytes;
+  }
+
+  /**
+   * @return number of times a write request that failed with an I/O error,
+   *         a 5xx or a 429 response is retried before the write fails
+   */
+  public int getWriteMaxRetries() {
+    return writeMaxRetries;
+  }
+
+  public void setWriteMaxRetries(int writeMaxRetries) {
+    this.writeMaxRetries = writeMaxRetries;
+  }
+
+  /**
+   * @return time after which the cached Navigator sources are reloaded. They
+   *         are refreshed in the background before that. 0 means never
+   */
+  public long getSourceCacheTtlMillis() {
+    return sourceCacheTtlMillis;
+  }
+
+  public void setSourceCacheTtlMillis(long sourceCacheTtlMillis) {
+    this.sourceCacheTtlMillis = sourceCacheTtlMillis;
+  }
+
+  /**
+   * @return maximum number of characters in the extractorRunId clause of an
+   *         extraction query, and of bytes in the value clause of a
+   *         TermsQueryIterable. Longer clauses are split into several
+   *         queries
+   */
+  public int getMaxQueryLength() {
+    return maxQueryLength;
+  }
+
+  public void setMaxQueryLength(int maxQueryLength) {
+    this.maxQueryLength = maxQueryLength;
+  }
+
+
+  /**
+   * @return maximum number of queries that NavApiCient.getEntities and
+   *         getRelationsByEndpoint run concurrently
+   */
+  public int getLookupParallelism() {
+    return lookupParallelism;
+  }
+
+  public void setLookupParallelism(int lookupParallelism) {
+    this.lookupParallelism = lookupParallelism;
+  }
+
+  /**
+   * @return number of results requested per page by the queries of
+   *         NavApiCient.getEntities and getRelationsByEndpoint. With adaptive
+   *         page sizing this is the size of the first page. Default 1000
+   */
+  public int getLookupPageSize() {
+    return lookupPageSize;
+  }
+
+  public void setLookupPageSize(int lookupPageSize) {
+    this.lookupPageSize = lookupPageSize;
+  }
 
+  /**
+   * @return maximum number of entities cached by NavApiCient for identity
+   *         lookups. 0 (the default) disables the cache
+   */
+  public int getEntityCacheMaxEntries() {
+    return entityCacheMaxEntries;
+  }
+
+  public void setEntityCacheMaxEntries(int entityCacheMaxEntries) {
+    this.entityCacheMaxEntries = entityCacheMaxEntries;
+  }
+
+  /**
+   * @return maximum estimated size in bytes of the entities cached by
+   *         NavApiCient
+   */
+  public long getEntityCacheMaxBytes() {
+    return entityCacheMaxBytes;
+  }
+
+  public void setEntityCacheMaxBytes(long entityCacheMaxBytes) {
+    this.entityCacheMaxBytes = entityCacheMaxBytes;
+  }
+
+  /**
+   * @return how long an entity stays cached in milliseconds, 0 to keep it
+   *         until it is evicted or invalidated
+   */
+  public long getEntityCacheTtlMillis() {
+    return entityCacheTtlMillis;
+  }
+
+  public void setEntityCacheTtlMillis(long entityCacheTtlMillis) {
+    this.entityCacheTtlMillis = entityCacheTtlMillis;
+  }
+
+  /**
+   * @return whether extraction adjusts the number of results requested per
+   *         page toward the page targets instead of always requesting the
+   *         given limit. The limit is the size of the first page. Also used
+   *         by identity lookups, not used by streaming extraction
+   */
+  public boolean isAdaptivePageSize() {
+    return adaptivePageSize;
+  }
+
+  public void setAdaptivePageSize(boolean adaptivePageSize) {
+    this.adaptivePageSize = adaptivePageSize;
+  }
+
+  /**
+   * @return smallest page size used by adaptive page sizing
+   */
+  public int getMinPageSize() {
+    return minPageSize;
+  }
+
+  public void setMinPageSize(int minPageSize) {
+    this.minPageSize = minPageSize;
+  }
+
+  /**
+   * @return largest page size used by adaptive page sizing
+   */
+  public int getMaxPageSize() {
+    return maxPageSize;
+  }
+
+  public void setMaxPageSize(int maxPageSize) {
+    this.maxPageSize = maxPageSize;
+  }
+
+  /**
+   * @return response time in milliseconds that adaptive page sizing aims for
+   */
+  public long getPageTargetMillis() {
+    return pageTargetMillis;
+  }
+
+  public void setPageTargetMillis(long pageTargetMillis) {
+    this.pageTargetMillis = pageTargetMillis;
+  }
+
+  /**
+   * @return estimated in-memory size of a page in bytes that adaptive page
+   *         sizing stays below
+   */
+  public long getPageTargetBytes() {
+    return pageTargetBytes;
+  }
+
+  public void setPageTargetBytes(long pageTargetBytes) {
+    this.pageTargetBytes = pageTargetBytes;
+  }
+
+  /**
+   * @return whether requests ask Navigator for gzip compressed responses,
+   *         which are decompressed transparently. Enabled by default
+   */
+  public boolean isResponseCompression() {
+    return responseCompression;
+  }
+
+  public void setResponseCompression(boolean responseCompression) {
+    this.responseCompression = responseCompression;
+  }
+
+  /**
+   * @return whether metadata writes send gzip compressed request bodies.
+   *         Requires a Navigator server that accepts them. Disabled by
+   *         default
+   */
+  public boolean isWriteCompression() {
+    return writeCompression;
+  }
+
+  public void setWriteCompression(boolean writeCompression) {
+    this.writeCompression = writeCompression;
+  }
+
+  /**
+   * @return maximum number of requests in flight to Navigator at once,
+   *         shared by all clients and writers talking to the same Navigator
+   *         URL with the same limits. Writers are limited too, although
+   *         they do not use the connection pool. The actual limit adapts to
+   *         the server's load. 0 (the default) for the maximum number of
+   *         connections per route, a negative value for no limit
+   */
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+    this.maxConcurrentRequests = maxConcurrentRequests;
+  }
+
+  /**
+   * @return maximum number of requests per second sent to Navigator by all
+   *         clients and writers talking to the same Navigator URL. 0 (the
+   *         default) for no limit
+   */
+  public double getMaxRequestsPerSecond() {
+    return maxRequestsPerSecond;
+  }
+
+  public void setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+  }
+
+  /**
+   * @return request latency in milliseconds above which the concurrency
+   *         limit is reduced. 0 (the default) to only reduce it when the
+   *         server reports overload
+   */
+  public long getTargetRequestLatencyMillis() {
+    return targetRequestLatencyMillis;
+  }
+
+  public void setTargetRequestLatencyMillis(long targetRequestLatencyMillis) {
+    this.targetRequestLatencyMillis = targetRequestLatencyMillis;
+  }
+
+  /**
+   * @return number of times a failed read-only request, such as fetching a
+   *         page of results or the sources, is retried. Default 3
+   */
+  public int getRequestMaxRetries() {
+    return requestMaxRetries;
+  }
+
+  public void setRequestMaxRetries(int requestMaxRetries) {
+    this.requestMaxRetries = requestMaxRetries;
+  }
+
+  /**
+   * @return upper bound in milliseconds of the randomized wait before the
+   *         first retry of a read-only request, doubled for every further
+   *         retry. Default 500
+   */
+  public long getRetryBackoffMillis() {
+    return retryBackoffMillis;
+  }
+
+  public void setRetryBackoffMillis(long retryBackoffMillis) {
+    this.retryBackoffMillis = retryBackoffMillis;
+  }
+
+  /**
+   * @return maximum wait in milliseconds before a retry. Default 30000
+   */
+  public long getRetryMaxBackoffMillis() {
+    return retryMaxBackoffMillis;
+  }
+
+  public void setRetryMaxBackoffMillis(long retryMaxBackoffMillis) {
+    this.retryMaxBackoffMillis = retryMaxBackoffMillis;
+  }
+
+  /**
+   * @return whether a second copy of a read-only request is sent when the
+   *         first takes longer than 95% of recent requests, using whichever
+   *         answers first. Default false
+   */
+  public boolean isRequestHedging() {
+    return requestHedging;
+  }
+
+  public void setRequestHedging(boolean requestHedging) {
+    this.requestHedging = requestHedging;
+  }
+
+  /**
+   * @return directory where registered models are remembered, so that
+   *         processes registering the same models only send what changed
+   *         since. Not set (the default) to always register all models
+   */
+  public String getModelCacheDir() {
+    return modelCacheDir;
+  }
+
+  public void setModelCacheDir(String modelCacheDir) {
+    this.modelCacheDir = modelCacheDir;
+  }
+
+  /**
+   * @return time in milliseconds after which remembered models are
+   *         registered in full again, 0 to never. Default one day
+   */
+  public long getModelCacheTtlMillis() {
+    return modelCacheTtlMillis;
+  }
+
+  public void setModelCacheTtlMillis(long modelCacheTtlMillis) {
+    this.modelCacheTtlMillis = modelCacheTtlMillis;
+  }
+
+  /**
+   * @return whether relations implied by @MRelation annotations that share
+   *         their type and first endpoint are merged into a single relation
+   *         before being written
+   */
+  public boolean isCoalesceRelations() {
+    return coalesceRelations;
+  }
+
+  public void setCoalesceRelations(boolean coalesceRelations) {
+    this.coalesceRelations = coalesceRelations;
+  }
+
+  /**
+   * @return whether NavigatorPlugin.write leaves out entities and relations
+   *         that have not changed since they were last written successfully.
+   *         Cannot be combined with streaming writes. Default false
+   */
+  public boolean isSkipUnchangedWrites() {
+    return skipUnchangedWrites;
+  }
+
+  public void setSkipUnchangedWrites(boolean skipUnchangedWrites) {
+    this.skipUnchangedWrites = skipUnchangedWrites;
+  }
+
+  /**
+   * @return file where the digests of written entities and relations are
+   *         kept between runs when skipping unchanged writes, separately
+   *         for each Navigator URL and namespace. Not set (the default) to
+   *         only remember them in memory
+   */
+  public String getWriteDigestFile() {
+    return writeDigestFile;
+  }
+
+  public void setWriteDigestFile(String writeDigestFile) {
+    this.writeDigestFile = writeDigestFile;
+  }
 }
@@ -40,6 +40,60 @@ public class ClientConfigFactory {
   public static final String DISABLE_SSL_VALIDATION = "disable_ssl_validation";
   public static final String SSL_KEYSTORE_LOCATION = "ssl_truststore_location";
   public static final String SSL_KEYSTORE_PASSWORD = "ssl_truststore_password";
+  public static final String PREFETCH_DEPTH = "extraction_prefetch_depth";
+  public static final String EXTRACTION_PARALLELISM = "extraction_parallelism";
+  public static final String ORDERED_EXTRACTION = "extraction_ordered";
+  public static final String STREAMING_EXTRACTION = "extraction_streaming";
+  public static final String MAX_CONNECTIONS_PER_ROUTE =
+      "http_max_connections_per_route";
+  public static final String MAX_CONNECTIONS = "http_max_connections";
+  public static final String CONNECT_TIMEOUT = "http_connect_timeout_ms";
+  public static final String READ_TIMEOUT = "http_read_timeout_ms";
+  public static final String IDLE_CONNECTION_TIMEOUT =
+      "http_idle_connection_timeout_ms";
+  public static final String KEEP_ALIVE = "http_keep_alive_ms";
+  public static final String ASYNC_WRITE_BATCH_SIZE = "async_write_batch_size";
+  public static final String ASYNC_WRITE_FLUSH_INTERVAL =
+      "async_write_flush_interval_ms";
+  public static final String ASYNC_WRITE_MAX_IN_FLIGHT =
+      "async_write_max_in_flight";
+  public static final String ASYNC_WRITE_QUEUE_SIZE = "async_write_queue_size";
+  public static final String STREAMING_WRITES = "streaming_writes";
+  public static final String WRITE_BATCH_SIZE = "write_batch_size";
+  public static final String WRITE_BATCH_MAX_BYTES = "write_batch_max_bytes";
+  public static final String WRITE_MAX_RETRIES = "write_max_retries";
+  public static final String SOURCE_CACHE_TTL = "source_cache_ttl_ms";
+  public static final String MAX_QUERY_LENGTH = "extraction_max_query_length";
+  public static final String LOOKUP_PARALLELISM = "lookup_parallelism";
+  public static final String LOOKUP_PAGE_SIZE = "lookup_page_size";
+  public static final String ENTITY_CACHE_MAX_ENTRIES =
+      "entity_cache_max_entries";
+  public static final String ENTITY_CACHE_MAX_BYTES = "entity_cache_max_bytes";
+  public static final String ENTITY_CACHE_TTL = "entity_cache_ttl_ms";
+  public static final String ADAPTIVE_PAGE_SIZE =
+      "extraction_adaptive_page_size";
+  public static final String MIN_PAGE_SIZE = "extraction_min_page_size";
+  public static final String MAX_PAGE_SIZE = "extraction_max_page_size";
+  public static final String PAGE_TARGET_MILLIS = "extraction_page_target_ms";
+  public static final String PAGE_TARGET_BYTES =
+      "extraction_page_target_bytes";
+  public static final String RESPONSE_COMPRESSION = "response_compression";
+  public static final String WRITE_COMPRESSION = "write_compression";
+  public static final String MAX_CONCURRENT_REQUESTS =
+      "max_concurrent_requests";
+  public static final String MAX_REQUESTS_PER_SECOND =
+      "max_requests_per_second";
+  public static final String TARGET_REQUEST_LATENCY =
+      "target_request_latency_ms";
+  public static final String REQUEST_MAX_RETRIES = "request_max_retries";
+  public static final String RETRY_BACKOFF = "retry_backoff_ms";
+  public static final String RETRY_MAX_BACKOFF = "retry_max_backoff_ms";
+  public static final String REQUEST_HEDGING = "request_hedging";
+  public static final String MODEL_CACHE_DIR = "model_cache_dir";
+  public static final String MODEL_CACHE_TTL = "model_cache_ttl_ms";
+  public static final String COALESCE_RELATIONS = "coalesce_relations";
+  public static final String SKIP_UNCHANGED_WRITES = "skip_unchanged_writes";
+  public static final String WRITE_DIGEST_FILE = "write_digest_file";
     /**
    * Create a PluginConfiguration from the properties contained in the
    * given filePath
@@ -66,6 +120,95 @@ public class ClientConfigFactory {
           null));
       config.setSSLTrustStorePassword(props.getString(SSL_KEYSTORE_PASSWORD,
           null));
+      config.setPrefetchDepth(props.getInt(PREFETCH_DEPTH,
+          config.getPrefetchDepth()));
+      config.setExtractionParallelism(props.getInt(EXTRACTION_PARALLELISM,
+          config.getExtractionParallelism()));
+      config.setOrderedExtraction(props.getBoolean(ORDERED_EXTRACTION,
+          config.isOrderedExtraction()));
+      config.setStreamingExtraction(props.getBoolean(STREAMING_EXTRACTION,
+          config.isStreamingExtraction()));
+      config.setMaxConnectionsPerRoute(props.getInt(MAX_CONNECTIONS_PER_ROUTE,
+          config.getMaxConnectionsPerRoute()));
+      config.setMaxConnections(props.getInt(MAX_CONNECTIONS,
+          config.getMaxConnections()));
+      config.setConnectTimeoutMillis(props.getInt(CONNECT_TIMEOUT,
+          config.getConnectTimeoutMillis()));
+      config.setReadTimeoutMillis(props.getInt(READ_TIMEOUT,
+          config.getReadTimeoutMillis()));
+      config.setIdleConnectionTimeoutMillis(props.getLong(
+          IDLE_CONNECTION_TIMEOUT, config.getIdleConnectionTimeoutMillis()));
+      config.setKeepAliveMillis(props.getLong(KEEP_ALIVE,
+          config.getKeepAliveMillis()));
+      config.setAsyncWriteBatchSize(props.getInt(ASYNC_WRITE_BATCH_SIZE,
+          config.getAsyncWriteBatchSize()));
+      config.setAsyncWriteFlushIntervalMillis(props.getLong(
+          ASYNC_WRITE_FLUSH_INTERVAL,
+          config.getAsyncWriteFlushIntervalMillis()));
+      config.setAsyncWriteMaxInFlight(props.getInt(ASYNC_WRITE_MAX_IN_FLIGHT,
+          config.getAsyncWriteMaxInFlight()));
+      config.setAsyncWriteQueueSize(props.getInt(ASYNC_WRITE_QUEUE_SIZE,
+          config.getAsyncWriteQueueSize()));
+      config.setStreamingWrites(props.getBoolean(STREAMING_WRITES,
+          config.isStreamingWrites()));
+      config.setWriteBatchSize(props.getInt(WRITE_BATCH_SIZE,
+          config.getWriteBatchSize()));
+      config.setWriteBatchMaxBytes(props.getLong(WRITE_BATCH_MAX_BYTES,
+          config.getWriteBatchMaxBytes()));
+      config.setWriteMaxRetries(props.getInt(WRITE_MAX_RETRIES,
+          config.getWriteMaxRetries()));
+      config.setSourceCacheTtlMillis(props.getLong(SOURCE_CACHE_TTL,
+          config.getSourceCacheTtlMillis()));
+      config.setMaxQueryLength(props.getInt(MAX_QUERY_LENGTH,
+          config.getMaxQueryLength()));
+      config.setLookupParallelism(props.getInt(LOOKUP_PARALLELISM,
+          config.getLookupParallelism()));
+      config.setLookupPageSize(props.getInt(LOOKUP_PAGE_SIZE,
+          config.getLookupPageSize()));
+      config.setEntityCacheMaxEntries(props.getInt(ENTITY_CACHE_MAX_ENTRIES,
+          config.getEntityCacheMaxEntries()));
+      config.setEntityCacheMaxBytes(props.getLong(ENTITY_CACHE_MAX_BYTES,
+          config.getEntityCacheMaxBytes()));
+      config.setEntityCacheTtlMillis(props.getLong(ENTITY_CACHE_TTL,
+          config.getEntityCacheTtlMillis()));
+      config.setAdaptivePageSize(props.getBoolean(ADAPTIVE_PAGE_SIZE,
+          config.isAdaptivePageSize()));
+      config.setMinPageSize(props.getInt(MIN_PAGE_SIZE,
+          config.getMinPageSize()));
+      config.setMaxPageSize(props.getInt(MAX_PAGE_SIZE,
+          config.getMaxPageSize()));
+      config.setPageTargetMillis(props.getLong(PAGE_TARGET_MILLIS,
+          config.getPageTargetMillis()));
+      config.setPageTargetBytes(props.getLong(PAGE_TARGET_BYTES,
+          config.getPageTargetBytes()));
+      config.setResponseCompression(props.getBoolean(RESPONSE_COMPRESSION,
+          config.isResponseCompression()));
+      config.setWriteCompression(props.getBoolean(WRITE_COMPRESSION,
+          config.isWriteCompression()));
+      config.setMaxConcurrentRequests(props.getInt(MAX_CONCURRENT_REQUESTS,
+          config.getMaxConcurrentRequests()));
+      config.setMaxRequestsPerSecond(props.getDouble(MAX_REQUESTS_PER_SECOND,
+          config.getMaxRequestsPerSecond()));
+      config.setTargetRequestLatencyMillis(props.getLong(
+          TARGET_REQUEST_LATENCY, config.getTargetRequestLatencyMillis()));
+      config.setRequestMaxRetries(props.getInt(REQUEST_MAX_RETRIES,
+          config.getRequestMaxRetries()));
+      config.setRetryBackoffMillis(props.getLong(RETRY_BACKOFF,
+          config.getRetryBackoffMillis()));
+      config.setRetryMaxBackoffMillis(props.getLong(RETRY_MAX_BACKOFF,
+          config.getRetryMaxBackoffMillis()));
+      config.setRequestHedging(props.getBoolean(REQUEST_HEDGING,
+          config.isRequestHedging()));
+      config.setModelCacheDir(props.getString(MODEL_CACHE_DIR,
+          config.getModelCacheDir()));
+      config.setModelCacheTtlMillis(props.getLong(MODEL_CACHE_TTL,
+          config.getModelCacheTtlMillis()));
+      config.setCoalesceRelations(props.getBoolean(COALESCE_RELATIONS,
+          config.isCoalesceRelations()));
+      config.setSkipUnchangedWrites(props.getBoolean(SKIP_UNCHANGED_WRITES,
+          config.isSkipUnchangedWrites()));
+      config.setWriteDigestFile(props.getString(WRITE_DIGEST_FILE,
+          config.getWriteDigestFile()));
       return config;
     } catch (ConfigurationException e) {
       throw Throwables.propagate(e);
@@ -92,6 +235,180 @@ public class ClientConfigFactory {
         props.get(SSL_KEYSTORE_LOCATION).toString() : null);
     config.setSSLTrustStorePassword(props.containsKey(SSL_KEYSTORE_PASSWORD) ?
         props.get(SSL_KEYSTORE_PASSWORD).toString() : null);
+    if (props.containsKey(PREFETCH_DEPTH)) {
+      config.setPrefetchDepth(Integer.valueOf(
+          props.get(PREFETCH_DEPTH).toString()));
+    }
+    if (props.containsKey(EXTRACTION_PARALLELISM)) {
+      config.setExtractionParallelism(Integer.valueOf(
+          props.get(EXTRACTION_PARALLELISM).toString()));
+    }
+    if (props.containsKey(ORDERED_EXTRACTION)) {
+      config.setOrderedExtraction(Boolean.valueOf(
+          props.get(ORDERED_EXTRACTION).toString()));
+    }
+    if (props.containsKey(STREAMING_EXTRACTION)) {
+      config.setStreamingExtraction(Boolean.valueOf(
+          props.get(STREAMING_EXTRACTION).toString()));
+    }
+    if (props.containsKey(MAX_CONNECTIONS_PER_ROUTE)) {
+      config.setMaxConnectionsPerRoute(Integer.valueOf(
+          props.get(MAX_CONNECTIONS_PER_ROUTE).toString()));
+    }
+    if (props.containsKey(MAX_CONNECTIONS)) {
+      config.setMaxConnections(Integer.valueOf(
+          props.get(MAX_CONNECTIONS).toString()));
+    }
+    if (props.containsKey(CONNECT_TIMEOUT)) {
+      config.setConnectTimeoutMillis(Integer.valueOf(
+          props.get(CONNECT_TIMEOUT).toString()));
+    }
+    if (props.containsKey(READ_TIMEOUT)) {
+      config.setReadTimeoutMillis(Integer.valueOf(
+          props.get(READ_TIMEOUT).toString()));
+    }
+    if (props.containsKey(IDLE_CONNECTION_TIMEOUT)) {
+      config.setIdleConnectionTimeoutMillis(Long.valueOf(
+          props.get(IDLE_CONNECTION_TIMEOUT).toString()));
+    }
+    if (props.containsKey(KEEP_ALIVE)) {
+      config.setKeepAliveMillis(Long.valueOf(
+          props.get(KEEP_ALIVE).toString()));
+    }
+    if (props.containsKey(ASYNC_WRITE_BATCH_SIZE)) {
+      config.setAsyncWriteBatchSize(Integer.valueOf(
+          props.get(ASYNC_WRITE_BATCH_SIZE).toString()));
+    }
+    if (props.containsKey(ASYNC_WRITE_FLUSH_INTERVAL)) {
+      config.setAsyncWriteFlushIntervalMillis(Long.valueOf(
+          props.get(ASYNC_WRITE_FLUSH_INTERVAL).toString()));
+    }
+    if (props.containsKey(ASYNC_WRITE_MAX_IN_FLIGHT)) {
+      config.setAsyncWriteMaxInFlight(Integer.valueOf(
+          props.get(ASYNC_WRITE_MAX_IN_FLIGHT).toString()));
+    }
+    if (props.containsKey(ASYNC_WRITE_QUEUE_SIZE)) {
+      config.setAsyncWriteQueueSize(Integer.valueOf(
+          props.get(ASYNC_WRITE_QUEUE_SIZE).toString()));
+    }
+    if (props.containsKey(STREAMING_WRITES)) {
+      config.setStreamingWrites(Boolean.valueOf(
+          props.get(STREAMING_WRITES).toString()));
+    }
+    if (props.containsKey(WRITE_BATCH_SIZE)) {
+      config.setWriteBatchSize(Integer.valueOf(
+          props.get(WRITE_BATCH_SIZE).toString()));
+    }
+    if (props.containsKey(WRITE_BATCH_MAX_BYTES)) {
+      config.setWriteBatchMaxBytes(Long.valueOf(
+          props.get(WRITE_BATCH_MAX_BYTES).toString()));
+    }
+    if (props.containsKey(WRITE_MAX_RETRIES)) {
+      config.setWriteMaxRetries(Integer.valueOf(
+          props.get(WRITE_MAX_RETRIES).toString()));
+    }
+    if (props.containsKey(SOURCE_CACHE_TTL)) {
+      config.setSourceCacheTtlMillis(Long.valueOf(
+          props.get(SOURCE_CACHE_TTL).toString()));
+    }
+    if (props.containsKey(MAX_QUERY_LENGTH)) {
+      config.setMaxQueryLength(Integer.valueOf(
+          props.get(MAX_QUERY_LENGTH).toString()));
+    }
+    if (props.containsKey(LOOKUP_PARALLELISM)) {
+      config.setLookupParallelism(Integer.valueOf(
+          props.get(LOOKUP_PARALLELISM).toString()));
+    }
+    if (props.containsKey(LOOKUP_PAGE_SIZE)) {
+      config.setLookupPageSize(Integer.valueOf(
+          props.get(LOOKUP_PAGE_SIZE).toString()));
+    }
+    if (props.containsKey(ENTITY_CACHE_MAX_ENTRIES)) {
+      config.setEntityCacheMaxEntries(Integer.valueOf(
+          props.get(ENTITY_CACHE_MAX_ENTRIES).toString()));
+    }
+    if (props.containsKey(ENTITY_CACHE_MAX_BYTES)) {
+      config.setEntityCacheMaxBytes(Long.valueOf(
+          props.get(ENTITY_CACHE_MAX_BYTES).toString()));
+    }
+    if (props.containsKey(ENTITY_CACHE_TTL)) {
+      config.setEntityCacheTtlMillis(Long.valueOf(
+          props.get(ENTITY_CACHE_TTL).toString()));
+    }
+    if (props.containsKey(ADAPTIVE_PAGE_SIZE)) {
+      config.setAdaptivePageSize(Boolean.valueOf(
+          props.get(ADAPTIVE_PAGE_SIZE).toString()));
+    }
+    if (props.containsKey(MIN_PAGE_SIZE)) {
+      config.setMinPageSize(Integer.valueOf(
+          props.get(MIN_PAGE_SIZE).toString()));
+    }
+    if (props.containsKey(MAX_PAGE_SIZE)) {
+      config.setMaxPageSize(Integer.valueOf(
+          props.get(MAX_PAGE_SIZE).toString()));
+    }
+    if (props.containsKey(PAGE_TARGET_MILLIS)) {
+      config.setPageTargetMillis(Long.valueOf(
+          props.get(PAGE_TARGET_MILLIS).toString()));
+    }
+    if (props.containsKey(PAGE_TARGET_BYTES)) {
+      config.setPageTargetBytes(Long.valueOf(
+          props.get(PAGE_TARGET_BYTES).toString()));
+    }
+    if (props.containsKey(RESPONSE_COMPRESSION)) {
+      config.setResponseCompression(Boolean.valueOf(
+          props.get(RESPONSE_COMPRESSION).toString()));
+    }
+    if (props.containsKey(WRITE_COMPRESSION)) {
+      config.setWriteCompression(Boolean.valueOf(
+          props.get(WRITE_COMPRESSION).toString()));
+    }
+    if (props.containsKey(MAX_CONCURRENT_REQUESTS)) {
+      config.setMaxConcurrentRequests(Integer.valueOf(
+          props.get(MAX_CONCURRENT_REQUESTS).toString()));
+    }
+    if (props.containsKey(MAX_REQUESTS_PER_SECOND)) {
+      config.setMaxRequestsPerSecond(Double.valueOf(
+          props.get(MAX_REQUESTS_PER_SECOND).toString()));
+    }
+    if (props.containsKey(TARGET_REQUEST_LATENCY)) {
+      config.setTargetRequestLatencyMillis(Long.valueOf(
+          props.get(TARGET_REQUEST_LATENCY).toString()));
+    }
+    if (props.containsKey(REQUEST_MAX_RETRIES)) {
+      config.setRequestMaxRetries(Integer.valueOf(
+          props.get(REQUEST_MAX_RETRIES).toString()));
+    }
+    if (props.containsKey(RETRY_BACKOFF)) {
+      config.setRetryBackoffMillis(Long.valueOf(
+          props.get(RETRY_BACKOFF).toString()));
+    }
+    if (props.containsKey(RETRY_MAX_BACKOFF)) {
+      config.setRetryMaxBackoffMillis(Long.valueOf(
+          props.get(RETRY_MAX_BACKOFF).toString()));
+    }
+    if (props.containsKey(REQUEST_HEDGING)) {
+      config.setRequestHedging(Boolean.valueOf(
+          props.get(REQUEST_HEDGING).toString()));
+    }
+    if (props.containsKey(MODEL_CACHE_DIR)) {
+      config.setModelCacheDir(props.get(MODEL_CACHE_DIR).toString());
+    }
+    if (props.containsKey(MODEL_CACHE_TTL)) {
+      config.setModelCacheTtlMillis(Long.valueOf(
+          props.get(MODEL_CACHE_TTL).toString()));
+    }
+    if (props.containsKey(COALESCE_RELATIONS)) {
+      config.setCoalesceRelations(Boolean.valueOf(
+          props.get(COALESCE_RELATIONS).toString()));
+    }
+    if (props.containsKey(SKIP_UNCHANGED_WRITES)) {
+      config.setSkipUnchangedWrites(Boolean.valueOf(
+          props.get(SKIP_UNCHANGED_WRITES).toString()));
+    }
+    if (props.containsKey(WRITE_DIGEST_FILE)) {
+      config.setWriteDigestFile(props.get(WRITE_DIGEST_FILE).toString());
+    }
     return config;
   }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Limits the number of requests in flight to Navigator and optionally their
+ * rate. The concurrency limit adapts to the server: it is halved whenever a
+ * request is rejected as overloaded (HTTP 429 or 503) or times out, and
+ * reduced by a tenth when a request takes longer than the target latency.
+ * Every other successful request raises it by 1/limit, so it grows by about
+ * one per round of requests until it reaches the configured maximum.
+ *
+ * All clients and writers that talk to the same Navigator server with the
+ * same limits share one limiter, see {@link #forConfig(ClientConfig)}. This
+ * includes metadata writes, which do not use the client's connection pool.
+ */
+public class ConcurrencyLimiter {
+
+  private static final double OVERLOAD_BACKOFF = 0.5;
+  private static final double LATENCY_BACKOFF = 0.9;
+  // by Navigator URL and limits
+  private static final Map<List<Object>, ConcurrencyLimiter> SHARED =
+      Maps.newHashMap();
+
+  private final int maxLimit;
+  private final long targetLatencyNanos;
+  private final RateLimiter rateLimiter;
+  private double limit;
+  private int inFlight;
+
+  /**
+   * @return the limiter shared by everything that talks to the Navigator
+   *         server of the given configuration with the same
+   *         max_concurrent_requests, max_requests_per_second and
+   *         target_request_latency_ms settings, created on first use.
+   *         Configurations with other settings get their own limiter
+   */
+  public static ConcurrencyLimiter forConfig(ClientConfig config) {
+    int maxLimit = config.getMaxConcurrentRequests();
+    if (maxLimit == 0) {
+      // as many as the connection pool sends to the server at once
+      maxLimit = config.getMaxConnectionsPerRoute();
+    }
+    maxLimit = Math.max(maxLimit, 0);
+    List<Object> key = Arrays.<Object>asList(
+        StringUtils.removeEnd(config.getNavigatorUrl(), "/"), maxLimit,
+        config.getMaxRequestsPerSecond(),
+        config.getTargetRequestLatencyMillis());
+    synchronized (SHARED) {
+      ConcurrencyLimiter limiter = SHARED.get(key);
+      if (limiter == null) {
+        limiter = new ConcurrencyLimiter(maxLimit,
+            config.getMaxRequestsPerSecond(),
+            config.getTargetRequestLatencyMillis());
+        SHARED.put(key, limiter);
+      }
+      return limiter;
+    }
+  }
+
+  /**
+   * Forget all shared limiters. Clients and writers created afterwards get
+   * new ones, those created before keep using theirs
+   */
+  public static void clearShared() {
+    synchronized (SHARED) {
+      SHARED.clear();
+    }
+  }
+
+  /**
+   * @param maxLimit maximum number of requests in flight, 0 for no limit
+   * @param maxRequestsPerSecond maximum rate of requests, 0 for no limit
+   * @param targetLatencyMillis latency above which the limit is reduced,
+   *                            0 to only react to overload responses
+   */
+  public ConcurrencyLimiter(int maxLimit, double maxRequestsPerSecond,
+                            long targetLatencyMillis) {
+    Preconditions.checkArgument(maxLimit >= 0 && maxRequestsPerSecond >= 0 &&
+        targetLatencyMillis >= 0, "Request limits must not be negative");
+    this.maxLimit = maxLimit > 0 ? maxLimit : Integer.MAX_VALUE;
+    this.limit = this.maxLimit;
+    this.targetLatencyNanos =
+        TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    this.rateLimiter = maxRequestsPerSecond > 0 ?
+        RateLimiter.create(maxRequestsPerSecond) : null;
+  }
+
+  /**
+   * Wait until another request may be sent. Every call must be followed by
+   * a call to {@link #release(long, boolean)} once the response has arrived.
+   */
+  public void acquire() {
+    synchronized (this) {
+      try {
+        while (inFlight >= (int) limit) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      }
+      inFlight++;
+    }
+    if (rateLimiter != null) {
+      rateLimiter.acquire();
+    }
+  }
+
+  /**
+   * Record the outcome of a request sent after {@link #acquire()}.
+   *
+   * @param latencyNanos time from sending the request to its response
+   * @param overloaded whether the server rejected the request as overloaded
+   *                   or it timed out
+   */
+  public synchronized void release(long latencyNanos, boolean overloaded) {
+    Preconditions.checkState(inFlight > 0, "No request in flight");
+    inFlight--;
+    if (maxLimit != Integer.MAX_VALUE) {
+      if (overloaded) {
+        limit = Math.max(1, limit * OVERLOAD_BACKOFF);
+      } else if (targetLatencyNanos > 0 && latencyNanos > targetLatencyNanos) {
+        limit = Math.max(1, limit * LATENCY_BACKOFF);
+      } else {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+    }
+    notifyAll();
+  }
+
+  /**
+   * @return whether the given HTTP status means the server is overloaded
+   */
+  public static boolean isOverloadStatus(int status) {
+    return status == 429 || status == 503;
+  }
+
+  /**
+   * @return current number of requests allowed in flight
+   */
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  /**
+   * @return number of requests in flight
+   */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+}
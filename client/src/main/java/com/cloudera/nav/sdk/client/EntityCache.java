@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe cache of entities by identity. The least recently used
+ * entities are evicted once the cache holds more than the maximum number of
+ * entries or the estimated size of the cached entities exceeds the maximum
+ * number of bytes. Entities expire after the configured TTL. The cache holds
+ * unmodifiable copies of the entities, which are shared between callers.
+ */
+public class EntityCache {
+
+  private static class Entry {
+    private final Map<String, Object> entity;
+    private final long weight;
+    private final long loadedAt;
+
+    private Entry(Map<String, Object> entity, long weight, long loadedAt) {
+      this.entity = entity;
+      this.weight = weight;
+      this.loadedAt = loadedAt;
+    }
+  }
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long ttlNanos;
+  private final Ticker ticker;
+  // access order makes the first entry the least recently used one
+  private final LinkedHashMap<String, Entry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long weight;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+  private long generation;
+
+  /**
+   * @param maxEntries maximum number of cached entities
+   * @param maxBytes maximum estimated size of the cached entities
+   * @param ttlMillis how long an entity is cached, 0 to never expire
+   */
+  public EntityCache(int maxEntries, long maxBytes, long ttlMillis) {
+    this(maxEntries, maxBytes, ttlMillis, Ticker.systemTicker());
+  }
+
+  EntityCache(int maxEntries, long maxBytes, long ttlMillis, Ticker ticker) {
+    Preconditions.checkArgument(maxEntries > 0,
+        "Maximum entries must be positive, got %s", maxEntries);
+    Preconditions.checkArgument(maxBytes > 0,
+        "Maximum bytes must be positive, got %s", maxBytes);
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.ticker = ticker;
+  }
+
+  /**
+   * @return unmodifiable copy of the cached entity with the given identity,
+   *         or null if it is not cached or has expired
+   */
+  public synchronized Map<String, Object> get(String identity) {
+    Entry entry = entries.get(identity);
+    if (entry != null && isExpired(entry)) {
+      remove(identity);
+      entry = null;
+    }
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.entity;
+  }
+
+  /**
+   * Cache a copy of the given entity under its identity. Entities larger
+   * than the maximum number of bytes are not cached.
+   */
+  public synchronized void put(String identity, Map<String, Object> entity) {
+    put(identity, entity, generation);
+  }
+
+  /**
+   * Cache a copy of the given entity under its identity unless entities have
+   * been invalidated since {@link #getGeneration()} returned the given
+   * generation, i.e. while the entity was being fetched. Entities larger
+   * than the maximum number of bytes are not cached.
+   */
+  public synchronized void put(String identity, Map<String, Object> entity,
+                               long fetchGeneration) {
+    if (fetchGeneration != generation) {
+      return;
+    }
+    remove(identity);
+    long entityWeight = estimateBytes(identity) + estimateBytes(entity);
+    if (entityWeight > maxBytes) {
+      return;
+    }
+    entries.put(identity, new Entry(copyOf(entity), entityWeight,
+        ticker.read()));
+    weight += entityWeight;
+    Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+    while (entries.size() > maxEntries || weight > maxBytes) {
+      weight -= eldest.next().getValue().weight;
+      eldest.remove();
+      evictionCount++;
+    }
+  }
+
+  /**
+   * Remove the entities with the given identities, e.g. after they have been
+   * written
+   */
+  public synchronized void invalidate(Collection<String> identities) {
+    generation++;
+    for (String identity : identities) {
+      remove(identity);
+    }
+  }
+
+  /**
+   * Remove all cached entities
+   */
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+    weight = 0;
+  }
+
+  /**
+   * @return number of invalidations so far. Read it before fetching entities
+   *         and pass it to {@link #put(String, Map, long)}
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * @return number of cached entities, including expired ones that have not
+   *         been removed yet
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return estimated size of the cached entities in bytes
+   */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return hits, misses and evictions so far. Loads are not tracked
+   */
+  public synchronized CacheStats stats() {
+    return new CacheStats(hitCount, missCount, 0, 0, 0, evictionCount);
+  }
+
+  private boolean isExpired(Entry entry) {
+    return ttlNanos > 0 && ticker.read() - entry.loadedAt >= ttlNanos;
+  }
+
+  private void remove(String identity) {
+    Entry entry = entries.remove(identity);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  private static Map<String, Object> copyOf(Map<String, ?> entity) {
+    Map<String, Object> copy = new LinkedHashMap<>();
+    for (Map.Entry<String, ?> e : entity.entrySet()) {
+      copy.put(e.getKey(), copyOf(e.getValue()));
+    }
+    return Collections.unmodifiableMap(copy);
+  }
+
+  // JSON values may hold null, which the immutable collections reject
+  private static Object copyOf(Object value) {
+    if (value instanceof Map) {
+      Map<Object, Object> copy = new LinkedHashMap<>();
+      for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+        copy.put(e.getKey(), copyOf(e.getValue()));
+      }
+      return Collections.unmodifiableMap(copy);
+    } else if (value instanceof Collection) {
+      List<Object> copy = new ArrayList<>();
+      for (Object element : (Collection<?>) value) {
+        copy.add(copyOf(element));
+      }
+      return Collections.unmodifiableList(copy);
+    }
+    return value;
+  }
+
+  /**
+   * Rough heap size of a value parsed from JSON
+   */
+  static long estimateBytes(Object value) {
+    if (value instanceof String) {
+      return 40 + 2 * ((String) value).length();
+    } else if (value instanceof Map) {
+      long bytes = 48;
+      for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+        bytes += 32 + estimateBytes(e.getKey()) + estimateBytes(e.getValue());
+      }
+      return bytes;
+    } else if (value instanceof Collection) {
+      long bytes = 40;
+      for (Object element : (Collection<?>) value) {
+        bytes += 8 + estimateBytes(element);
+      }
+      return bytes;
+    }
+    return 16;
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Throwables;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Local file that records how far each extraction has progressed so that an
+ * interrupted extraction can be resumed instead of started over. For each
+ * key (one per MetadataIterable), the index of the current extractorRunId
+ * partition, the cursorMark of the current batch and the number of results
+ * delivered before it are kept, along with a signature of the query they
+ * belong to. The file is rewritten atomically on every update.
+ *
+ * Checkpoints are taken at batch boundaries, so a resumed extraction may
+ * deliver again the results of the batch that was being consumed when the
+ * previous extraction stopped.
+ *
+ * A file holds the progress of a single series of extractions: one marker,
+ * and one checkpoint per key. Extractions that may be interrupted at the
+ * same time, e.g. with different queries, each need their own file.
+ */
+public class ExtractionCheckpoints {
+
+  /**
+   * Progress of a single extraction
+   */
+  public static class Checkpoint {
+    private final String signature;
+    private final int partition;
+    private final String cursorMark;
+    private final long delivered;
+    private final boolean done;
+
+    public Checkpoint(String signature, int partition, String cursorMark,
+                      long delivered, boolean done) {
+      this.signature = signature;
+      this.partition = partition;
+      this.cursorMark = cursorMark;
+      this.delivered = delivered;
+      this.done = done;
+    }
+
+    /**
+     * @return signature of the query, limit and extractorRunIds
+     */
+    public String getSignature() {
+      return signature;
+    }
+
+    /**
+     * @return index of the extractorRunId partition being extracted
+     */
+    public int getPartition() {
+      return partition;
+    }
+
+    /**
+     * @return cursorMark of the batch being extracted
+     */
+    public String getCursorMark() {
+      return cursorMark;
+    }
+
+    /**
+     * @return number of results delivered before the batch being extracted
+     */
+    public long getDelivered() {
+      return delivered;
+    }
+
+    /**
+     * @return true if all results have been delivered
+     */
+    public boolean isDone() {
+      return done;
+    }
+  }
+
+  private static final String MARKER = "marker";
+  private static final String SIGNATURE = "signature";
+  private static final String PARTITION = "partition";
+  private static final String CURSOR_MARK = "cursorMark";
+  private static final String DELIVERED = "delivered";
+  private static final String DONE = "done";
+
+  private final File file;
+  private final Properties props;
+
+  /**
+   * @param file checkpoint file, loaded if it already exists
+   */
+  public ExtractionCheckpoints(File file) {
+    this.file = file;
+    this.props = new Properties();
+    if (file.exists()) {
+      try (InputStream in = new FileInputStream(file)) {
+        props.load(in);
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+  }
+
+  public synchronized Checkpoint get(String key) {
+    String signature = props.getProperty(key + "." + SIGNATURE);
+    if (signature == null) {
+      return null;
+    }
+    return new Checkpoint(signature,
+        Integer.parseInt(props.getProperty(key + "." + PARTITION)),
+        props.getProperty(key + "." + CURSOR_MARK),
+        Long.parseLong(props.getProperty(key + "." + DELIVERED)),
+        Boolean.parseBoolean(props.getProperty(key + "." + DONE)));
+  }
+
+  public synchronized void save(String key, Checkpoint checkpoint) {
+    props.setProperty(key + "." + SIGNATURE, checkpoint.getSignature());
+    props.setProperty(key + "." + PARTITION,
+        String.valueOf(checkpoint.getPartition()));
+    props.setProperty(key + "." + CURSOR_MARK, checkpoint.getCursorMark());
+    props.setProperty(key + "." + DELIVERED,
+        String.valueOf(checkpoint.getDelivered()));
+    props.setProperty(key + "." + DONE, String.valueOf(checkpoint.isDone()));
+    store();
+  }
+
+  /**
+   * @return marker of the extraction being checkpointed if it was started
+   *         with the given signature, null otherwise
+   */
+  public synchronized String getMarker(String signature) {
+    return StringUtils.equals(signature,
+        props.getProperty(MARKER + "." + SIGNATURE)) ?
+        props.getProperty(MARKER) : null;
+  }
+
+  public synchronized void saveMarker(String signature, String marker) {
+    props.setProperty(MARKER + "." + SIGNATURE, signature);
+    props.setProperty(MARKER, marker);
+    store();
+  }
+
+  /**
+   * Record the marker of a new extraction and forget the checkpoints of the
+   * given keys left by the previous one, in a single update of the file.
+   * Checkpoints of other keys are kept
+   */
+  public synchronized void startExtraction(String signature, String marker,
+                                           String... keys) {
+    for (String key : keys) {
+      for (String field : new String[] {SIGNATURE, PARTITION, CURSOR_MARK,
+          DELIVERED, DONE}) {
+        props.remove(key + "." + field);
+      }
+    }
+    props.setProperty(MARKER + "." + SIGNATURE, signature);
+    props.setProperty(MARKER, marker);
+    store();
+  }
+
+  /**
+   * Forget all checkpoints
+   */
+  public synchronized void clear() {
+    props.clear();
+    store();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  private void store() {
+    try {
+      AtomicFiles.replace(file, new AtomicFiles.Contents() {
+        @Override
+        public void writeTo(File tmp) throws IOException {
+          try (OutputStream out = new FileOutputStream(tmp)) {
+            props.store(out, "Navigator extraction checkpoints");
+          }
+        }
+      });
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The extractorRunIds of a range of extract iterations for each source, of
+ * the form sourceId##iteration. Run ids are only generated when iterated, and
+ * can instead be matched with a few query clauses per source.
+ *
+ * Run ids are strings, so a Solr range over them only orders iterations with
+ * the same number of digits numerically. Each range is therefore split by
+ * number of digits and every part is matched with a range on the run id
+ * together with a wildcard that fixes its length, e.g.
+ * ([id##100 TO id##999] AND id##???). Parts of only one or two iterations
+ * are matched by their run ids.
+ */
+public class ExtractorRunIds implements Iterable<String> {
+
+  private static final int MAX_TERMS_PER_PART = 2;
+
+  private static class Range {
+    private final String sourceId;
+    private final long first;
+    private final long last;
+
+    Range(String sourceId, long first, long last) {
+      this.sourceId = sourceId;
+      this.first = first;
+      this.last = last;
+    }
+
+    String runId(long iteration) {
+      return sourceId + "##" + iteration;
+    }
+  }
+
+  /**
+   * @return the extractorRunIds of every iteration of each source from its
+   *         iteration in the start marker to its iteration in the end marker,
+   *         inclusive
+   */
+  public static ExtractorRunIds between(Map<String, Long> startMarker,
+                                        Map<String, Long> endMarker) {
+    List<Range> ranges = Lists.newArrayList();
+    for (Map.Entry<String, Long> entry : startMarker.entrySet()) {
+      Long last = endMarker.get(entry.getKey());
+      Preconditions.checkArgument(last != null,
+          "No end iteration for source %s", entry.getKey());
+      if (entry.getValue() <= last) {
+        ranges.add(new Range(entry.getKey(), entry.getValue(), last));
+      }
+    }
+    return new ExtractorRunIds(ranges);
+  }
+
+  private final List<Range> ranges;
+
+  private ExtractorRunIds(List<Range> ranges) {
+    this.ranges = ImmutableList.copyOf(ranges);
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return Iterators.concat(Iterators.transform(ranges.iterator(),
+        new Function<Range, Iterator<String>>() {
+          @Override
+          public Iterator<String> apply(final Range range) {
+            return new AbstractIterator<String>() {
+              private long next = range.first;
+
+              @Override
+              protected String computeNext() {
+                return next <= range.last ? range.runId(next++) :
+                    endOfData();
+              }
+            };
+          }
+        }));
+  }
+
+  /**
+   * @return values for an extractorRunId clause, any disjunction of which
+   *         matches exactly the run ids of the covered iterations
+   */
+  public Iterator<String> queryValues() {
+    return Iterators.concat(Iterators.transform(ranges.iterator(),
+        new Function<Range, Iterator<String>>() {
+          @Override
+          public Iterator<String> apply(Range range) {
+            return queryValues(range).iterator();
+          }
+        }));
+  }
+
+  private static List<String> queryValues(Range range) {
+    List<String> values = Lists.newArrayList();
+    long lowest = 0;
+    // lowest iteration with one more digit, -1 past the largest long
+    long bound = 10;
+    for (int digits = 1; lowest <= range.last; digits++) {
+      long highest = bound > 0 ? bound - 1 : Long.MAX_VALUE;
+      long first = Math.max(range.first, lowest);
+      long last = Math.min(range.last, highest);
+      if (first <= last) {
+        if (last - first < MAX_TERMS_PER_PART) {
+          for (long i = first; i <= last; i++) {
+            values.add(range.runId(i));
+          }
+        } else {
+          values.add(String.format("([%s TO %s] AND %s##%s)",
+              range.runId(first), range.runId(last), range.sourceId,
+              Strings.repeat("?", digits)));
+        }
+      }
+      if (bound < 0) {
+        break;
+      }
+      lowest = bound;
+      bound = bound <= Long.MAX_VALUE / 10 ? bound * 10 : -1;
+    }
+    return values;
+  }
+
+  /**
+   * @return true if there are no run ids
+   */
+  public boolean isEmpty() {
+    return ranges.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return Lists.newArrayList(queryValues()).toString();
+  }
+}
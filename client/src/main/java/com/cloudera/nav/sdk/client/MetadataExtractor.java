@@ -17,16 +17,18 @@ package com.cloudera.nav.sdk.client;
 
 import com.cloudera.com.fasterxml.jackson.core.type.TypeReference;
 import com.cloudera.com.fasterxml.jackson.databind.ObjectMapper;
+import com.cloudera.nav.sdk.client.ExtractionCheckpoints.Checkpoint;
 import com.cloudera.nav.sdk.model.MetadataType;
 import com.cloudera.nav.sdk.model.Source;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 
 import java.io.IOException;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -43,6 +45,17 @@ import org.apache.commons.lang.StringUtils;
  * The marker isn't designed to be used public API. Under the hood it is
  * composed of extractorRunId's that is incremented by the server every time
  * it reads additional metadata from Hadoop services.
+ *
+ * If created with ExtractionCheckpoints, the progress of the extraction is
+ * saved as its results are iterated. Calling extractMetadata again with the
+ * same arguments after an interruption resumes the unfinished extraction,
+ * with the same marker, instead of starting over. Once both entities and
+ * relations have been fully iterated, the next call starts a new extraction.
+ *
+ * All markers of an extraction are derived from a single snapshot of the
+ * sources. Jobs that run several extractions against the same state can take
+ * one snapshot with takeSourceSnapshot and pass it to each of them, so that
+ * the sources are only fetched once and the markers are consistent.
  */
 public class MetadataExtractor {
 
@@ -50,10 +63,22 @@ public class MetadataExtractor {
   private static final String DEFAULT_QUERY= "identity:*";
   private static final Integer DEFAULT_LIMIT = 100;
   private final Integer limit;
+  private final ExtractionCheckpoints checkpoints;
 
   public MetadataExtractor(NavApiCient client, Integer limit) {
+    this(client, limit, null);
+  }
+
+  /**
+   * @param checkpoints where extraction progress is saved, or null to not
+   *                    save progress. Must not be shared with another
+   *                    extractor
+   */
+  public MetadataExtractor(NavApiCient client, Integer limit,
+                           ExtractionCheckpoints checkpoints) {
     this.client = client;
     this.limit = (limit == null) ? DEFAULT_LIMIT : limit;
+    this.checkpoints = checkpoints;
   }
 
   /**
@@ -103,9 +128,28 @@ public class MetadataExtractor {
                                            String endMarkerRep,
                                            String entitiesQuery,
                                            String relationsQuery) {
+    return extractMetadata(takeSourceSnapshot(), startMarkerRep, endMarkerRep,
+        entitiesQuery, relationsQuery);
+  }
+
+  /**
+   * Same as extractMetadata(startMarkerRep, endMarkerRep, entitiesQuery,
+   * relationsQuery), with the missing markers and the returned marker derived
+   * from the given snapshot of the sources instead of a newly fetched one.
+   *
+   * @param sources snapshot from takeSourceSnapshot
+   */
+  public MetadataResultSet extractMetadata(SourceCache.Snapshot sources,
+                                           String startMarkerRep,
+                                           String endMarkerRep,
+                                           String entitiesQuery,
+                                           String relationsQuery) {
     try {
       TypeReference<Map<String, Long>> typeRef =
           new TypeReference<Map<String, Long>>(){};
+      String signature = signature(startMarkerRep, endMarkerRep,
+          entitiesQuery, relationsQuery);
+      String resumedMarkerRep = getResumedMarker(signature);
       Iterable<String> extractorQuery;
       Map<String, Long> endMarker;
       if(StringUtils.isEmpty(startMarkerRep) && StringUtils.isEmpty(endMarkerRep)){
@@ -113,34 +157,101 @@ public class MetadataExtractor {
       } else {
         Map<String, Long> startMarker;
         if(StringUtils.isEmpty(startMarkerRep)) {
-          startMarker = getNavMarker(false);
+          startMarker = getNavMarker(sources, false);
         } else {
           startMarker = new ObjectMapper().readValue(startMarkerRep, typeRef);
         }
         if(StringUtils.isEmpty(endMarkerRep)) {
-          endMarker = getNavMarker(true);
+          // a resumed extraction must cover the same extractorRunIds
+          endMarker = resumedMarkerRep != null ?
+              new ObjectMapper().<Map<String, Long>>readValue(
+                  resumedMarkerRep, typeRef) :
+              getNavMarker(sources, true);
         } else {
           endMarker = new ObjectMapper().readValue(endMarkerRep, typeRef);
         }
         extractorQuery = getExtractorQueryList(startMarker, endMarker);
       }
-      String currentMarkerRep = new ObjectMapper().writeValueAsString(getNavMarker(true));
+      String currentMarkerRep = resumedMarkerRep;
+      if (currentMarkerRep == null) {
+        currentMarkerRep = new ObjectMapper().writeValueAsString(
+            getNavMarker(sources, true));
+        if (checkpoints != null) {
+          checkpoints.startExtraction(signature, currentMarkerRep,
+              MetadataType.ENTITIES.name(), MetadataType.RELATIONS.name());
+        }
+      }
       return aggUpdatedResults(currentMarkerRep, extractorQuery, entitiesQuery, relationsQuery);
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
   }
 
+  /**
+   * Returns the entities or relations that satisfy the given query and have
+   * one of the given values in the given field, e.g. all entities with one
+   * of a set of identities. Large value sets are matched with {!terms}
+   * filters and split into as many queries as needed.
+   *
+   * @param type whether to return entities or relations
+   * @param query Solr query that all results must satisfy, may be null
+   * @param fieldName field to match the values against
+   * @param values literal field values, not escaped
+   * @return results of all queries as one iterable
+   */
+  public TermsQueryIterable extractByTerms(MetadataType type, String query,
+                                           String fieldName,
+                                           Iterable<String> values) {
+    return new TermsQueryIterable(client, type, query, limit, fieldName,
+        values);
+  }
+
+  /**
+   * @return marker of an unfinished extraction with the same signature, or
+   *         null if there is none to resume
+   */
+  private String getResumedMarker(String signature) {
+    if (checkpoints == null) {
+      return null;
+    }
+    String marker = checkpoints.getMarker(signature);
+    if (marker == null || (isDone(MetadataType.ENTITIES) &&
+        isDone(MetadataType.RELATIONS))) {
+      return null;
+    }
+    return marker;
+  }
+
+  private boolean isDone(MetadataType type) {
+    Checkpoint checkpoint = checkpoints.get(type.name());
+    return checkpoint != null && checkpoint.isDone();
+  }
+
+  private String signature(String startMarkerRep, String endMarkerRep,
+                           String entitiesQuery, String relationsQuery) {
+    return Hashing.murmur3_128().hashString(Joiner.on('\0').useForNull("")
+        .join(startMarkerRep, endMarkerRep, entitiesQuery, relationsQuery,
+            limit), Charsets.UTF_8).toString();
+  }
+
+  /**
+   * Fetch the current state of all sources, to be shared by any number of
+   * extractions and markers
+   */
+  public SourceCache.Snapshot takeSourceSnapshot() {
+    return new SourceCache.Snapshot(client.getAllSources(), System.nanoTime());
+  }
+
   /**
    * Generate marker from each source and its sourceExtractIteration that
    * can be used to form extractorRunIds
    *
    * @return Map of sourceId to its to extractIteration
    */
-  private Map<String, Long> getNavMarker(boolean current) {
-    Collection<Source> sources = client.getAllSources();
+  private Map<String, Long> getNavMarker(SourceCache.Snapshot sources,
+                                         boolean current) {
     HashMap<String, Long> newMarker = Maps. newHashMap();
-    for (Source source : sources) {
+    for (Source source : sources.getAllSources()) {
       String id = source.getIdentity();
       if (source.getSourceExtractIteration() == null) {
         continue;
@@ -153,8 +264,8 @@ public class MetadataExtractor {
   }
 
   /**
-   * Returns an iterable of all possible extractorRunIds in between the extraction
-   * states specified by marker m1 and marker m2.
+   * Returns a lazy iterable of all possible extractorRunIds in between the
+   * extraction states specified by marker m1 and marker m2.
    *
    * @param m1 Marker for past extraction state
    * @param m2 Marker for later(current) extraction state
@@ -162,14 +273,7 @@ public class MetadataExtractor {
    */
   private Iterable<String> getExtractorQueryList(Map<String, Long> m1,
                                                  Map<String, Long> m2) {
-    List<String> runIdList= Lists.newArrayList();
-    for (String key: m1.keySet()) {
-      for (long i=m1.get(key); i<(m2.get(key)+1); i++) {
-        String possible = key + "##" + Long.toString(i);
-        runIdList.add(possible);
-      }
-    }
-    return runIdList;
+    return ExtractorRunIds.between(m1, m2);
   }
 
   /**
@@ -188,9 +292,11 @@ public class MetadataExtractor {
                                           String relationsQuery) {
     MetadataResultSet metadataResultSet;
     MetadataIterable entities = new MetadataIterable(client,
-        MetadataType.ENTITIES, entitiesQuery, limit, extractorRunIds);
+        MetadataType.ENTITIES, entitiesQuery, limit, extractorRunIds,
+        checkpoints);
     MetadataIterable relations = new MetadataIterable(client,
-        MetadataType.RELATIONS, relationsQuery, limit, extractorRunIds);
+        MetadataType.RELATIONS, relationsQuery, limit, extractorRunIds,
+        checkpoints);
     metadataResultSet = new MetadataResultSet(markerRep, entities, relations);
     return metadataResultSet;
   }
@@ -201,7 +307,18 @@ public class MetadataExtractor {
    * @return String representation of a marker
    */
   public String getMarker() {
-    Map<String, Long> currentMarker = getNavMarker(true);
+    return getMarker(takeSourceSnapshot());
+  }
+
+  /**
+   * Writes the marker for the state of the sources in the given snapshot as
+   * a string
+   *
+   * @param sources snapshot from takeSourceSnapshot
+   * @return String representation of a marker
+   */
+  public String getMarker(SourceCache.Snapshot sources) {
+    Map<String, Long> currentMarker = getNavMarker(sources, true);
     try {
       return new ObjectMapper().writeValueAsString(currentMarker);
     } catch (IOException e){
@@ -31,20 +31,37 @@ public class MetadataIterable implements Iterable<Map<String, Object>> {
   private final String query;
   private final Integer limit;
   private final Iterable<String> extractorRunIds;
+  private final ExtractionCheckpoints checkpoints;
 
   public MetadataIterable(NavApiCient client, MetadataType type,
                           String query, Integer limit,
                           Iterable<String> extractorRunIds){
+    this(client, type, query, limit, extractorRunIds, null);
+  }
+
+  /**
+   * @param checkpoints if not null, iterators save their progress and resume
+   *                    an unfinished extraction of the same query
+   */
+  public MetadataIterable(NavApiCient client, MetadataType type,
+                          String query, Integer limit,
+                          Iterable<String> extractorRunIds,
+                          ExtractionCheckpoints checkpoints){
     this.query = query;
     this.type = type;
     this.client = client;
     this.limit =limit;
     this.extractorRunIds = extractorRunIds;
+    this.checkpoints = checkpoints;
   }
 
   @Override
   public MetadataResultIterator iterator() {
+    if (checkpoints == null) {
+      return new MetadataResultIterator(client, type, query, limit,
+          extractorRunIds);
+    }
     return new MetadataResultIterator(client, type, query, limit,
-        extractorRunIds);
+        extractorRunIds, client.getConfig(), checkpoints);
   }
 }
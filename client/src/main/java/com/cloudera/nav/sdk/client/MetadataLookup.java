@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Results of a lookup of entities or relations by a set of identities, see
+ * {@link NavApiCient#getEntities(java.util.Collection) getEntities}. Every
+ * iteration first returns the entities held by the entity cache, if any. The
+ * other identities are split into as many queries as the maximum query
+ * length requires, which are run up to the client's lookup parallelism at a
+ * time. Each result is returned once as soon as its batch arrives and is
+ * added to the cache. Results are not returned in any particular order.
+ * Pages hold the client's lookup page size, adjusted between pages if
+ * adaptive page sizing is enabled.
+ * <p>
+ * Iteration fetches in the background. An iteration that stops before the
+ * last result, such as a for-each loop left with break, must close its
+ * {@link LookupIterator}, otherwise the fetching threads stay blocked. Use
+ * {@link #toMap()} to read all results safely.
+ */
+public class MetadataLookup implements Iterable<Map<String, Object>> {
+
+  private static final String IDENTITY = "identity";
+
+  private final NavApiCient client;
+  private final MetadataType type;
+  private final String query;
+  private final String fieldName;
+  private final Set<String> values;
+  private final EntityCache cache;
+
+  /**
+   * @param cache cache of entities by identity to read and fill, or null
+   */
+  MetadataLookup(NavApiCient client, MetadataType type, String query,
+                 String fieldName, Iterable<String> values,
+                 EntityCache cache) {
+    this.client = client;
+    this.type = type;
+    this.query = query;
+    this.fieldName = fieldName;
+    this.values = ImmutableSet.copyOf(values);
+    this.cache = cache;
+  }
+
+  /**
+   * @return number of queries a full iteration sends to Navigator when none
+   *         of the entities are cached, not counting paging
+   */
+  public int getQueryCount() {
+    return buildQueries(values).size();
+  }
+
+  /**
+   * Reads all results into a map by identity. Background fetching stops
+   * even if a query fails.
+   */
+  public Map<String, Map<String, Object>> toMap() {
+    Map<String, Map<String, Object>> results = Maps.newHashMap();
+    LookupIterator iterator = iterator();
+    try {
+      while (iterator.hasNext()) {
+        Map<String, Object> result = iterator.next();
+        results.put((String) result.get(IDENTITY), result);
+      }
+    } finally {
+      iterator.close();
+    }
+    return results;
+  }
+
+  /**
+   * The returned iterator fetches in the background until it is exhausted
+   * or closed.
+   */
+  @Override
+  public LookupIterator iterator() {
+    return new LookupIterator();
+  }
+
+  private List<String> buildQueries(Collection<String> values) {
+    ImmutableList.Builder<String> queries = ImmutableList.builder();
+    for (String clause : QueryUtils.buildTermsClauses(fieldName, values,
+        client.getConfig().getMaxQueryLength())) {
+      queries.add(QueryUtils.conjoinSolrQueries(query, clause));
+    }
+    return queries.build();
+  }
+
+  public class LookupIterator extends AbstractIterator<Map<String, Object>>
+      implements Closeable {
+
+    private final BatchSource batches;
+    private final Set<String> seen = Sets.newHashSet();
+    // results fetched across an invalidation may be stale, see put()
+    private final long generation;
+    private Iterator<Map<String, Object>> batch;
+    private boolean cached;
+
+    private LookupIterator() {
+      generation = cache == null ? 0 : cache.getGeneration();
+      List<Map<String, Object>> hits = Lists.newArrayList();
+      Collection<String> missing = values;
+      if (cache != null) {
+        missing = Lists.newArrayList();
+        for (String value : values) {
+          Map<String, Object> hit = cache.get(value);
+          if (hit != null) {
+            hits.add(hit);
+          } else {
+            missing.add(value);
+          }
+        }
+      }
+      batch = hits.iterator();
+      cached = true;
+      List<String> queries = buildQueries(missing);
+      final ClientConfig config = client.getConfig();
+      // shared by the queries of this iteration
+      final PageSizer pageSizer = config.isAdaptivePageSize() ?
+          new PageSizer(config.getLookupPageSize(), config) : null;
+      int parallelism = Math.min(config.getLookupParallelism(),
+          queries.size());
+      batches = parallelism == 0 ? null : new ParallelBatchFetcher(
+          Iterators.transform(queries.iterator(),
+              new Function<String, QueryPager>() {
+                @Override
+                public QueryPager apply(String query) {
+                  return new QueryPager(client, type, query,
+                      config.getLookupPageSize(), pageSizer);
+                }
+              }),
+          parallelism, Math.max(config.getPrefetchDepth(), 1), false);
+    }
+
+    @Override
+    protected Map<String, Object> computeNext() {
+      while (true) {
+        while (batch.hasNext()) {
+          Map<String, Object> result = batch.next();
+          // a result can match values of several queries
+          String identity = (String) result.get(IDENTITY);
+          if (identity == null || seen.add(identity)) {
+            if (cache != null && !cached && identity != null) {
+              cache.put(identity, result, generation);
+            }
+            return result;
+          }
+        }
+        ResultsBatch<Map<String, Object>> next =
+            batches == null ? null : batches.take();
+        if (next == null) {
+          return endOfData();
+        }
+        batch = next.getResults().iterator();
+        cached = false;
+      }
+    }
+
+    @Override
+    public void close() {
+      if (batches != null) {
+        batches.close();
+      }
+    }
+  }
+}
@@ -15,11 +15,22 @@
  */
 package com.cloudera.nav.sdk.client;
 
+import com.cloudera.nav.sdk.client.ExtractionCheckpoints.Checkpoint;
 import com.cloudera.nav.sdk.model.MetadataType;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
+import java.io.Closeable;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -32,11 +43,27 @@ import java.util.NoSuchElementException;
  *
  * Under the hood, the iterator combines the query and the extractorRunIds and
  * sends a request via the given NavApiClient. The results are fetched in
- * batches.
+ * batches. If a positive prefetch depth is configured, batches are fetched on
+ * a background thread up to that many pages ahead of the consumer. If a
+ * parallelism greater than 1 is configured, up to that many extractorRunId
+ * partitions are queried concurrently and their results are merged, either in
+ * serial order or in arrival order. Otherwise, if streaming is configured,
+ * each batch is parsed from the response one result at a time instead of
+ * being read into memory as a whole. Callers that stop iterating early should
+ * close the iterator to stop background fetching and release the response.
+ *
+ * If checkpoints are given, batches are always fetched serially and the
+ * position of each batch is saved before it is fetched. An iterator over the
+ * same query and extractorRunIds resumes from the last saved batch.
  */
-public class MetadataResultIterator implements Iterator<Map<String, Object>> {
+public class MetadataResultIterator implements Iterator<Map<String, Object>>,
+    Closeable {
 
+  /**
+   * Maximum number of extractorRunId values in one query
+   */
   public static final Integer MAX_QUERY_PARTITION_SIZE = 800;
+  private static final int OR_LENGTH = " OR ".length();
 
   private final NavApiCient client;
   private final Integer limit;
@@ -44,26 +71,92 @@ public class MetadataResultIterator implements Iterator<Map<String, Object>> {
   private final String userQuery;
   private boolean hasNext;
   private Iterator<List<String>> partitionRunIdIterator;
-  private List<Map<String, Object>> resultsBatch;
+  private int resultsBatchSize;
   private Iterator<Map<String, Object>> resultsBatchIterator;
   private String cursorMark = "*";
   private String nextQuery;
+  private BatchSource batchSource;
+  private boolean streaming;
+  private StreamingResultsReader resultsReader;
+  private final ExtractionCheckpoints checkpoints;
+  private String signature;
+  private int partition = -1;
+  private long delivered;
+  private final PageSizer pageSizer;
+  private int pageLimit;
 
   public MetadataResultIterator(NavApiCient client, MetadataType type,
                                 String query, Integer limit,
                                 Iterable<String> extractorRunIds) {
+    this(client, type, query, limit, extractorRunIds, client.getConfig());
+  }
+
+  /**
+   * @param config extraction settings (prefetch depth, parallelism, ordering,
+   *               streaming and page sizing) to use instead of those of the
+   *               client
+   */
+  public MetadataResultIterator(NavApiCient client, MetadataType type,
+                                String query, Integer limit,
+                                Iterable<String> extractorRunIds,
+                                ClientConfig config) {
+    this(client, type, query, limit, extractorRunIds, config, null);
+  }
+
+  /**
+   * @param checkpoints if not null, progress is saved under the name of the
+   *                    MetadataType and an unfinished extraction of the same
+   *                    query and extractorRunIds is resumed
+   */
+  public MetadataResultIterator(NavApiCient client, MetadataType type,
+                                String query, Integer limit,
+                                Iterable<String> extractorRunIds,
+                                ClientConfig config,
+                                ExtractionCheckpoints checkpoints) {
     this.client = client;
+    this.checkpoints = checkpoints;
     this.type = type;
     this.userQuery = query;
     this.limit = limit;
-    this.partitionRunIdIterator = Iterables.partition(extractorRunIds,
-        MAX_QUERY_PARTITION_SIZE).iterator();
-    if(Iterables.isEmpty(extractorRunIds)) {
-      nextQuery = userQuery;
+    this.pageLimit = limit;
+    // streamed batches are timed while the consumer reads them
+    this.pageSizer = config.isAdaptivePageSize() &&
+        !config.isStreamingExtraction() ? new PageSizer(limit, config) : null;
+    this.partitionRunIdIterator = partition(queryValues(extractorRunIds),
+        config.getMaxQueryLength());
+    int prefetchDepth = config.getPrefetchDepth();
+    int parallelism = config.getExtractionParallelism();
+    boolean partitioned = !Iterables.isEmpty(extractorRunIds);
+    // checkpoints rely on the serial order of batches
+    if (checkpoints == null && partitioned && parallelism > 1) {
+      batchSource = new ParallelBatchFetcher(queryPagers(), parallelism,
+          Math.max(prefetchDepth, 1), config.isOrderedExtraction());
+    } else if (checkpoints == null && prefetchDepth > 0) {
+      batchSource = new BatchPrefetcher(partitioned ?
+          Iterators.concat(queryPagers()) :
+          new QueryPager(client, type, userQuery, limit, pageSizer),
+          prefetchDepth);
     } else {
-      getNextQuery();
+      streaming = config.isStreamingExtraction();
+      if (partitioned) {
+        getNextQuery();
+      } else {
+        partition = 0;
+        nextQuery = userQuery;
+      }
+      if (checkpoints != null) {
+        signature = signature(type, query, limit,
+            queryValues(extractorRunIds));
+        if (!resume()) {
+          // all results were delivered before
+          return;
+        }
+      }
     }
     getNextBatch();
+    if (!hasNext) {
+      saveCheckpoint(true);
+    }
   }
 
   @Override
@@ -77,10 +170,17 @@ public class MetadataResultIterator implements Iterator<Map<String, Object>> {
       throw new NoSuchElementException();
     }
     Map<String, Object> nextResult = resultsBatchIterator.next();
+    delivered++;
     //if at last element in batch
     if(!resultsBatchIterator.hasNext()){
+      //batch boundaries are decided by the background fetch
+      if(batchSource != null) {
+        getNextBatch();
+        return nextResult;
+      }
+      finishStreamedBatch();
       //if on last batch
-      if(resultsBatch.size()<limit) {
+      if(resultsBatchSize<pageLimit) {
         //if on last query, leave loop
         if (!partitionRunIdIterator.hasNext()) {
           hasNext = false;
@@ -93,19 +193,38 @@ public class MetadataResultIterator implements Iterator<Map<String, Object>> {
       } else {
         getNextBatch();
       }
+      if (!hasNext) {
+        saveCheckpoint(true);
+      }
     }
     return nextResult;
   }
 
   @VisibleForTesting
   void getNextBatch() {
+    if (batchSource != null) {
+      takeFetchedBatch();
+      return;
+    }
     // Retrieve the next batch of metadata results
+    saveCheckpoint(false);
     try {
-      ResultsBatch<Map<String, Object>> response = getResultsBatch();
-      resultsBatch = response.getResults();
-      resultsBatchIterator = resultsBatch.iterator();
-      hasNext = resultsBatchIterator.hasNext();
-      cursorMark = response.getCursorMark();
+      if (streaming) {
+        closeResultsReader();
+        resultsReader = openResultsReader();
+        resultsBatchIterator = resultsReader;
+        hasNext = resultsBatchIterator.hasNext();
+        if (!hasNext) {
+          finishStreamedBatch();
+        }
+      } else {
+        ResultsBatch<Map<String, Object>> response = getResultsBatch();
+        List<Map<String, Object>> resultsBatch = response.getResults();
+        resultsBatchSize = resultsBatch.size();
+        resultsBatchIterator = resultsBatch.iterator();
+        hasNext = resultsBatchIterator.hasNext();
+        cursorMark = response.getCursorMark();
+      }
       if (!hasNext && partitionRunIdIterator.hasNext()) {
         getNextQuery();
         getNextBatch();
@@ -115,28 +234,169 @@ public class MetadataResultIterator implements Iterator<Map<String, Object>> {
     }
   }
 
+  private void takeFetchedBatch() {
+    ResultsBatch<Map<String, Object>> response = batchSource.take();
+    List<Map<String, Object>> resultsBatch = response == null ?
+        Collections.<Map<String, Object>>emptyList() : response.getResults();
+    resultsBatchIterator = resultsBatch.iterator();
+    hasNext = resultsBatchIterator.hasNext();
+  }
+
+  private StreamingResultsReader openResultsReader() {
+    MetadataQuery query = new MetadataQuery(nextQuery, limit, cursorMark);
+    switch(type) {
+      case ENTITIES:
+        return client.streamEntityBatch(query);
+      case RELATIONS:
+        return client.streamRelationBatch(query);
+      default:
+        throw new UnsupportedOperationException("Invalid MetadataType " +
+            type.name());
+    }
+  }
+
+  private void finishStreamedBatch() {
+    // the cursor and batch size of a streamed batch are only known once all
+    // of its results have been read
+    if (resultsReader != null) {
+      cursorMark = resultsReader.getCursorMark();
+      resultsBatchSize = resultsReader.getCount();
+      closeResultsReader();
+    }
+  }
+
+  private void closeResultsReader() {
+    if (resultsReader != null) {
+      resultsReader.close();
+      resultsReader = null;
+    }
+  }
+
   private ResultsBatch<Map<String, Object>> getResultsBatch() {
     // Send the next request to the server to get a batch of results
-    MetadataQuery query = new MetadataQuery(nextQuery, limit, cursorMark);
-      switch(type) {
-        case ENTITIES:
-          return client.getEntityBatch(query);
-        case RELATIONS:
-          return client.getRelationBatch(query);
-        default:
-          throw new UnsupportedOperationException("Invalid MetadataType " +
-          type.name());
-      }
+    if (pageSizer == null) {
+      return QueryPager.fetch(client, type,
+          new MetadataQuery(nextQuery, limit, cursorMark));
+    }
+    pageLimit = pageSizer.getPageSize();
+    long start = System.nanoTime();
+    ResultsBatch<Map<String, Object>> response = QueryPager.fetch(client,
+        type, new MetadataQuery(nextQuery, pageLimit, cursorMark));
+    pageSizer.record(pageLimit, response.getResults(),
+        System.nanoTime() - start);
+    return response;
   }
 
   private void getNextQuery() {
     // create the next query by combining the given userQuery with the next
     // partition of extractorRunIds
     cursorMark="*";
-    List<String> extractorRunIdBatch = partitionRunIdIterator.next();
+    partition++;
+    nextQuery = buildPartitionQuery(partitionRunIdIterator.next());
+  }
+
+  private boolean resume() {
+    Checkpoint checkpoint = checkpoints.get(type.name());
+    if (checkpoint == null || !checkpoint.getSignature().equals(signature)) {
+      return true;
+    }
+    if (checkpoint.isDone()) {
+      return false;
+    }
+    while (partition < checkpoint.getPartition()) {
+      getNextQuery();
+    }
+    cursorMark = checkpoint.getCursorMark();
+    delivered = checkpoint.getDelivered();
+    return true;
+  }
+
+  private void saveCheckpoint(boolean done) {
+    if (checkpoints != null) {
+      checkpoints.save(type.name(), new Checkpoint(signature, partition,
+          cursorMark, delivered, done));
+    }
+  }
+
+  private static String signature(MetadataType type, String query,
+                                  Integer limit,
+                                  Iterator<String> extractorRunIds) {
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+        .putString(type.name(), Charsets.UTF_8)
+        .putString(String.valueOf(query), Charsets.UTF_8)
+        .putInt(limit);
+    while (extractorRunIds.hasNext()) {
+      hasher.putByte((byte) 0).putString(extractorRunIds.next(),
+          Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  private String buildPartitionQuery(List<String> extractorRunIdBatch) {
     String extractorString = QueryUtils.buildConjunctiveClause(
         "extractorRunId", extractorRunIdBatch);
-    nextQuery = QueryUtils.conjoinSolrQueries(userQuery, extractorString);
+    return QueryUtils.conjoinSolrQueries(userQuery, extractorString);
+  }
+
+  private static Iterator<String> queryValues(
+      Iterable<String> extractorRunIds) {
+    // ranges of run ids are matched without listing every run id
+    return extractorRunIds instanceof ExtractorRunIds ?
+        ((ExtractorRunIds) extractorRunIds).queryValues() :
+        extractorRunIds.iterator();
+  }
+
+  /**
+   * Group the given extractorRunId values into partitions whose clause stays
+   * within the given number of characters and MAX_QUERY_PARTITION_SIZE
+   * values. A single longer value gets a partition of its own.
+   */
+  @VisibleForTesting
+  static Iterator<List<String>> partition(final Iterator<String> values,
+                                          final int maxQueryLength) {
+    final PeekingIterator<String> peeking = Iterators.peekingIterator(values);
+    return new AbstractIterator<List<String>>() {
+      @Override
+      protected List<String> computeNext() {
+        if (!peeking.hasNext()) {
+          return endOfData();
+        }
+        List<String> partition = Lists.newArrayList(peeking.next());
+        int length = partition.get(0).length();
+        while (peeking.hasNext() &&
+            partition.size() < MAX_QUERY_PARTITION_SIZE &&
+            length + OR_LENGTH + peeking.peek().length() <= maxQueryLength) {
+          String value = peeking.next();
+          length += OR_LENGTH + value.length();
+          partition.add(value);
+        }
+        return partition;
+      }
+    };
+  }
+
+  private Iterator<QueryPager> queryPagers() {
+    // one independent pager per remaining partition, created lazily
+    return Iterators.transform(partitionRunIdIterator,
+        new Function<List<String>, QueryPager>() {
+          @Override
+          public QueryPager apply(List<String> extractorRunIdBatch) {
+            return new QueryPager(client, type,
+                buildPartitionQuery(extractorRunIdBatch), limit, pageSizer);
+          }
+        });
+  }
+
+  /**
+   * Stop any background fetching and release any open response. Only needed
+   * when iteration is abandoned before the last result.
+   */
+  @Override
+  public void close() {
+    if (batchSource != null) {
+      batchSource.close();
+    }
+    closeResultsReader();
   }
 
   /**
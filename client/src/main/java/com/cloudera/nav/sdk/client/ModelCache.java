@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataModel;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the models registered with a Navigator instance in a directory
+ * that can be shared by all processes on a host, so that registering models
+ * again only sends what changed since, and nothing when nothing did.
+ *
+ * Each Navigator URL, API version and namespace has its own file that holds
+ * the hash of the last model registered and everything registered so far.
+ * Models and their classes and properties are compared by their JSON form
+ * with object fields and array elements sorted, so the order in which they
+ * were built does not matter. After the ttl the file is ignored and models
+ * are registered in full again, in case they were changed in Navigator by
+ * other means.
+ */
+class ModelCache {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final File file;
+  private final long ttlMillis;
+
+  ModelCache(ClientConfig config) {
+    this(new File(config.getModelCacheDir()), config.getNavigatorUrl(),
+        config.getApiVersion(), config.getNamespace(),
+        config.getModelCacheTtlMillis());
+  }
+
+  ModelCache(File dir, String navigatorUrl, int apiVersion, String namespace,
+             long ttlMillis) {
+    this.file = new File(dir, Hashing.murmur3_128().hashString(
+        Joiner.on('\0').join(navigatorUrl, apiVersion, namespace),
+        Charsets.UTF_8) + ".json");
+    this.ttlMillis = ttlMillis;
+  }
+
+  /**
+   * What is known to be registered, see {@link ModelCache#read()}
+   */
+  static class Entry {
+
+    private String modelHash;
+    private long registeredAt;
+    private MetadataModel model;
+
+    public String getModelHash() {
+      return modelHash;
+    }
+
+    public void setModelHash(String modelHash) {
+      this.modelHash = modelHash;
+    }
+
+    /**
+     * @return time the models were last registered in full
+     */
+    public long getRegisteredAt() {
+      return registeredAt;
+    }
+
+    public void setRegisteredAt(long registeredAt) {
+      this.registeredAt = registeredAt;
+    }
+
+    /**
+     * @return everything registered since then
+     */
+    public MetadataModel getModel() {
+      return model;
+    }
+
+    public void setModel(MetadataModel model) {
+      this.model = model;
+    }
+  }
+
+  /**
+   * @return what is known to be registered, or null if nothing is or the
+   *         ttl has passed
+   */
+  Entry read() {
+    if (!file.exists()) {
+      return null;
+    }
+    Entry entry;
+    try {
+      entry = MAPPER.readValue(file, Entry.class);
+    } catch (IOException e) {
+      // unreadable, e.g. written by another version, register again
+      return null;
+    }
+    if (ttlMillis > 0 &&
+        System.currentTimeMillis() - entry.getRegisteredAt() >= ttlMillis) {
+      return null;
+    }
+    return entry;
+  }
+
+  /**
+   * @param registered what is known to be registered, may be null
+   * @param model the models to register
+   * @return the part of the model that is not registered yet, or null if
+   *         all of it is. Packages and namespaces are always included with
+   *         changed classes and properties
+   */
+  static MetadataModel diff(Entry registered, MetadataModel model) {
+    if (registered == null) {
+      return model;
+    }
+    if (hash(model).equals(registered.getModelHash())) {
+      return null;
+    }
+    MetadataModel known = registered.getModel();
+    MetadataModel changes = new MetadataModel();
+    changes.setClasses(changed(model.getClasses(), known.getClasses()));
+    changes.setProperties(changed(model.getProperties(),
+        known.getProperties()));
+    Map<String, Set<String>> mappings = Maps.newHashMap();
+    Map<String, Set<String>> knownMappings = nullToEmpty(known.getMappings());
+    for (Map.Entry<String, Set<String>> mapping :
+        nullToEmpty(model.getMappings()).entrySet()) {
+      Set<String> knownProperties = knownMappings.get(mapping.getKey());
+      Set<String> added = Sets.newHashSet(mapping.getValue());
+      if (knownProperties != null) {
+        added.removeAll(knownProperties);
+      }
+      if (knownProperties == null || !added.isEmpty()) {
+        mappings.put(mapping.getKey(), added);
+      }
+    }
+    changes.setMappings(mappings);
+    if (changes.getClasses().isEmpty() && changes.getProperties().isEmpty() &&
+        mappings.isEmpty() &&
+        changed(model.getPackages(), known.getPackages()).isEmpty() &&
+        changed(model.getNamespaces(), known.getNamespaces()).isEmpty()) {
+      return null;
+    }
+    changes.setPackages(model.getPackages());
+    changes.setNamespaces(model.getNamespaces());
+    return changes;
+  }
+
+  /**
+   * Remember that the given changes of the given model have been
+   * registered
+   *
+   * @param registered what was known to be registered before, may be null
+   * @param model the models registered
+   * @param changes what was sent to Navigator, null if nothing was
+   */
+  void save(Entry registered, MetadataModel model, MetadataModel changes) {
+    final Entry entry = new Entry();
+    entry.setModelHash(hash(model));
+    if (registered == null) {
+      Preconditions.checkArgument(changes == model,
+          "Models must be registered in full first");
+      entry.setRegisteredAt(System.currentTimeMillis());
+      entry.setModel(model);
+    } else {
+      entry.setRegisteredAt(registered.getRegisteredAt());
+      entry.setModel(changes == null ? registered.getModel() :
+          merge(registered.getModel(), changes));
+    }
+    try {
+      // other processes never read part of the file
+      AtomicFiles.replace(file, new AtomicFiles.Contents() {
+        @Override
+        public void writeTo(File tmp) throws IOException {
+          MAPPER.writeValue(tmp, entry);
+        }
+      });
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private static MetadataModel merge(MetadataModel known,
+                                     MetadataModel changes) {
+    MetadataModel merged = new MetadataModel();
+    merged.setPackages(replace(known.getPackages(), changes.getPackages()));
+    merged.setNamespaces(replace(known.getNamespaces(),
+        changes.getNamespaces()));
+    merged.setClasses(replace(known.getClasses(), changes.getClasses()));
+    merged.setProperties(replace(known.getProperties(),
+        changes.getProperties()));
+    Map<String, Set<String>> mappings = Maps.newHashMap();
+    for (Map.Entry<String, Set<String>> mapping :
+        nullToEmpty(known.getMappings()).entrySet()) {
+      mappings.put(mapping.getKey(), Sets.newHashSet(mapping.getValue()));
+    }
+    for (Map.Entry<String, Set<String>> mapping :
+        nullToEmpty(changes.getMappings()).entrySet()) {
+      Set<String> properties = mappings.get(mapping.getKey());
+      if (properties == null) {
+        mappings.put(mapping.getKey(), Sets.newHashSet(mapping.getValue()));
+      } else {
+        properties.addAll(mapping.getValue());
+      }
+    }
+    merged.setMappings(mappings);
+    return merged;
+  }
+
+  /**
+   * @return the known values with those that have the same name as a
+   *         changed one replaced by it
+   */
+  private static <T> Set<T> replace(Set<T> known, Set<T> changed) {
+    Set<T> replaced = Sets.newHashSet(nullToEmpty(known));
+    replaced.removeAll(nullToEmpty(changed));
+    replaced.addAll(nullToEmpty(changed));
+    return replaced;
+  }
+
+  /**
+   * @return the values that are not among the known ones, or differ from
+   *         them
+   */
+  private static <T> Set<T> changed(Set<T> values, Set<T> known) {
+    Set<String> knownJson = Sets.newHashSet();
+    for (T value : nullToEmpty(known)) {
+      knownJson.add(canonicalJson(value));
+    }
+    Set<T> changed = Sets.newHashSet();
+    for (T value : nullToEmpty(values)) {
+      if (!knownJson.contains(canonicalJson(value))) {
+        changed.add(value);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * @return hash of the canonical JSON form of the model
+   */
+  static String hash(MetadataModel model) {
+    return Hashing.sha256().hashString(canonicalJson(model), Charsets.UTF_8)
+        .toString();
+  }
+
+  /**
+   * @return JSON form of the value with object fields and array elements in
+   *         order, the arrays of a model are all sets
+   */
+  static String canonicalJson(Object value) {
+    return canonical(MAPPER.valueToTree(value));
+  }
+
+  private static String canonical(JsonNode node) {
+    if (node.isObject()) {
+      List<String> names = Lists.newArrayList(node.fieldNames());
+      Collections.sort(names);
+      StringBuilder sb = new StringBuilder("{");
+      for (String name : names) {
+        if (sb.length() > 1) {
+          sb.append(',');
+        }
+        sb.append(MAPPER.getNodeFactory().textNode(name)).append(':')
+            .append(canonical(node.get(name)));
+      }
+      return sb.append('}').toString();
+    } else if (node.isArray()) {
+      List<String> elements = Lists.newArrayList();
+      for (Iterator<JsonNode> it = node.elements(); it.hasNext(); ) {
+        elements.add(canonical(it.next()));
+      }
+      Collections.sort(elements);
+      return "[" + Joiner.on(',').join(elements) + "]";
+    }
+    return node.toString();
+  }
+
+  private static <T> Set<T> nullToEmpty(Set<T> set) {
+    return set == null ? Collections.<T>emptySet() : set;
+  }
+
+  private static <K, V> Map<K, V> nullToEmpty(Map<K, V> map) {
+    return map == null ? Collections.<K, V>emptyMap() : map;
+  }
+}
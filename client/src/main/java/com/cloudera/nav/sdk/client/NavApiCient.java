@@ -16,57 +16,88 @@
 package com.cloudera.nav.sdk.client;
 
 import com.cloudera.nav.sdk.model.MetadataModel;
+import com.cloudera.nav.sdk.model.MetadataType;
 import com.cloudera.nav.sdk.model.Source;
 import com.cloudera.nav.sdk.model.SourceType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 
 import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
 /**
  * An API client to communicate with Navigator to register and validate
- * metadata models
+ * metadata models.
+ *
+ * All requests share one pooled, keep-alive HTTP connection manager that is
+ * created on first use. Close the client to release its connections.
  */
-public class NavApiCient {
+public class NavApiCient implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(NavApiCient.class);
   private static final String SOURCE_QUERY = "type:SOURCE";
+  private static final ObjectMapper QUERY_MAPPER = new ObjectMapper();
 
   private final ClientConfig config;
-  private final Cache<String, Source> sourceCacheByUrl;
-  private final Cache<SourceType, Collection<Source>> sourceCacheByType;
+  private final SourceCache sourceCache;
+  private final EntityCache entityCache;
+  private final ConcurrencyLimiter limiter;
   private final boolean isSSL;
   private final SSLContext sslContext;
   private final HostnameVerifier hostnameVerifier;
+  private volatile RestTemplate restTemplate;
+  private volatile RequestRetrier retrier;
+  private CloseableHttpClient httpClient;
 
   public NavApiCient(ClientConfig config) {
     this.config = config;
-    this.sourceCacheByUrl = CacheBuilder.newBuilder().build();
-    this.sourceCacheByType = CacheBuilder.newBuilder().build();
+    this.sourceCache = new SourceCache(new Callable<Collection<Source>>() {
+      @Override
+      public Collection<Source> call() {
+        return getAllSources();
+      }
+    }, config.getSourceCacheTtlMillis());
+    this.entityCache = config.getEntityCacheMaxEntries() > 0 ?
+        new EntityCache(config.getEntityCacheMaxEntries(),
+            config.getEntityCacheMaxBytes(), config.getEntityCacheTtlMillis()) :
+        null;
+    this.limiter = ConcurrencyLimiter.forConfig(config);
     this.isSSL = SSLUtils.isSSL(config.getNavigatorUrl());
     this.sslContext = isSSL ? SSLUtils.getSSLContext(config) : null;
     this.hostnameVerifier = isSSL ? SSLUtils.getHostnameVerifier(config) : null;
@@ -90,14 +121,50 @@ public class NavApiCient {
   private <R, T> T sendRequest(String url, HttpMethod method,
                                Class<? extends T> resultClass,
                                R requestPayload) {
-    RestTemplate restTemplate = newRestTemplate();
-        HttpHeaders headers = getAuthHeaders();
+    RestTemplate restTemplate = getRestTemplate();
+    HttpHeaders headers = getAuthHeaders();
     HttpEntity<?> request = requestPayload == null ?
         new HttpEntity<String>(headers) :
         new HttpEntity<>(requestPayload, headers);
-    ResponseEntity<? extends T> response = restTemplate.exchange(url, method,
-        request, resultClass);
-    return response.getBody();
+    limiter.acquire();
+    long start = System.nanoTime();
+    boolean overloaded = false;
+    try {
+      ResponseEntity<? extends T> response = restTemplate.exchange(url,
+          method, request, resultClass);
+      return response.getBody();
+    } catch (RuntimeException e) {
+      overloaded = isOverload(e);
+      throw e;
+    } finally {
+      limiter.release(System.nanoTime() - start, overloaded);
+    }
+  }
+
+  /**
+   * {@link #sendRequest(String, HttpMethod, Class, Object) sendRequest} for
+   * requests that can be repeated safely, retried and hedged as configured
+   */
+  private <R, T> T sendIdempotentRequest(final String url,
+                                         final HttpMethod method,
+                                         final Class<? extends T> resultClass,
+                                         final R requestPayload) {
+    return getRetrier().call(method + " " + url, new Callable<T>() {
+      @Override
+      public T call() {
+        return NavApiCient.this.<R, T>sendRequest(url, method, resultClass,
+            requestPayload);
+      }
+    }, true);
+  }
+
+  private static boolean isOverload(RuntimeException e) {
+    if (e instanceof HttpStatusCodeException) {
+      return ConcurrencyLimiter.isOverloadStatus(
+          ((HttpStatusCodeException) e).getStatusCode().value());
+    }
+    return e instanceof ResourceAccessException &&
+        e.getCause() instanceof SocketTimeoutException;
   }
 
   /**
@@ -107,8 +174,8 @@ public class NavApiCient {
    */
   public Collection<Source> getAllSources () {
         String url = entitiesQueryUrl();
-    SourceAttrs[] sourceAttrs = sendRequest(url, HttpMethod.GET,
-        SourceAttrs[].class);
+    SourceAttrs[] sourceAttrs = sendIdempotentRequest(url, HttpMethod.GET,
+        SourceAttrs[].class, null);
     Collection<Source> sources = Lists.newArrayListWithExpectedSize(sourceAttrs
         .length + 1);
     for (SourceAttrs info : sourceAttrs) {
@@ -121,6 +188,8 @@ public class NavApiCient {
    * Constructs relation API call from query, and cursorMark.Returns a batch of
    * results that satisfy the query, starting from the cursorMark.
    * Called in next() of IncrementalExtractIterator()
+   * A failed request is retried from the same cursorMark, see
+   * {@link ClientConfig#getRequestMaxRetries()}.
    *
    * @param metadataQuery Solr query string, cursormark and limit
    * @return ResultsBatch set of results that satisfy query and next cursor
@@ -128,8 +197,8 @@ public class NavApiCient {
   public ResultsBatch<Map<String, Object>> getRelationBatch(
       MetadataQuery metadataQuery) {
     String fullUrlPost = pagingUrl("relations");
-    return sendRequest(fullUrlPost, HttpMethod.POST, RelationResultsBatch.class,
-        metadataQuery);
+    return sendIdempotentRequest(fullUrlPost, HttpMethod.POST,
+        RelationResultsBatch.class, metadataQuery);
   }
 
   /**
@@ -138,23 +207,245 @@ public class NavApiCient {
   public ResultsBatch<Map<String, Object>> getEntityBatch(
       MetadataQuery metadataQuery) {
     String fullUrlPost = pagingUrl("entities");
-    return sendRequest(fullUrlPost, HttpMethod.POST, EntityResultsBatch.class,
-        metadataQuery);
+    return sendIdempotentRequest(fullUrlPost, HttpMethod.POST,
+        EntityResultsBatch.class, metadataQuery);
+  }
+
+  /**
+   * Looks up the entity with the given identity, from the entity cache if
+   * it is enabled and holds the entity. Cached entities cannot be modified.
+   *
+   * @param id entity identity
+   * @return the entity, or null if there is none with the identity
+   */
+  public Map<String, Object> getEntity(String id) {
+    long generation = 0;
+    if (entityCache != null) {
+      generation = entityCache.getGeneration();
+      Map<String, Object> entity = entityCache.get(id);
+      if (entity != null) {
+        return entity;
+      }
+    }
+    ResultsBatch<Map<String, Object>> batch = getEntityBatch(new MetadataQuery(
+        QueryUtils.buildTermsClause("identity", Collections.singleton(id)), 1,
+        "*"));
+    if (batch.getResults().isEmpty()) {
+      return null;
+    }
+    Map<String, Object> entity = batch.getResults().get(0);
+    if (entityCache != null) {
+      entityCache.put(id, entity, generation);
+    }
+    return entity;
+  }
+
+  /**
+   * Looks up the entities with the given identities. Entities in the entity
+   * cache are returned from it, the other identities are batched into
+   * {!terms} queries that are paged through concurrently.
+   *
+   * @param ids entity identities, duplicates are ignored
+   * @return entities found, each returned once. Read them with
+   *         {@link MetadataLookup#toMap() toMap}, or close the iterator if
+   *         iteration stops early, see {@link MetadataLookup}
+   */
+  public MetadataLookup getEntities(Collection<String> ids) {
+    return new MetadataLookup(this, MetadataType.ENTITIES, null, "identity",
+        ids, entityCache);
+  }
+
+  /**
+   * Looks up the relations that satisfy the given query and have one of the
+   * given entity ids in the given endpoint field, e.g. endpoint1Ids. The ids
+   * are batched like in {@link #getEntities(Collection) getEntities}.
+   *
+   * @param query Solr query that all relations must satisfy, may be null
+   * @param endpointField endpoint ids field to match, e.g. endpoint2Ids
+   * @param ids entity ids, duplicates are ignored
+   * @return relations found, each returned once. Read them with
+   *         {@link MetadataLookup#toMap() toMap}, or close the iterator if
+   *         iteration stops early, see {@link MetadataLookup}
+   */
+  public MetadataLookup getRelationsByEndpoint(String query,
+                                               String endpointField,
+                                               Collection<String> ids) {
+    return new MetadataLookup(this, MetadataType.RELATIONS, query,
+        endpointField, ids, null);
+  }
+
+  /**
+   * Streaming version of {@link #getEntityBatch(MetadataQuery)
+   * getEntityBatch}. Results are parsed one at a time as they are read from
+   * the response, so memory use does not depend on the page size. The caller
+   * must read the reader to the end or close it.
+   *
+   * @param metadataQuery Solr query string, cursormark and limit
+   * @return reader over the results; the next cursor is available from the
+   *         reader after the last result
+   */
+  public StreamingResultsReader streamEntityBatch(MetadataQuery metadataQuery) {
+    return streamRequest(pagingUrl("entities"), metadataQuery);
+  }
+
+  /**
+   * {@link #streamEntityBatch(MetadataQuery) streamEntityBatch} with relations
+   */
+  public StreamingResultsReader streamRelationBatch(
+      MetadataQuery metadataQuery) {
+    return streamRequest(pagingUrl("relations"), metadataQuery);
+  }
+
+  private StreamingResultsReader streamRequest(final String url,
+      final MetadataQuery metadataQuery) {
+    // only the request is retried, a response that fails while its results
+    // are read is not. Not hedged, an abandoned response would stay open
+    Callable<StreamingResultsReader> request =
+        new Callable<StreamingResultsReader>() {
+          @Override
+          public StreamingResultsReader call() {
+            return openStream(url, metadataQuery);
+          }
+        };
+    return getRetrier().call("POST " + url, request, false);
+  }
+
+  private StreamingResultsReader openStream(String url,
+                                            MetadataQuery metadataQuery) {
+    RestTemplate restTemplate = getRestTemplate();
+    ClientHttpResponse response = null;
+    try {
+      ClientHttpRequest request = restTemplate.getRequestFactory()
+          .createRequest(URI.create(url), HttpMethod.POST);
+      HttpHeaders headers = request.getHeaders();
+      headers.putAll(getAuthHeaders());
+      headers.setContentType(MediaType.APPLICATION_JSON);
+      headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+      QUERY_MAPPER.writeValue(request.getBody(), metadataQuery);
+      // the slot is held until the response starts, reading the results is
+      // up to the caller
+      limiter.acquire();
+      long start = System.nanoTime();
+      boolean overloaded = false;
+      try {
+        response = request.execute();
+        overloaded = ConcurrencyLimiter.isOverloadStatus(
+            response.getRawStatusCode());
+      } catch (SocketTimeoutException e) {
+        overloaded = true;
+        throw e;
+      } finally {
+        limiter.release(System.nanoTime() - start, overloaded);
+      }
+      if (restTemplate.getErrorHandler().hasError(response)) {
+        restTemplate.getErrorHandler().handleError(response);
+      }
+      return new StreamingResultsReader(response.getBody(), response);
+    } catch (IOException | RuntimeException e) {
+      if (response != null) {
+        response.close();
+      }
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * @return the RestTemplate shared by all requests of this client, created
+   *         on first use
+   */
+  RestTemplate getRestTemplate() {
+    RestTemplate template = restTemplate;
+    if (template == null) {
+      synchronized (this) {
+        template = restTemplate;
+        if (template == null) {
+          template = newRestTemplate();
+          restTemplate = template;
+        }
+      }
+    }
+    return template;
+  }
+
+  /**
+   * @return the retrier shared by all requests of this client, created on
+   *         first use and again after the client is closed, like the
+   *         connection pool
+   */
+  private RequestRetrier getRetrier() {
+    RequestRetrier current = retrier;
+    if (current == null) {
+      synchronized (this) {
+        current = retrier;
+        if (current == null) {
+          current = new RequestRetrier(config);
+          retrier = current;
+        }
+      }
+    }
+    return current;
   }
 
   @VisibleForTesting
   RestTemplate newRestTemplate() {
+    HttpClientBuilder builder = HttpClients.custom()
+        .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+        .setMaxConnTotal(config.getMaxConnections())
+        .setKeepAliveStrategy(newKeepAliveStrategy(config.getKeepAliveMillis()))
+        .evictExpiredConnections()
+        .evictIdleConnections(config.getIdleConnectionTimeoutMillis(),
+            TimeUnit.MILLISECONDS);
     if (isSSL) {
-      CloseableHttpClient httpClient = HttpClients.custom()
-          .setSSLContext(sslContext)
-          .setSSLHostnameVerifier(hostnameVerifier)
-          .build();
-      HttpComponentsClientHttpRequestFactory requestFactory =
-          new HttpComponentsClientHttpRequestFactory();
-      requestFactory.setHttpClient(httpClient);
-      return new RestTemplate(requestFactory);
-    } else {
-      return new RestTemplate();
+      builder.setSSLContext(sslContext)
+          .setSSLHostnameVerifier(hostnameVerifier);
+    }
+    // by default the client sends Accept-Encoding: gzip,deflate and
+    // decompresses responses before they reach the message converters
+    if (!config.isResponseCompression()) {
+      builder.disableContentCompression();
+    }
+    httpClient = builder.build();
+    HttpComponentsClientHttpRequestFactory requestFactory =
+        new HttpComponentsClientHttpRequestFactory(httpClient);
+    requestFactory.setConnectTimeout(config.getConnectTimeoutMillis());
+    requestFactory.setReadTimeout(config.getReadTimeoutMillis());
+    return new RestTemplate(requestFactory);
+  }
+
+  private static ConnectionKeepAliveStrategy newKeepAliveStrategy(
+      final long defaultKeepAliveMillis) {
+    return new ConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response,
+                                       HttpContext context) {
+        // honor the server's keep-alive timeout if it sends one
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+            .getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : defaultKeepAliveMillis;
+      }
+    };
+  }
+
+  /**
+   * Close the pooled connections of this client and stop the threads that
+   * send hedged requests. A new pool and retrier are created if the client
+   * is used again.
+   */
+  @Override
+  public synchronized void close() {
+    restTemplate = null;
+    if (retrier != null) {
+      retrier.close();
+      retrier = null;
+    }
+    if (httpClient != null) {
+      try {
+        httpClient.close();
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      } finally {
+        httpClient = null;
+      }
     }
   }
 
@@ -171,11 +462,11 @@ public class NavApiCient {
    * @return
    */
   public Source getSourceForUrl(String serviceUrl) {
-    Source source = sourceCacheByUrl.getIfPresent(serviceUrl);
+    Source source = sourceCache.get().getSourceForUrl(serviceUrl);
     if (source == null) {
-      loadAllSources();
+      // the source may have been added since the snapshot was loaded
+      source = sourceCache.reload().getSourceForUrl(serviceUrl);
     }
-    source = sourceCacheByUrl.getIfPresent(serviceUrl);
     Preconditions.checkArgument(source != null,
         "Could not find Source at " + serviceUrl);
     return source;
@@ -196,10 +487,10 @@ public class NavApiCient {
   }
 
   public Collection<Source> getSourcesForType(SourceType sourceType) {
-    Collection<Source> sources = sourceCacheByType.getIfPresent(sourceType);
+    Collection<Source> sources = sourceCache.get().getSourcesForType(
+        sourceType);
     if (sources == null) {
-      loadAllSources();
-      sources = sourceCacheByType.getIfPresent(sourceType);
+      sources = sourceCache.reload().getSourcesForType(sourceType);
     }
     return sources;
   }
@@ -208,8 +499,34 @@ public class NavApiCient {
    * Clear the cache of Sources that have been previously loaded.
    */
   public void resetSources() {
-    sourceCacheByUrl.invalidateAll();
-    sourceCacheByType.invalidateAll();
+    sourceCache.invalidate();
+  }
+
+  /**
+   * @return the cache of entities found by identity lookups, or null if it
+   *         is disabled
+   */
+  public EntityCache getEntityCache() {
+    return entityCache;
+  }
+
+  /**
+   * Remove the entities with the given identities from the entity cache,
+   * e.g. because they have been written
+   */
+  public void invalidateEntities(Collection<String> ids) {
+    if (entityCache != null) {
+      entityCache.invalidate(ids);
+    }
+  }
+
+  /**
+   * Clear the entity cache
+   */
+  public void invalidateEntities() {
+    if (entityCache != null) {
+      entityCache.invalidateAll();
+    }
   }
 
   /**
@@ -250,32 +567,6 @@ public class NavApiCient {
     return typeUrl + "/paging";
   }
 
-  private void loadAllSources() {
-    Collection<Source> allSources = getAllSources();
-    for (Source source : allSources) {
-      if (source.getSourceUrl() == null) {
-        LOG.warn(String.format("Source %s did not have a source url",
-            source.getName() != null ? source.getName() :
-                source.getIdentity()));
-        continue;
-      }
-      sourceCacheByUrl.put(source.getSourceUrl(), source);
-      try {
-        Collection<Source> forType = sourceCacheByType.get(
-            source.getSourceType(),
-            new Callable<Collection<Source>>() {
-              @Override
-              public Collection<Source> call() throws Exception {
-                return Sets.newHashSet();
-              }
-            });
-        forType.add(source);
-      } catch (ExecutionException e) {
-        throw Throwables.propagate(e);
-      }
-    }
-  }
-
   private static String joinUrlPath(String base, String component) {
     boolean baseSlash = base.endsWith("/");
     boolean componentSlash = component.startsWith("/");
@@ -15,24 +15,38 @@
  */
 package com.cloudera.nav.sdk.client;
 
+import com.cloudera.nav.sdk.client.writer.AsyncMetadataWriter;
+import com.cloudera.nav.sdk.client.writer.MClassWrapper;
 import com.cloudera.nav.sdk.client.writer.MetadataWriter;
 import com.cloudera.nav.sdk.client.writer.MetadataWriterFactory;
 import com.cloudera.nav.sdk.client.writer.ResultSet;
+import com.cloudera.nav.sdk.client.writer.WriteSplitter;
+import com.cloudera.nav.sdk.model.MClassIndex;
 import com.cloudera.nav.sdk.model.MetadataModel;
 import com.cloudera.nav.sdk.model.MetadataModelFactory;
 import com.cloudera.nav.sdk.model.annotations.MClass;
 import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.relations.Relation;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
+import java.io.Closeable;
+import java.net.URL;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang.StringUtils;
 import org.reflections.Reflections;
+import org.reflections.util.ClasspathHelper;
+import org.reflections.util.ConfigurationBuilder;
+import org.reflections.util.FilterBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +55,7 @@ import org.slf4j.LoggerFactory;
  * write enriched data to be combined with Navigator's lineage and metadata
  * information
  */
-public class NavigatorPlugin {
+public class NavigatorPlugin implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(NavigatorPlugin
       .class);
@@ -68,6 +82,9 @@ public class NavigatorPlugin {
   private final ClientConfig config;
   private final MetadataWriterFactory factory;
   private final NavApiCient client;
+  private final WriteDigests digests;
+  // jitter of the waits before retrying failed write requests
+  private final Random random = new Random();
 
   /**
    * The plugin must be configured with the URL for the Navigator API and the
@@ -86,6 +103,12 @@ public class NavigatorPlugin {
     this.config = config;
     this.factory = factory;
     this.client = new NavApiCient(config);
+    // streamed entities are never collected, so they cannot be compared
+    Preconditions.checkArgument(!config.isSkipUnchangedWrites() ||
+        !config.isStreamingWrites(),
+        "Skipping unchanged writes is not supported with streaming writes");
+    this.digests = config.isSkipUnchangedWrites() ?
+        new WriteDigests(config) : null;
   }
 
   /**
@@ -103,13 +126,35 @@ public class NavigatorPlugin {
    * being used by Navigator.
    *
    * Search for classes defined using the @MClass annotation
-   * in the given package. Registers all found classes with Navigator
+   * in the given package. Registers all found classes with Navigator.
+   * Classes of jars and directories compiled with the annotation processor
+   * in navigator-sdk-processor are read from its index, the others are
+   * found by scanning them
    * @param packageName
    */
   @SuppressWarnings("unchecked")
   public MetadataModel registerModels(String packageName) {
-    Reflections ref = new Reflections(packageName + ".");
-    Set<Class<?>> types = ref.getTypesAnnotatedWith(MClass.class);
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (loader == null) {
+      loader = getClass().getClassLoader();
+    }
+    Set<Class<?>> types = Sets.newLinkedHashSet(
+        MClassIndex.getClasses(packageName, loader));
+    Set<String> indexed = MClassIndex.getIndexedRoots(loader);
+    List<URL> unindexed = Lists.newArrayList();
+    for (URL root : ClasspathHelper.forPackage(packageName + ".", loader)) {
+      if (!indexed.contains(root.toExternalForm())) {
+        unindexed.add(root);
+      }
+    }
+    if (!unindexed.isEmpty()) {
+      Reflections ref = new Reflections(new ConfigurationBuilder()
+          .setUrls(unindexed)
+          .addClassLoader(loader)
+          .filterInputsBy(new FilterBuilder().includePackage(
+              packageName + ".")));
+      types.addAll(ref.getTypesAnnotatedWith(MClass.class));
+    }
     Collection<Class<Entity>> modelClasses = Lists.newArrayListWithExpectedSize(
         types.size() + 1);
     for (Class<?> aClass : types) {
@@ -137,13 +182,32 @@ public class NavigatorPlugin {
     return registerModels(Collections.singleton(entityClass));
   }
 
+  /**
+   * Register the given classes with Navigator. If a model cache directory is
+   * configured, only the classes and properties that changed since they were
+   * last registered from this host are sent, and nothing is sent if none
+   * did. The cached model is returned in that case.
+   */
   public MetadataModel registerModels(
       Collection<? extends Class<? extends Entity>> classes) {
     Preconditions.checkArgument(config.getApiVersion() >= 9,
         "Model registration not supported by API earlier than v9");
     MetadataModelFactory factory = new MetadataModelFactory();
     MetadataModel model = factory.newModel(classes, getConfig().getNamespace());
-    return getClient().registerModels(model);
+    if (config.getModelCacheDir() == null) {
+      return getClient().registerModels(model);
+    }
+    ModelCache cache = new ModelCache(config);
+    ModelCache.Entry registered = cache.read();
+    MetadataModel changes = ModelCache.diff(registered, model);
+    if (changes == null) {
+      LOG.info("Models already registered: {}", classes);
+      cache.save(registered, model, null);
+      return registered.getModel();
+    }
+    MetadataModel response = getClient().registerModels(changes);
+    cache.save(registered, model, changes);
+    return response;
   }
 
   /**
@@ -155,13 +219,67 @@ public class NavigatorPlugin {
   }
 
   /**
-   * Write a collection of custom entities
+   * Write a collection of custom entities. If the entities and the relations
+   * implied by them exceed the configured write batch size or bytes, they are
+   * written in several requests and the combined results of all requests are
+   * returned. Each request that fails with an I/O error, a 5xx or a 429
+   * response is retried after a random backoff. Streaming writes are always
+   * sent in a single request and are not retried. If skipping unchanged
+   * writes is configured, entities and relations that have not changed since
+   * they were last written are left out, and nothing is sent if none have;
+   * it cannot be combined with streaming writes. The written entities are
+   * removed from the client's entity cache.
    * @param entities
    */
   public ResultSet write(Collection<Entity> entities) {
+    return write(entities, Collections.<Relation>emptyList());
+  }
+
+  /**
+   * Write a collection of custom entities and the given relations in
+   * addition to those implied by the entities, in the same way as
+   * {@link #write(Collection)}. The given relations are written after all
+   * entities.
+   * @param entities
+   * @param relations
+   */
+  public ResultSet write(Collection<Entity> entities,
+                         Collection<Relation> relations) {
+    if (config.isStreamingWrites()) {
+      // the written graph is never collected
+      try {
+        return writeAll(entities, relations);
+      } finally {
+        client.invalidateEntities();
+      }
+    }
+    List<MClassWrapper> graphs = new WriteSplitter(config).split(entities,
+        relations);
+    if (digests != null) {
+      graphs = digests.removeUnchanged(graphs);
+    }
+    try {
+      if (digests != null) {
+        return writeChangedGraphs(graphs);
+      }
+      return writeGraphs(graphs);
+    } finally {
+      // cached copies are stale even if only part of the write succeeded
+      List<String> written = Lists.newArrayList();
+      for (MClassWrapper graph : graphs) {
+        for (Entity entity : graph.getEntities()) {
+          written.add(entity.getIdentity());
+        }
+      }
+      client.invalidateEntities(written);
+    }
+  }
+
+  private ResultSet writeAll(Collection<Entity> entities,
+                             Collection<Relation> relations) {
     MetadataWriter writer = factory.newWriter();
     try {
-      writer.write(entities);
+      writer.write(entities, relations);
       writer.flush();
     } finally {
       writer.close();
@@ -169,6 +287,102 @@ public class NavigatorPlugin {
     return writer.getLastResultSet();
   }
 
+  private ResultSet writeGraphs(List<MClassWrapper> graphs) {
+    if (graphs.isEmpty()) {
+      return emptyResult();
+    }
+    if (graphs.size() == 1) {
+      return writeGraph(graphs.get(0));
+    }
+    LOG.info("Splitting write into {} requests", graphs.size());
+    List<ResultSet> results = Lists.newArrayListWithCapacity(graphs.size());
+    for (MClassWrapper graph : graphs) {
+      results.add(writeGraph(graph));
+    }
+    return ResultSet.merge(results);
+  }
+
+  private ResultSet writeChangedGraphs(List<MClassWrapper> graphs) {
+    if (graphs.isEmpty()) {
+      LOG.debug("Nothing changed since the last write");
+      return emptyResult();
+    }
+    if (graphs.size() > 1) {
+      LOG.info("Splitting write into {} requests", graphs.size());
+    }
+    List<ResultSet> results = Lists.newArrayListWithCapacity(graphs.size());
+    try {
+      for (MClassWrapper graph : graphs) {
+        ResultSet result = writeGraph(graph);
+        // anything may have been rejected if errors were reported
+        if (result == null || !result.hasErrors()) {
+          digests.record(graph);
+        }
+        results.add(result);
+      }
+    } finally {
+      digests.save();
+    }
+    return ResultSet.merge(results);
+  }
+
+  private ResultSet writeGraph(final MClassWrapper graph) {
+    // only the failed request is retried, earlier ones have been committed.
+    // Writes are never hedged, so the retrier holds no threads
+    RequestRetrier retrier = new RequestRetrier(config.getWriteMaxRetries(),
+        config.getRetryBackoffMillis(), config.getRetryMaxBackoffMillis(),
+        false, random);
+    return retrier.call(String.format("Write of %s entities and %s " +
+        "relations", graph.getEntities().size(), graph.getRelations().size()),
+        new Callable<ResultSet>() {
+          @Override
+          public ResultSet call() {
+            MetadataWriter writer = factory.newWriter();
+            try {
+              writer.writeGraph(graph);
+              writer.flush();
+            } catch (RuntimeException e) {
+              closeQuietly(writer);
+              throw e;
+            }
+            writer.close();
+            return writer.getLastResultSet();
+          }
+        }, false);
+  }
+
+  private static ResultSet emptyResult() {
+    return new ResultSet(
+        new ResultSet.UpdateWrapper(0, Collections.<String>emptyList()),
+        new ResultSet.UpdateWrapper(0, Collections.<String>emptyList()));
+  }
+
+  private static void closeQuietly(MetadataWriter writer) {
+    try {
+      writer.close();
+    } catch (RuntimeException e) {
+      LOG.debug("Error closing failed writer", e);
+    }
+  }
+
+  /**
+   * Create a writer that batches writes from any number of threads and sends
+   * them in the background. Each batch is written with
+   * {@link #write(Collection, Collection)}, so it is split, retried, left
+   * out if unchanged and evicted from the entity cache like any other write.
+   * The caller is responsible for closing it.
+   */
+  public AsyncMetadataWriter newAsyncWriter() {
+    return new AsyncMetadataWriter(config,
+        new AsyncMetadataWriter.BatchWriter() {
+          @Override
+          public ResultSet write(Collection<Entity> entities,
+                                 Collection<Relation> relations) {
+            return NavigatorPlugin.this.write(entities, relations);
+          }
+        });
+  }
+
   /**
    * @return a client to communicate with the Navigator REST API
    */
@@ -183,4 +397,12 @@ public class NavigatorPlugin {
   public String getNamespace() {
     return config.getNamespace();
   }
+
+  /**
+   * Release the connections held by the Navigator API client
+   */
+  @Override
+  public void close() {
+    client.close();
+  }
 }
\ No newline at end of file
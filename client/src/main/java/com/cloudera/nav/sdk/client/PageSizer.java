@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the page size of cursorMark paging between requests. After each
+ * page the size is scaled toward the number of results that would have
+ * taken the target time to fetch and the target number of bytes to hold,
+ * judging by the page just received. The size at most halves or doubles per
+ * page and stays within the configured bounds. Safe to share between the
+ * pagers of one extraction.
+ */
+class PageSizer {
+
+  private static final double MAX_STEP = 2.0;
+
+  private final int minPageSize;
+  private final int maxPageSize;
+  private final long targetNanos;
+  private final long targetBytes;
+  private int pageSize;
+
+  PageSizer(int initialPageSize, ClientConfig config) {
+    this(initialPageSize, config.getMinPageSize(), config.getMaxPageSize(),
+        config.getPageTargetMillis(), config.getPageTargetBytes());
+  }
+
+  PageSizer(int initialPageSize, int minPageSize, int maxPageSize,
+            long targetMillis, long targetBytes) {
+    Preconditions.checkArgument(minPageSize > 0 && minPageSize <= maxPageSize,
+        "Invalid page size bounds [%s, %s]", minPageSize, maxPageSize);
+    Preconditions.checkArgument(targetMillis > 0 && targetBytes > 0,
+        "Page targets must be positive");
+    this.minPageSize = minPageSize;
+    this.maxPageSize = maxPageSize;
+    this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+    this.targetBytes = targetBytes;
+    this.pageSize = clamp(initialPageSize);
+  }
+
+  /**
+   * @return page size for the next request
+   */
+  synchronized int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Adjust the page size to a page of the given results that took the given
+   * time to fetch. The last, partial page of a query says little about the
+   * cost of a full one and is ignored.
+   */
+  synchronized void record(int requested, List<Map<String, Object>> results,
+                           long elapsedNanos) {
+    if (results.isEmpty() || results.size() < requested) {
+      return;
+    }
+    double scale = (double) targetNanos / Math.max(elapsedNanos, 1);
+    scale = Math.min(scale,
+        (double) targetBytes / Math.max(EntityCache.estimateBytes(results), 1));
+    scale = Math.max(1 / MAX_STEP, Math.min(MAX_STEP, scale));
+    pageSize = clamp((int) Math.min(Integer.MAX_VALUE,
+        Math.round(results.size() * scale)));
+  }
+
+  private int clamp(int size) {
+    return Math.max(minPageSize, Math.min(maxPageSize, size));
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pages through several independent queries at once on a bounded pool of
+ * worker threads and merges their batches into a single sequence.
+ *
+ * Each worker claims the next query from the shared partition iterator and
+ * pages through it to the end before claiming another. In ordered mode every
+ * claimed query gets its own buffer and the buffers are consumed in claim
+ * order, so batches come out exactly as they would from serial paging. A
+ * worker only claims a query once fewer than parallelism buffers are waiting
+ * to be consumed, so workers that finish short queries cannot run ahead of a
+ * slow consumer. In unordered mode all workers share one buffer and batches
+ * are returned as soon as they arrive. Either way, at most depth batches per
+ * worker are buffered.
+ */
+class ParallelBatchFetcher implements BatchSource {
+
+  private static final Object END_OF_PARTITION = new Object();
+  private static final Object END_OF_DATA = new Object();
+
+  private final Iterator<? extends Iterator<ResultsBatch<Map<String, Object>>>>
+      partitions;
+  private final boolean ordered;
+  private final int depth;
+  // buffers in the order they must be consumed; only one in unordered mode
+  private final BlockingQueue<BlockingQueue<Object>> buffers =
+      new LinkedBlockingQueue<>();
+  private final BlockingQueue<Object> sharedBuffer;
+  // one permit per partition buffer not yet consumed, ordered mode only
+  private final Semaphore claims;
+  private final AtomicInteger activeWorkers;
+  private final ExecutorService executor;
+  private BlockingQueue<Object> currentBuffer;
+  private boolean done;
+
+  ParallelBatchFetcher(
+      Iterator<? extends Iterator<ResultsBatch<Map<String, Object>>>> partitions,
+      int parallelism, int depth, boolean ordered) {
+    Preconditions.checkArgument(parallelism > 0,
+        "Parallelism must be positive, got %s", parallelism);
+    Preconditions.checkArgument(depth > 0,
+        "Buffer depth must be positive, got %s", depth);
+    this.partitions = partitions;
+    this.ordered = ordered;
+    this.depth = depth;
+    this.claims = new Semaphore(parallelism);
+    if (ordered) {
+      sharedBuffer = null;
+    } else {
+      sharedBuffer = new ArrayBlockingQueue<>(parallelism * depth);
+      buffers.add(sharedBuffer);
+    }
+    this.activeWorkers = new AtomicInteger(parallelism);
+    this.executor = Executors.newFixedThreadPool(parallelism,
+        new ThreadFactoryBuilder()
+            .setNameFormat("nav-batch-fetcher-%d")
+            .setDaemon(true)
+            .build());
+    for (int i = 0; i < parallelism; i++) {
+      executor.execute(new Worker());
+    }
+    executor.shutdown();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public ResultsBatch<Map<String, Object>> take() {
+    if (done) {
+      return null;
+    }
+    try {
+      while (true) {
+        if (currentBuffer == null) {
+          currentBuffer = buffers.take();
+        }
+        Object next = currentBuffer.take();
+        if (next == END_OF_PARTITION) {
+          currentBuffer = null;
+          claims.release();
+        } else if (next == END_OF_DATA) {
+          close();
+          return null;
+        } else if (next instanceof Throwable) {
+          close();
+          throw Throwables.propagate((Throwable) next);
+        } else {
+          return (ResultsBatch<Map<String, Object>>) next;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  public void close() {
+    done = true;
+    executor.shutdownNow();
+    buffers.clear();
+    currentBuffer = null;
+  }
+
+  private BlockingQueue<Object> newBuffer(int capacity) {
+    BlockingQueue<Object> buffer = new ArrayBlockingQueue<>(capacity);
+    buffers.add(buffer);
+    return buffer;
+  }
+
+  private void finish() throws InterruptedException {
+    if (activeWorkers.decrementAndGet() > 0) {
+      return;
+    }
+    if (ordered) {
+      synchronized (partitions) {
+        newBuffer(1).put(END_OF_DATA);
+      }
+    } else {
+      sharedBuffer.put(END_OF_DATA);
+    }
+  }
+
+  private class Worker implements Runnable {
+
+    private BlockingQueue<Object> buffer = sharedBuffer;
+
+    @Override
+    public void run() {
+      try {
+        boolean paging = false;
+        try {
+          Iterator<ResultsBatch<Map<String, Object>>> partition;
+          while ((partition = claim()) != null) {
+            paging = true;
+            while (partition.hasNext()) {
+              buffer.put(partition.next());
+            }
+            if (ordered) {
+              buffer.put(END_OF_PARTITION);
+            }
+            paging = false;
+          }
+        } catch (RuntimeException | Error e) {
+          // hand the failure over to the consumer at the point where it
+          // would have consumed the failed partition
+          if (paging || !ordered) {
+            buffer.put(e);
+          } else {
+            synchronized (partitions) {
+              newBuffer(1).put(e);
+            }
+          }
+        }
+        finish();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Claim the next partition and register its buffer, waiting in ordered
+     * mode until fewer than parallelism buffers are left to be consumed.
+     * Returns null when all partitions have been claimed.
+     */
+    private Iterator<ResultsBatch<Map<String, Object>>> claim()
+        throws InterruptedException {
+      if (ordered) {
+        claims.acquire();
+      }
+      synchronized (partitions) {
+        if (!partitions.hasNext()) {
+          if (ordered) {
+            claims.release();
+          }
+          return null;
+        }
+        Iterator<ResultsBatch<Map<String, Object>>> partition =
+            partitions.next();
+        buffer = ordered ? newBuffer(depth) : sharedBuffer;
+        return partition;
+      }
+    }
+  }
+}
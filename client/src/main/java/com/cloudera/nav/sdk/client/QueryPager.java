@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.collect.AbstractIterator;
+
+import java.util.Map;
+
+/**
+ * Pages through the results of a single query by following its cursorMark
+ * chain. Only non-empty batches are returned. The last batch is the first one
+ * with fewer results than the limit of its request.
+ */
+class QueryPager extends AbstractIterator<ResultsBatch<Map<String, Object>>> {
+
+  private final NavApiCient client;
+  private final MetadataType type;
+  private final String query;
+  private final Integer limit;
+  private final PageSizer pageSizer;
+  private String cursorMark = "*";
+  private boolean lastBatch;
+
+  QueryPager(NavApiCient client, MetadataType type, String query,
+             Integer limit) {
+    this(client, type, query, limit, null);
+  }
+
+  /**
+   * @param pageSizer if not null, decides the limit of each request instead
+   *                  of the given limit
+   */
+  QueryPager(NavApiCient client, MetadataType type, String query,
+             Integer limit, PageSizer pageSizer) {
+    this.client = client;
+    this.type = type;
+    this.query = query;
+    this.limit = limit;
+    this.pageSizer = pageSizer;
+  }
+
+  @Override
+  protected ResultsBatch<Map<String, Object>> computeNext() {
+    while (!lastBatch) {
+      int pageLimit = pageSizer == null ? limit : pageSizer.getPageSize();
+      long start = System.nanoTime();
+      ResultsBatch<Map<String, Object>> response = fetch(client, type,
+          new MetadataQuery(query, pageLimit, cursorMark));
+      if (pageSizer != null) {
+        pageSizer.record(pageLimit, response.getResults(),
+            System.nanoTime() - start);
+      }
+      cursorMark = response.getCursorMark();
+      lastBatch = response.getResults().size() < pageLimit;
+      if (!response.getResults().isEmpty()) {
+        return response;
+      }
+    }
+    return endOfData();
+  }
+
+  /**
+   * Send a single paging request for the given metadata type
+   */
+  static ResultsBatch<Map<String, Object>> fetch(NavApiCient client,
+                                                 MetadataType type,
+                                                 MetadataQuery query) {
+    switch(type) {
+      case ENTITIES:
+        return client.getEntityBatch(query);
+      case RELATIONS:
+        return client.getRelationBatch(query);
+      default:
+        throw new UnsupportedOperationException("Invalid MetadataType " +
+            type.name());
+    }
+  }
+}
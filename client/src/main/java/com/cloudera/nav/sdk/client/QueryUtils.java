@@ -16,9 +16,13 @@
 
 package com.cloudera.nav.sdk.client;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -27,6 +31,14 @@ import org.apache.commons.lang.StringUtils;
  */
 public class QueryUtils {
 
+  /**
+   * Value sets at least this large are matched with a {!terms} filter
+   * instead of an OR chain
+   */
+  public static final int TERMS_THRESHOLD = 16;
+  private static final String TERMS_SEPARATOR = ",";
+  private static final String OR = " OR ";
+
   /**
    * Makes a conjunctive "AND" Solr query with two clauses.
    *
@@ -71,4 +83,141 @@ public class QueryUtils {
     String typeClause = buildConjunctiveClause("type", types);
     return conjoinSolrQueries(sourceClause, typeClause);
   }
+
+  /**
+   * Escape the characters that have a meaning in Solr query syntax so that
+   * the given value is matched literally.
+   *
+   * @param value raw field value
+   * @return value with special characters and whitespace escaped
+   */
+  public static String escapeQueryChars(String value) {
+    StringBuilder sb = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if ("\\+-!():^[]\"{}~*?|&;/".indexOf(c) >= 0 ||
+          Character.isWhitespace(c)) {
+        sb.append('\\');
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Builds a clause that matches any of the given literal values of a field.
+   * Large value sets become a {!terms} filter, small ones and values that
+   * contain the terms separator an OR chain of escaped values.
+   *
+   * @param fieldName field name that clause values can satisfy
+   * @param values literal values, not escaped
+   * @return clause matching any of the values
+   */
+  public static String buildTermsClause(String fieldName,
+                                        Collection<String> values) {
+    Preconditions.checkArgument(!values.isEmpty(),
+        "Terms clause needs at least one value");
+    List<String> terms = Lists.newArrayList();
+    List<String> literals = Lists.newArrayList();
+    for (String value : values) {
+      (value.contains(TERMS_SEPARATOR) ? literals : terms).add(value);
+    }
+    if (values.size() < TERMS_THRESHOLD || terms.isEmpty()) {
+      return buildLiteralClause(fieldName, values);
+    }
+    String termsClause = "{!terms f=" + fieldName + " v=\"" +
+        Joiner.on(TERMS_SEPARATOR).join(escapeQuoted(terms)) + "\"}";
+    if (literals.isEmpty()) {
+      return termsClause;
+    }
+    return "(" + termsClause + OR + buildLiteralClause(fieldName, literals) +
+        ")";
+  }
+
+  /**
+   * Splits the given literal values into clauses built by buildTermsClause
+   * whose UTF-8 encoding stays within the given number of bytes. A single
+   * value that does not fit gets a clause of its own. A document matching
+   * values in several clauses is matched by each of them.
+   *
+   * @param fieldName field name that clause values can satisfy
+   * @param values literal values, not escaped
+   * @param maxBytes maximum size of each clause
+   * @return clauses that together match any of the values
+   */
+  public static List<String> buildTermsClauses(String fieldName,
+                                               Iterable<String> values,
+                                               int maxBytes) {
+    List<String> clauses = Lists.newArrayList();
+    List<String> batch = Lists.newArrayList();
+    // sizes of the joined values of each form, as rendered by
+    // buildTermsClause
+    int termsSize = 0;
+    int literalSize = 0;
+    int chainSize = 0;
+    for (String value : values) {
+      int literal = utf8Length(escapeQueryChars(value)) + OR.length();
+      int terms = value.contains(TERMS_SEPARATOR) ? 0 :
+          utf8Length(escapeQuoted(value)) + TERMS_SEPARATOR.length();
+      if (!batch.isEmpty() && clauseSize(fieldName, batch.size() + 1,
+          termsSize + terms, literalSize + (terms == 0 ? literal : 0),
+          chainSize + literal) > maxBytes) {
+        clauses.add(buildTermsClause(fieldName, batch));
+        batch = Lists.newArrayList();
+        termsSize = 0;
+        literalSize = 0;
+        chainSize = 0;
+      }
+      batch.add(value);
+      termsSize += terms;
+      literalSize += terms == 0 ? literal : 0;
+      chainSize += literal;
+    }
+    if (!batch.isEmpty()) {
+      clauses.add(buildTermsClause(fieldName, batch));
+    }
+    return clauses;
+  }
+
+  private static int clauseSize(String fieldName, int count, int termsSize,
+                                int literalSize, int chainSize) {
+    // each size includes one separator too many
+    int chain = utf8Length(fieldName + ":()") + chainSize - OR.length();
+    if (count < TERMS_THRESHOLD || termsSize == 0) {
+      return chain;
+    }
+    int terms = utf8Length("{!terms f=" + fieldName + " v=\"\"}") +
+        termsSize - TERMS_SEPARATOR.length();
+    if (literalSize == 0) {
+      return terms;
+    }
+    return terms + utf8Length("()" + OR + fieldName + ":()") + literalSize -
+        OR.length();
+  }
+
+  private static String buildLiteralClause(String fieldName,
+                                           Collection<String> values) {
+    List<String> escaped = Lists.newArrayListWithCapacity(values.size());
+    for (String value : values) {
+      escaped.add(escapeQueryChars(value));
+    }
+    return buildConjunctiveClause(fieldName, escaped);
+  }
+
+  private static List<String> escapeQuoted(List<String> values) {
+    List<String> escaped = Lists.newArrayListWithCapacity(values.size());
+    for (String value : values) {
+      escaped.add(escapeQuoted(value));
+    }
+    return escaped;
+  }
+
+  private static String escapeQuoted(String value) {
+    // local param values are double quoted strings with backslash escapes
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private static int utf8Length(String s) {
+    return s.getBytes(Charsets.UTF_8).length;
+  }
 }
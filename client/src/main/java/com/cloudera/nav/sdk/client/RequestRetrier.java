@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+
+/**
+ * Sends idempotent requests, retrying them when they fail and optionally
+ * hedging slow ones.
+ *
+ * A request that fails with an I/O error, a 5xx response or a 429 response
+ * is sent again, up to maxRetries times, after a random wait between 0 and
+ * backoff * 2^retry milliseconds, capped at maxBackoff. The random waits keep
+ * clients that failed together from retrying together. Requests rejected for
+ * any other reason fail right away. The request is sent unchanged, so a page
+ * of results is fetched again from the same cursorMark.
+ *
+ * With hedging, the latencies of recent successful requests are recorded.
+ * Once there are enough of them, a request that has not been answered within
+ * their 95th percentile is sent a second time and whichever copy answers
+ * first is used; the other is abandoned.
+ */
+class RequestRetrier implements Closeable {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(RequestRetrier.class);
+  static final int LATENCY_SAMPLES = 100;
+  static final int MIN_HEDGE_SAMPLES = 20;
+  private static final double HEDGE_PERCENTILE = 0.95;
+
+  private final int maxRetries;
+  private final long backoffMillis;
+  private final long maxBackoffMillis;
+  private final boolean hedging;
+  private final Random random;
+  // ring buffer of the latest latencies in nanoseconds
+  private final long[] latencies = new long[LATENCY_SAMPLES];
+  private int latencyCount;
+  private ExecutorService hedgeExecutor;
+
+  RequestRetrier(ClientConfig config) {
+    this(config.getRequestMaxRetries(), config.getRetryBackoffMillis(),
+        config.getRetryMaxBackoffMillis(), config.isRequestHedging(),
+        new Random());
+  }
+
+  RequestRetrier(int maxRetries, long backoffMillis, long maxBackoffMillis,
+                 boolean hedging, Random random) {
+    Preconditions.checkArgument(maxRetries >= 0 && backoffMillis >= 0 &&
+        maxBackoffMillis >= 0, "Retry settings must not be negative");
+    this.maxRetries = maxRetries;
+    this.backoffMillis = backoffMillis;
+    this.maxBackoffMillis = maxBackoffMillis;
+    this.hedging = hedging;
+    this.random = random;
+  }
+
+  /**
+   * Send a request, retrying it on failure
+   *
+   * @param description what is requested, for logging
+   * @param request sends the request and returns its result; must be safe to
+   *                call more than once
+   * @param hedge whether the request may be hedged. Requests whose result
+   *              holds resources, like an open response, must not be
+   * @return result of the first successful attempt
+   */
+  <T> T call(String description, Callable<T> request, boolean hedge) {
+    for (int retry = 0; ; retry++) {
+      try {
+        return hedging && hedge ? callHedged(request) : callTimed(request);
+      } catch (RuntimeException e) {
+        if (retry >= maxRetries || !isRetriable(e)) {
+          throw e;
+        }
+        long wait = backoff(retry);
+        LOG.warn("{} failed, retrying in {} ms", description, wait, e);
+        sleep(wait);
+      }
+    }
+  }
+
+  /**
+   * @return whether a request that failed with the given error may succeed
+   *         if sent again
+   */
+  static boolean isRetriable(RuntimeException e) {
+    if (e instanceof HttpStatusCodeException) {
+      int status = ((HttpStatusCodeException) e).getStatusCode().value();
+      return status >= 500 || status == 429;
+    }
+    for (Throwable cause : Throwables.getCausalChain(e)) {
+      // a body that cannot be serialized or parsed will not be next time
+      if (cause instanceof JsonProcessingException) {
+        return false;
+      }
+      if (cause instanceof IOException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return random wait in milliseconds before the given retry, counted
+   *         from 0
+   */
+  long backoff(int retry) {
+    long bound = backoffMillis << Math.min(retry, 30);
+    if (bound < 0 || bound > maxBackoffMillis) {
+      bound = maxBackoffMillis;
+    }
+    synchronized (random) {
+      return (long) (random.nextDouble() * bound);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private <T> T callTimed(Callable<T> request) {
+    long start = System.nanoTime();
+    T result;
+    try {
+      result = request.call();
+    } catch (Exception e) {
+      throw Throwables.propagate(e);
+    }
+    recordLatency(System.nanoTime() - start);
+    return result;
+  }
+
+  private <T> T callHedged(final Callable<T> request) {
+    long delay = getHedgeDelayNanos();
+    if (delay < 0) {
+      return callTimed(request);
+    }
+    Callable<T> timed = new Callable<T>() {
+      @Override
+      public T call() {
+        return callTimed(request);
+      }
+    };
+    CompletionService<T> completion =
+        new ExecutorCompletionService<>(getHedgeExecutor());
+    List<Future<T>> copies = Lists.newArrayListWithCapacity(2);
+    try {
+      copies.add(completion.submit(timed));
+      Future<T> done = completion.poll(delay, TimeUnit.NANOSECONDS);
+      if (done == null) {
+        LOG.debug("No response after {} ms, sending request again",
+            TimeUnit.NANOSECONDS.toMillis(delay));
+        copies.add(completion.submit(timed));
+        done = completion.take();
+      }
+      try {
+        return done.get();
+      } catch (ExecutionException e) {
+        if (copies.size() == 1) {
+          throw e;
+        }
+        // the other copy may still succeed
+        return completion.take().get();
+      }
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } finally {
+      for (Future<T> copy : copies) {
+        copy.cancel(true);
+      }
+    }
+  }
+
+  private synchronized void recordLatency(long nanos) {
+    latencies[latencyCount % LATENCY_SAMPLES] = nanos;
+    latencyCount++;
+  }
+
+  /**
+   * @return time after which a request is hedged, or -1 if too few
+   *         latencies have been recorded
+   */
+  synchronized long getHedgeDelayNanos() {
+    if (latencyCount < MIN_HEDGE_SAMPLES) {
+      return -1;
+    }
+    long[] sorted = Arrays.copyOf(latencies,
+        Math.min(latencyCount, LATENCY_SAMPLES));
+    Arrays.sort(sorted);
+    return sorted[(int) Math.ceil(HEDGE_PERCENTILE * sorted.length) - 1];
+  }
+
+  private synchronized ExecutorService getHedgeExecutor() {
+    if (hedgeExecutor == null) {
+      hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setNameFormat("nav-hedged-request-%d")
+          .setDaemon(true)
+          .build());
+    }
+    return hedgeExecutor;
+  }
+
+  /**
+   * Stop the threads that send hedged requests. New ones are started if
+   * requests are hedged again.
+   */
+  @Override
+  public synchronized void close() {
+    if (hedgeExecutor != null) {
+      hedgeExecutor.shutdownNow();
+      hedgeExecutor = null;
+    }
+  }
+}
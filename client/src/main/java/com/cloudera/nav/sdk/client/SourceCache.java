@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.Source;
+import com.cloudera.nav.sdk.model.SourceType;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread-safe cache of all Navigator sources. The sources are held in an
+ * immutable snapshot that is replaced as a whole on every load. Concurrent
+ * callers that need a load share a single request. A snapshot expires after
+ * the configured TTL and is refreshed in the background once three quarters
+ * of the TTL have passed, so callers rarely wait for a load.
+ */
+public class SourceCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SourceCache.class);
+
+  /**
+   * Immutable view of the sources known at the time they were loaded
+   */
+  public static class Snapshot {
+    private final ImmutableList<Source> sources;
+    private final ImmutableMap<String, Source> byUrl;
+    private final ImmutableMap<SourceType, ImmutableSet<Source>> byType;
+    private final long loadedAt;
+
+    Snapshot(Collection<Source> sources, long loadedAt) {
+      this.sources = ImmutableList.copyOf(sources);
+      this.loadedAt = loadedAt;
+      Map<String, Source> byUrl = Maps.newHashMap();
+      Map<SourceType, ImmutableSet.Builder<Source>> byType =
+          Maps.newEnumMap(SourceType.class);
+      for (Source source : sources) {
+        if (source.getSourceUrl() == null) {
+          LOG.warn(String.format("Source %s did not have a source url",
+              source.getName() != null ? source.getName() :
+                  source.getIdentity()));
+          continue;
+        }
+        byUrl.put(source.getSourceUrl(), source);
+        ImmutableSet.Builder<Source> forType =
+            byType.get(source.getSourceType());
+        if (forType == null) {
+          forType = ImmutableSet.builder();
+          byType.put(source.getSourceType(), forType);
+        }
+        forType.add(source);
+      }
+      this.byUrl = ImmutableMap.copyOf(byUrl);
+      ImmutableMap.Builder<SourceType, ImmutableSet<Source>> types =
+          ImmutableMap.builder();
+      for (Map.Entry<SourceType, ImmutableSet.Builder<Source>> entry :
+          byType.entrySet()) {
+        types.put(entry.getKey(), entry.getValue().build());
+      }
+      this.byType = types.build();
+    }
+
+    /**
+     * @return all sources, including those without a source url
+     */
+    public Collection<Source> getAllSources() {
+      return sources;
+    }
+
+    /**
+     * @return the Source at the given url, or null if there is none
+     */
+    public Source getSourceForUrl(String serviceUrl) {
+      return byUrl.get(serviceUrl);
+    }
+
+    /**
+     * @return the sources of the given type, or null if there are none
+     */
+    public Collection<Source> getSourcesForType(SourceType sourceType) {
+      return byType.get(sourceType);
+    }
+  }
+
+  private final Callable<? extends Collection<Source>> loader;
+  private final long ttlNanos;
+  private final Ticker ticker;
+  private final Executor refreshExecutor;
+  private volatile Snapshot current;
+  private SettableFuture<Snapshot> inFlight;
+
+  /**
+   * @param loader loads all sources from Navigator
+   * @param ttlMillis time after which a snapshot is reloaded, 0 for never
+   */
+  public SourceCache(Callable<? extends Collection<Source>> loader,
+                     long ttlMillis) {
+    this(loader, ttlMillis, Ticker.systemTicker());
+  }
+
+  SourceCache(Callable<? extends Collection<Source>> loader, long ttlMillis,
+              Ticker ticker) {
+    this.loader = loader;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.ticker = ticker;
+    // a single background thread that goes away when idle
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder()
+            .setNameFormat("nav-source-refresh-%d")
+            .setDaemon(true)
+            .build());
+    executor.allowCoreThreadTimeOut(true);
+    this.refreshExecutor = executor;
+  }
+
+  /**
+   * @return the current snapshot, loading a new one if there is none or it
+   *         has expired
+   */
+  public Snapshot get() {
+    Snapshot snapshot = current;
+    if (snapshot != null) {
+      if (ttlNanos <= 0) {
+        return snapshot;
+      }
+      long age = ticker.read() - snapshot.loadedAt;
+      if (age < ttlNanos) {
+        if (age >= ttlNanos / 4 * 3) {
+          refresh(snapshot, true);
+        }
+        return snapshot;
+      }
+    }
+    return getUnchecked(refresh(snapshot, false));
+  }
+
+  /**
+   * Load a new snapshot, or wait for the load already in progress
+   *
+   * @return the new snapshot
+   */
+  public Snapshot reload() {
+    return getUnchecked(refresh(null, false));
+  }
+
+  /**
+   * Drop the current snapshot so that the next call loads a new one
+   */
+  public void invalidate() {
+    current = null;
+  }
+
+  /**
+   * @param observed snapshot that was found to be stale, the load is skipped
+   *                 if it has been replaced by another one since. null to
+   *                 always load
+   */
+  private ListenableFuture<Snapshot> refresh(Snapshot observed,
+                                             final boolean background) {
+    final SettableFuture<Snapshot> future;
+    synchronized (this) {
+      if (inFlight != null) {
+        return inFlight;
+      }
+      Snapshot snapshot = current;
+      // an invalidated snapshot has not been replaced, it must be loaded
+      if (observed != null && snapshot != null && snapshot != observed) {
+        return Futures.immediateFuture(snapshot);
+      }
+      future = SettableFuture.create();
+      inFlight = future;
+    }
+    Runnable load = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Snapshot snapshot = new Snapshot(loader.call(), ticker.read());
+          // callers that see the new snapshot expire must not join this load
+          publish(snapshot);
+          future.set(snapshot);
+        } catch (Throwable t) {
+          if (background) {
+            // the current snapshot is still served until it expires
+            LOG.warn("Background refresh of sources failed", t);
+          }
+          clearInFlight();
+          future.setException(t);
+        }
+      }
+    };
+    if (background) {
+      refreshExecutor.execute(load);
+    } else {
+      load.run();
+    }
+    return future;
+  }
+
+  private static Snapshot getUnchecked(ListenableFuture<Snapshot> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
+  private synchronized void publish(Snapshot snapshot) {
+    current = snapshot;
+    inFlight = null;
+  }
+
+  private synchronized void clearInFlight() {
+    inFlight = null;
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a single page of paging results from the response stream one result
+ * at a time, so that only the result being consumed is held in memory
+ * regardless of the page size. Unknown fields are skipped. The cursorMark
+ * and the number of results are available once all results have been read.
+ */
+public class StreamingResultsReader
+    extends AbstractIterator<Map<String, Object>> implements Closeable {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final TypeReference<Map<String, Object>> RESULT_TYPE =
+      new TypeReference<Map<String, Object>>() {};
+  private static final String CURSOR_MARK_FIELD = "cursorMark";
+  private static final Set<String> RESULTS_FIELDS =
+      ImmutableSet.of("results", "entities", "relations");
+
+  private final JsonParser parser;
+  private final Closeable source;
+  private String cursorMark;
+  private int count;
+  private boolean inResults;
+  private boolean closed;
+
+  /**
+   * @param in response body, closed along with this reader
+   */
+  public StreamingResultsReader(InputStream in) {
+    this(in, in);
+  }
+
+  /**
+   * @param in response body
+   * @param source resource to release when this reader is closed
+   */
+  public StreamingResultsReader(InputStream in, Closeable source) {
+    this.source = source;
+    try {
+      this.parser = MAPPER.getFactory().createParser(in);
+      Preconditions.checkState(parser.nextToken() == JsonToken.START_OBJECT,
+          "Expected a JSON object in paging response");
+    } catch (IOException e) {
+      closeQuietly();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  @Override
+  protected Map<String, Object> computeNext() {
+    try {
+      if (inResults) {
+        if (parser.nextToken() == JsonToken.START_OBJECT) {
+          count++;
+          return MAPPER.readValue(parser, RESULT_TYPE);
+        }
+        // end of the results array
+        inResults = false;
+      }
+      JsonToken token;
+      while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        token = parser.nextToken();
+        if (CURSOR_MARK_FIELD.equals(field)) {
+          cursorMark = token == JsonToken.VALUE_NULL ? null : parser.getText();
+        } else if (RESULTS_FIELDS.contains(field) &&
+            token == JsonToken.START_ARRAY) {
+          inResults = true;
+          return computeNext();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      close();
+      return endOfData();
+    } catch (IOException e) {
+      closeQuietly();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * @return cursor for the next page. Only valid once all results have been
+   *         read
+   */
+  public String getCursorMark() {
+    return cursorMark;
+  }
+
+  /**
+   * @return number of results read so far
+   */
+  public int getCount() {
+    return count;
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (parser != null) {
+        parser.close();
+      }
+      source.close();
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (RuntimeException e) {
+      // already failing
+    }
+  }
+}
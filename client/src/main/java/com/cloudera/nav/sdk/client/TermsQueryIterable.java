@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Iterable over metadata (entities or relations determined by given
+ * MetadataType) that satisfies the given String query and has one of the
+ * given values in the given field. The values are split into as many
+ * sub-queries as the client's maximum query length requires, which are run
+ * one after the other as they are iterated.
+ */
+public class TermsQueryIterable implements Iterable<Map<String, Object>> {
+
+  private final NavApiCient client;
+  private final MetadataType type;
+  private final String query;
+  private final Integer limit;
+  private final List<String> clauses;
+
+  /**
+   * @param query Solr query that all results must satisfy, may be null
+   * @param fieldName field to match the values against
+   * @param values literal field values, not escaped
+   */
+  public TermsQueryIterable(NavApiCient client, MetadataType type,
+                            String query, Integer limit, String fieldName,
+                            Iterable<String> values) {
+    this.client = client;
+    this.type = type;
+    this.query = query;
+    this.limit = limit;
+    this.clauses = ImmutableList.copyOf(QueryUtils.buildTermsClauses(
+        fieldName, values, client.getConfig().getMaxQueryLength()));
+  }
+
+  /**
+   * @return number of queries sent to Navigator for a full iteration,
+   *         not counting paging
+   */
+  public int getQueryCount() {
+    return clauses.size();
+  }
+
+  @Override
+  public Iterator<Map<String, Object>> iterator() {
+    // each sub-query fetches its first batch only when it is reached
+    return Iterators.concat(Iterators.transform(clauses.iterator(),
+        new Function<String, Iterator<Map<String, Object>>>() {
+          @Override
+          public Iterator<Map<String, Object>> apply(String clause) {
+            return new MetadataResultIterator(client, type,
+                QueryUtils.conjoinSolrQueries(query, clause), limit,
+                Collections.<String>emptyList());
+          }
+        }));
+  }
+}
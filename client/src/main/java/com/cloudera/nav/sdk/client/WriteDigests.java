@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import com.cloudera.nav.sdk.client.writer.MClassWrapper;
+import com.cloudera.nav.sdk.client.writer.WriterContext;
+import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers a digest of each entity and relation written successfully, by
+ * identity, so that writing them again can be skipped until they change.
+ * The digest is taken from the JSON sent to Navigator, with object fields
+ * in order so that the order of custom properties and other maps does not
+ * matter. If a file is given, digests are read from it when created and
+ * saved to it after each write. A file can be shared by writers to several
+ * Navigator URLs and namespaces, it holds the digests of each separately.
+ */
+class WriteDigests {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ObjectWriter writer;
+  private final File file;
+  private final String scope;
+  private final ConcurrentMap<String, Long> digests = Maps.newConcurrentMap();
+  // digests of other scopes in the file, saved back unchanged
+  private final Map<String, Map<String, Long>> others = Maps.newHashMap();
+
+  WriteDigests(ClientConfig config) {
+    this(WriterContext.forConfig(config).getWriter(),
+        config.getWriteDigestFile() == null ? null :
+            new File(config.getWriteDigestFile()),
+        config.getNavigatorUrl(), config.getNamespace());
+  }
+
+  WriteDigests(ObjectWriter writer, File file, String navigatorUrl,
+               String namespace) {
+    this.writer = writer;
+    this.file = file;
+    this.scope = Hashing.murmur3_128().hashString(Joiner.on('\0')
+        .useForNull("").join(navigatorUrl, namespace), Charsets.UTF_8)
+        .toString();
+    if (file != null && file.exists()) {
+      try {
+        Map<String, Map<String, Long>> saved = MAPPER.readValue(file,
+            new TypeReference<Map<String, Map<String, Long>>>() { });
+        Map<String, Long> own = saved.remove(scope);
+        if (own != null) {
+          digests.putAll(own);
+        }
+        others.putAll(saved);
+      } catch (IOException e) {
+        throw Throwables.propagate(e);
+      }
+    }
+  }
+
+  /**
+   * @return the given graphs without the entities and relations that have
+   *         not changed since they were last written, leaving out graphs
+   *         with nothing left to write
+   */
+  List<MClassWrapper> removeUnchanged(List<MClassWrapper> graphs) {
+    List<MClassWrapper> changed = Lists.newArrayListWithCapacity(
+        graphs.size());
+    for (MClassWrapper graph : graphs) {
+      MClassWrapper remaining = new MClassWrapper();
+      remaining.setAutocommit(graph.isAutocommit());
+      boolean empty = true;
+      for (Entity entity : graph.getEntities()) {
+        if (isChanged(entity.getIdentity(), entity)) {
+          remaining.addEntity(entity);
+          empty = false;
+        }
+      }
+      for (Relation relation : graph.getRelations()) {
+        if (isChanged(relation.getIdentity(), relation)) {
+          remaining.addRelation(relation);
+          empty = false;
+        }
+      }
+      if (!empty) {
+        changed.add(remaining);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Remember the entities and relations of a graph that has been written
+   */
+  void record(MClassWrapper graph) {
+    for (Entity entity : graph.getEntities()) {
+      digests.put(entity.getIdentity(), digest(entity));
+    }
+    for (Relation relation : graph.getRelations()) {
+      digests.put(relation.getIdentity(), digest(relation));
+    }
+  }
+
+  /**
+   * Save the remembered digests to the file, if any. The file is replaced at
+   * once so that it is never read in part
+   */
+  void save() {
+    if (file == null) {
+      return;
+    }
+    final Map<String, Map<String, Long>> saved = Maps.newTreeMap();
+    saved.putAll(others);
+    saved.put(scope, digests);
+    try {
+      AtomicFiles.replace(file, new AtomicFiles.Contents() {
+        @Override
+        public void writeTo(File tmp) throws IOException {
+          MAPPER.writeValue(tmp, saved);
+        }
+      });
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  int size() {
+    return digests.size();
+  }
+
+  private boolean isChanged(String identity, Object value) {
+    Long digest = digests.get(identity);
+    return digest == null || digest != digest(value);
+  }
+
+  private long digest(Object value) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    try {
+      putNode(hasher, MAPPER.readTree(writer.writeValueAsBytes(value)));
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    return hasher.hash().asLong();
+  }
+
+  private static void putNode(Hasher hasher, JsonNode node) {
+    if (node.isObject()) {
+      List<String> names = Lists.newArrayList(node.fieldNames());
+      Collections.sort(names);
+      hasher.putChar('{');
+      for (String name : names) {
+        hasher.putString(name, Charsets.UTF_8).putChar(':');
+        putNode(hasher, node.get(name));
+      }
+      hasher.putChar('}');
+    } else if (node.isArray()) {
+      hasher.putChar('[');
+      for (Iterator<JsonNode> it = node.elements(); it.hasNext(); ) {
+        putNode(hasher, it.next());
+        hasher.putChar(',');
+      }
+      hasher.putChar(']');
+    } else {
+      hasher.putString(node.toString(), Charsets.UTF_8);
+    }
+  }
+}
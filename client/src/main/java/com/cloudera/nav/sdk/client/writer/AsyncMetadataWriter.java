@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer;
+
+import com.cloudera.nav.sdk.client.ClientConfig;
+import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Collects entity and relation writes from any number of threads and sends
+ * them to Navigator in batches on background threads.
+ *
+ * A batch is sent once it holds the configured number of entities and
+ * relations, or once its oldest write has waited for the configured flush
+ * interval. Up to the configured number of batches are sent concurrently.
+ * Writes are queued in a bounded queue, and producers block when it is full.
+ *
+ * Every write returns a future that completes with the ResultSet of the batch
+ * that contained it, or fails if that batch could not be written.
+ */
+public class AsyncMetadataWriter implements Closeable {
+
+  /**
+   * Writes a batch of entities and relations in the calling thread
+   */
+  public interface BatchWriter {
+    ResultSet write(Collection<Entity> entities,
+                    Collection<Relation> relations);
+  }
+
+  private static final long SHUTDOWN_TIMEOUT_MINUTES = 5;
+
+  private final BatchWriter batchWriter;
+  private final int batchSize;
+  private final long flushIntervalMillis;
+  private final BlockingQueue<PendingWrite> queue;
+  private final Semaphore inFlight;
+  private final ExecutorService dispatcher;
+  private final ExecutorService senders;
+  private final Set<ListenableFuture<ResultSet>> outstanding =
+      Collections.newSetFromMap(
+          new ConcurrentHashMap<ListenableFuture<ResultSet>, Boolean>());
+  // held to queue writes, and exclusively to stop queueing them on close
+  private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+  private volatile boolean closed;
+
+  /**
+   * Write each batch in a single request of a writer from the given factory
+   */
+  public AsyncMetadataWriter(ClientConfig config,
+                             final MetadataWriterFactory factory) {
+    this(config, new BatchWriter() {
+      @Override
+      public ResultSet write(Collection<Entity> entities,
+                             Collection<Relation> relations) {
+        MetadataWriter writer = factory.newWriter();
+        try {
+          writer.write(entities, relations);
+          writer.flush();
+        } finally {
+          writer.close();
+        }
+        return writer.getLastResultSet();
+      }
+    });
+  }
+
+  public AsyncMetadataWriter(ClientConfig config, BatchWriter batchWriter) {
+    Preconditions.checkArgument(config.getAsyncWriteBatchSize() > 0,
+        "Batch size must be positive");
+    Preconditions.checkArgument(config.getAsyncWriteMaxInFlight() > 0,
+        "Maximum in-flight batches must be positive");
+    this.batchWriter = batchWriter;
+    this.batchSize = config.getAsyncWriteBatchSize();
+    this.flushIntervalMillis = config.getAsyncWriteFlushIntervalMillis();
+    this.queue = new ArrayBlockingQueue<>(config.getAsyncWriteQueueSize());
+    this.inFlight = new Semaphore(config.getAsyncWriteMaxInFlight());
+    this.dispatcher = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("nav-async-writer-dispatcher-%d")
+        .setDaemon(true)
+        .build());
+    this.senders = Executors.newFixedThreadPool(
+        config.getAsyncWriteMaxInFlight(), new ThreadFactoryBuilder()
+            .setNameFormat("nav-async-writer-%d")
+            .setDaemon(true)
+            .build());
+    dispatcher.execute(new Dispatcher());
+  }
+
+  /**
+   * Queue the given entity and the relations implied by its @MRelation
+   * annotations for writing
+   * @param entity
+   */
+  public ListenableFuture<ResultSet> write(Entity entity) {
+    return write(ImmutableList.of(entity));
+  }
+
+  /**
+   * Queue the given entities and the relations implied by their @MRelation
+   * annotations for writing
+   * @param entities
+   */
+  public ListenableFuture<ResultSet> write(Collection<Entity> entities) {
+    return enqueue(new PendingWrite(ImmutableList.copyOf(entities),
+        ImmutableList.<Relation>of()));
+  }
+
+  /**
+   * Queue the given relations for writing
+   * @param relations
+   */
+  public ListenableFuture<ResultSet> writeRelations(
+      Collection<Relation> relations) {
+    return enqueue(new PendingWrite(ImmutableList.<Entity>of(),
+        ImmutableList.copyOf(relations)));
+  }
+
+  /**
+   * Send all queued writes now and wait until every write queued before this
+   * call has completed. Failed writes are reported through their futures.
+   */
+  public void flush() {
+    if (closed) {
+      return;
+    }
+    List<ListenableFuture<ResultSet>> pending =
+        ImmutableList.copyOf(outstanding);
+    put(PendingWrite.FLUSH);
+    try {
+      Futures.successfulAsList(pending).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Send all queued writes, wait for them to complete and stop the
+   * background threads
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    flush();
+    closeLock.writeLock().lock();
+    try {
+      closed = true;
+      put(PendingWrite.SHUTDOWN);
+    } finally {
+      closeLock.writeLock().unlock();
+    }
+    dispatcher.shutdown();
+    try {
+      dispatcher.awaitTermination(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+      senders.shutdown();
+      senders.awaitTermination(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    } finally {
+      senders.shutdownNow();
+    }
+  }
+
+  private ListenableFuture<ResultSet> enqueue(final PendingWrite write) {
+    // nothing may be queued after SHUTDOWN, it would never be written
+    closeLock.readLock().lock();
+    try {
+      Preconditions.checkState(!closed, "Writer has been closed");
+      outstanding.add(write.result);
+      write.result.addListener(new Runnable() {
+        @Override
+        public void run() {
+          outstanding.remove(write.result);
+        }
+      }, MoreExecutors.sameThreadExecutor());
+      put(write);
+    } finally {
+      closeLock.readLock().unlock();
+    }
+    return write.result;
+  }
+
+  private void put(PendingWrite write) {
+    try {
+      queue.put(write);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private void send(final List<PendingWrite> batch)
+      throws InterruptedException {
+    inFlight.acquire();
+    try {
+      senders.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            writeBatch(batch);
+          } finally {
+            inFlight.release();
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      inFlight.release();
+      fail(batch, e);
+    }
+  }
+
+  private void writeBatch(List<PendingWrite> batch) {
+    List<Entity> entities = Lists.newArrayList();
+    List<Relation> relations = Lists.newArrayList();
+    for (PendingWrite write : batch) {
+      entities.addAll(write.entities);
+      relations.addAll(write.relations);
+    }
+    ResultSet resultSet;
+    try {
+      resultSet = batchWriter.write(entities, relations);
+    } catch (RuntimeException | Error e) {
+      fail(batch, e);
+      return;
+    }
+    for (PendingWrite write : batch) {
+      write.result.set(resultSet);
+    }
+  }
+
+  private static void fail(List<PendingWrite> batch, Throwable t) {
+    for (PendingWrite write : batch) {
+      write.result.setException(t);
+    }
+  }
+
+  /**
+   * Groups queued writes into batches and hands them to the senders
+   */
+  private class Dispatcher implements Runnable {
+    @Override
+    public void run() {
+      List<PendingWrite> batch = Lists.newArrayList();
+      int batchCount = 0;
+      long deadline = 0;
+      try {
+        while (true) {
+          PendingWrite next = batch.isEmpty() ? queue.take() :
+              queue.poll(deadline - System.currentTimeMillis(),
+                  TimeUnit.MILLISECONDS);
+          if (next != null && next != PendingWrite.FLUSH &&
+              next != PendingWrite.SHUTDOWN) {
+            if (batch.isEmpty()) {
+              deadline = System.currentTimeMillis() + flushIntervalMillis;
+            }
+            batch.add(next);
+            batchCount += next.size();
+            if (batchCount < batchSize) {
+              continue;
+            }
+          }
+          // batch is full, timed out, flushed or the writer is shutting down
+          if (!batch.isEmpty()) {
+            send(batch);
+            batch = Lists.newArrayList();
+            batchCount = 0;
+          }
+          if (next == PendingWrite.SHUTDOWN) {
+            return;
+          }
+        }
+      } catch (InterruptedException e) {
+        fail(batch, e);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static class PendingWrite {
+    static final PendingWrite FLUSH = new PendingWrite(
+        ImmutableList.<Entity>of(), ImmutableList.<Relation>of());
+    static final PendingWrite SHUTDOWN = new PendingWrite(
+        ImmutableList.<Entity>of(), ImmutableList.<Relation>of());
+
+    final Collection<Entity> entities;
+    final Collection<Relation> relations;
+    final SettableFuture<ResultSet> result = SettableFuture.create();
+
+    PendingWrite(Collection<Entity> entities,
+                 Collection<Relation> relations) {
+      this.entities = entities;
+      this.relations = relations;
+    }
+
+    int size() {
+      return entities.size() + relations.size();
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Set of identities that only stores a 128 bit fingerprint of each identity
+ * in an open addressing table of longs, so that very large graphs can be
+ * deduplicated without holding on to the identity strings or the objects.
+ * Two identities with the same fingerprint are treated as equal, which is
+ * vanishingly unlikely at 128 bits.
+ */
+final class FingerprintSet {
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  // fingerprint i occupies slots 2i and 2i + 1; (0, 0) marks an empty entry
+  private long[] slots;
+  private int mask;
+  private int size;
+  private boolean containsZero;
+
+  FingerprintSet() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  FingerprintSet(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1);
+    allocate(capacity);
+  }
+
+  /**
+   * @return true if the identity was not already in the set
+   */
+  boolean add(String identity) {
+    ByteBuffer hash = ByteBuffer.wrap(
+        HASH.hashString(identity, Charsets.UTF_8).asBytes());
+    long hi = hash.getLong();
+    long lo = hash.getLong();
+    if (hi == 0 && lo == 0) {
+      if (containsZero) {
+        return false;
+      }
+      containsZero = true;
+      size++;
+      return true;
+    }
+    if ((size + 1) * 4L > (mask + 1) * 3L) {
+      resize();
+    }
+    if (!insert(slots, mask, hi, lo)) {
+      return false;
+    }
+    size++;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void allocate(int capacity) {
+    slots = new long[capacity * 2];
+    mask = capacity - 1;
+  }
+
+  private void resize() {
+    long[] old = slots;
+    allocate((mask + 1) * 2);
+    for (int i = 0; i < old.length; i += 2) {
+      if (old[i] != 0 || old[i + 1] != 0) {
+        insert(slots, mask, old[i], old[i + 1]);
+      }
+    }
+  }
+
+  private static boolean insert(long[] slots, int mask, long hi, long lo) {
+    int i = (int) (lo ^ (lo >>> 32)) & mask;
+    while (true) {
+      long a = slots[2 * i];
+      long b = slots[2 * i + 1];
+      if (a == 0 && b == 0) {
+        slots[2 * i] = hi;
+        slots[2 * i + 1] = lo;
+        return true;
+      } else if (a == hi && b == lo) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+}
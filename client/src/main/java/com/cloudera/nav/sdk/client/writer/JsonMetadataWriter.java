@@ -17,23 +17,27 @@
 package com.cloudera.nav.sdk.client.writer;
 
 import com.cloudera.nav.sdk.client.ClientConfig;
-import com.cloudera.nav.sdk.client.writer.serde.EntitySerializer;
-import com.cloudera.nav.sdk.client.writer.serde.EntityV9Serializer;
-import com.cloudera.nav.sdk.client.writer.serde.RelationSerializer;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.cloudera.nav.sdk.client.ConcurrencyLimiter;
+import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.base.Throwables;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
-import org.apache.commons.httpclient.HttpStatus;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 
 /**
  * Write metadata in JSON format
@@ -41,51 +45,83 @@ import org.apache.commons.httpclient.HttpStatus;
 public class JsonMetadataWriter extends MetadataWriter {
 
   private final HttpURLConnection conn;
-  private final ObjectMapper mapper;
+  private final ConcurrencyLimiter limiter;
   private ResultSet lastResult;
+  private long requestStart = -1;
 
   public JsonMetadataWriter(ClientConfig config,
                             OutputStream stream,
                             HttpURLConnection conn) {
     super(config, stream);
     this.conn = conn;
-    this.mapper = newMapper();
+    this.limiter = ConcurrencyLimiter.forConfig(config);
   }
 
   @Override
   protected void persistMetadataValues(MClassWrapper mclassWrapper) {
     try {
-      mapper.writeValue(stream, mclassWrapper);
+      context.getWriter().writeValue(stream, mclassWrapper);
     } catch (IOException e) {
       Throwables.propagate(e);
     }
   }
 
-  private ObjectMapper newMapper() {
-    ObjectMapper mapper = new ObjectMapper();
-    SimpleModule module = new SimpleModule("MetadataSerializer");
-    if (config.getApiVersion() < 9) {
-      module.addSerializer(new EntitySerializer(registry));
-    } else {
-      module.addSerializer(new EntityV9Serializer(registry));
+  @Override
+  protected void streamMetadataValues(Collection<Entity> entities,
+                                      Collection<Relation> relations) {
+    // same layout as a serialized MClassWrapper, written one value at a time
+    final ObjectWriter writer = context.getStreamingWriter();
+    // the body goes out in chunks while it is written
+    startRequest();
+    try {
+      final JsonGenerator jg = writer.getJsonFactory().createGenerator(stream);
+      jg.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      jg.writeStartObject();
+      jg.writeArrayFieldStart("entities");
+      walkEntities(entities, new Visitor<Entity>() {
+        @Override
+        public void visit(Entity entity) throws IOException {
+          writer.writeValue(jg, entity);
+        }
+      });
+      jg.writeEndArray();
+      jg.writeArrayFieldStart("relations");
+      walkRelations(entities, relations, new Visitor<Relation>() {
+        @Override
+        public void visit(Relation relation) throws IOException {
+          writer.writeValue(jg, relation);
+        }
+      });
+      jg.writeEndArray();
+      jg.writeBooleanField("autocommit", config.isAutocommit());
+      jg.writeEndObject();
+      jg.close();
+    } catch (IOException e) {
+      Throwables.propagate(e);
     }
-    module.addSerializer(new RelationSerializer(registry));
-    mapper.registerModule(module);
-    mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-    mapper.configure(DeserializationFeature.WRAP_EXCEPTIONS, false);
-    mapper.registerModule(new JodaModule());
-    return mapper;
   }
 
   @Override
   public void flush() {
-    super.flush();
+    if (stream instanceof GZIPOutputStream) {
+      try {
+        // the compressed body is only complete once the trailer is written
+        ((GZIPOutputStream) stream).finish();
+      } catch (IOException e) {
+        Throwables.propagate(e);
+      }
+    }
+    startRequest();
+    boolean overloaded = false;
     try {
+      super.flush();
       // request is not sent until response code is requested
-      if (conn.getResponseCode() >= HttpStatus.SC_BAD_REQUEST) {
+      overloaded = ConcurrencyLimiter.isOverloadStatus(conn.getResponseCode());
+      if (conn.getResponseCode() >= HttpStatus.BAD_REQUEST.value()) {
 
     	  // display error message
-    	  BufferedReader br = new BufferedReader(new InputStreamReader((conn.getErrorStream())));
+    	  BufferedReader br = new BufferedReader(new InputStreamReader(
+    	      decode(conn.getErrorStream())));
     	  StringBuilder sb = new StringBuilder();
     	  String responseBody;
     	  while ((responseBody = br.readLine()) != null) {
@@ -93,16 +129,68 @@ public class JsonMetadataWriter extends MetadataWriter {
     	  }
     	  responseBody = sb.toString();
 
-        throw new RuntimeException(String.format(
-            "Error writing metadata (code %s): %s %s", conn.getResponseCode(),
-            conn.getResponseMessage(), responseBody));
+        throw writeError(conn.getResponseCode(), conn.getResponseMessage(),
+            responseBody);
       }
-      lastResult = mapper.readValue(conn.getInputStream(), ResultSet.class);
+      lastResult = context.getResultSetReader().readValue(
+          decode(conn.getInputStream()));
+    } catch (SocketTimeoutException e) {
+      overloaded = true;
+      Throwables.propagate(e);
     } catch (IOException e) {
       Throwables.propagate(e);
+    } finally {
+      finishRequest(overloaded);
+    }
+  }
+
+  @Override
+  public void close() {
+    // a request abandoned before its response frees its slot
+    finishRequest(false);
+    super.close();
+  }
+
+  /**
+   * @return the error for a rejected write, carrying the status code so that
+   *         callers can tell whether the write may succeed if sent again
+   */
+  private static RuntimeException writeError(int code, String message,
+                                             String body) {
+    String text = String.format("Error writing metadata: %s %s", message,
+        body);
+    HttpStatus status;
+    try {
+      status = HttpStatus.valueOf(code);
+    } catch (IllegalArgumentException e) {
+      return new RuntimeException(String.format(
+          "Error writing metadata (code %s): %s %s", code, message, body));
+    }
+    return status.is5xxServerError() ?
+        new HttpServerErrorException(status, text) :
+        new HttpClientErrorException(status, text);
+  }
+
+  private void startRequest() {
+    if (requestStart < 0) {
+      limiter.acquire();
+      requestStart = System.nanoTime();
     }
   }
 
+  private void finishRequest(boolean overloaded) {
+    if (requestStart >= 0) {
+      limiter.release(System.nanoTime() - requestStart, overloaded);
+      requestStart = -1;
+    }
+  }
+
+  private InputStream decode(InputStream body) throws IOException {
+    // HttpURLConnection leaves decompression to the caller
+    return body != null && "gzip".equalsIgnoreCase(conn.getContentEncoding()) ?
+        new GZIPInputStream(body) : body;
+  }
+
   @Override
   public ResultSet getLastResultSet() {
     return lastResult;
@@ -23,11 +23,15 @@ import com.cloudera.nav.sdk.model.entities.Entity;
 import com.cloudera.nav.sdk.model.relations.Relation;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -39,12 +43,14 @@ public abstract class MetadataWriter {
 
   protected final ClientConfig config;
   protected final OutputStream stream;
+  protected final WriterContext context;
   protected final MClassRegistry registry;
 
   public MetadataWriter(ClientConfig config, OutputStream stream) {
     this.config = config;
     this.stream = stream;
-    registry = new MClassRegistry(config.getNamespace());
+    this.context = WriterContext.forConfig(config);
+    this.registry = context.getRegistry();
   }
 
   /**
@@ -57,15 +63,51 @@ public abstract class MetadataWriter {
   }
 
   public void write(Collection<Entity> entities) {
+    write(entities, Collections.<Relation>emptyList());
+  }
+
+  /**
+   * Write the given entities, the relations implied by them and the given
+   * relations in a single request. If streaming writes are configured, the
+   * metadata is serialized while the entity graph is walked instead of being
+   * collected in memory first. Otherwise, if coalescing relations is
+   * configured, implied relations that share their type and first endpoint
+   * are merged into one.
+   * @param entities
+   * @param relations
+   */
+  public void write(Collection<Entity> entities,
+                    Collection<Relation> relations) {
+    if (config.isStreamingWrites()) {
+      streamMetadataValues(entities, relations);
+      return;
+    }
     MClassWrapper mclassWrapper = new MClassWrapper();
     mclassWrapper.setAutocommit(config.isAutocommit());
+    List<Relation> implied = Lists.newArrayList();
     for (Entity entity : entities) {
       Preconditions.checkNotNull(entity);
-      getAllMClasses(entity, mclassWrapper);
+      implied.addAll(getAllMClasses(entity, mclassWrapper));
     }
+    mclassWrapper.addRelations(config.isCoalesceRelations() ?
+        RelationCoalescer.coalesce(implied) : implied);
+    mclassWrapper.addRelations(relations);
     persistMetadataValues(mclassWrapper);
   }
 
+  /**
+   * Write exactly the entities and relations in the given graph without
+   * following @MRelation annotations. Used to send graphs that have already
+   * been collected, e.g. by a {@link WriteSplitter}
+   * @param graph
+   */
+  public void writeGraph(MClassWrapper graph) {
+    for (Entity entity : graph.getEntities()) {
+      registry.validateRequiredMProperties(entity);
+    }
+    persistMetadataValues(graph);
+  }
+
   public void writeRelation(Relation relation) {
     writeRelations(Collections.singleton(relation));
   }
@@ -79,6 +121,57 @@ public abstract class MetadataWriter {
 
   protected abstract void persistMetadataValues(MClassWrapper graph);
 
+  /**
+   * Serialize the given entities, the relations implied by them and the
+   * given relations without collecting them first. Implementations should use
+   * {@link #walkEntities} and {@link #walkRelations} to visit each distinct
+   * entity and relation exactly once.
+   */
+  protected abstract void streamMetadataValues(Collection<Entity> entities,
+                                               Collection<Relation> relations);
+
+  /**
+   * Callback for each distinct entity or relation found while walking the
+   * entity graph
+   */
+  protected interface Visitor<T> {
+    void visit(T t) throws IOException;
+  }
+
+  /**
+   * Visit every distinct entity reachable from the given entities through
+   * @MRelation annotations. Missing entity ids are generated along the way.
+   * Only fingerprints of the entity ids are kept while walking.
+   */
+  protected void walkEntities(Collection<Entity> entities,
+                              Visitor<Entity> visitor) throws IOException {
+    FingerprintSet seen = new FingerprintSet();
+    for (Entity entity : entities) {
+      Preconditions.checkNotNull(entity);
+      walkEntity(entity, seen, visitor);
+    }
+  }
+
+  /**
+   * Visit every distinct relation implied by the entities reachable from the
+   * given entities followed by the given relations. Should be called after
+   * {@link #walkEntities} so that all entity ids have been generated.
+   */
+  protected void walkRelations(Collection<Entity> entities,
+                               Collection<Relation> relations,
+                               Visitor<Relation> visitor) throws IOException {
+    FingerprintSet seenEntities = new FingerprintSet();
+    FingerprintSet seenRelations = new FingerprintSet();
+    for (Entity entity : entities) {
+      walkImpliedRelations(entity, seenEntities, seenRelations, visitor);
+    }
+    for (Relation relation : relations) {
+      if (seenRelations.add(relation.getIdentity())) {
+        visitor.visit(relation);
+      }
+    }
+  }
+
   /**
    * Flush the data that has been written but still not yet persisted
    */
@@ -99,7 +192,6 @@ public abstract class MetadataWriter {
     } catch (IOException e) {
       Throwables.propagate(e);
     }
-    registry.reset();
   }
 
   /**
@@ -107,31 +199,94 @@ public abstract class MetadataWriter {
    */
   public abstract ResultSet getLastResultSet();
 
-  private void getAllMClasses(Entity entity, MClassWrapper graph) {
-    if (StringUtils.isEmpty(entity.getIdentity())) {
-      entity.setIdentity(entity.generateId());
+  /**
+   * Add the given entity and every entity reachable from it through
+   * @MRelation annotations to the graph, generating missing ids, and return
+   * the relations implied by the newly added entities. Uses an explicit
+   * stack so that long chains of relations cannot overflow the call stack
+   */
+  private List<Relation> getAllMClasses(Entity entity, MClassWrapper graph) {
+    List<Entity> added = Lists.newArrayList();
+    Deque<Entity> stack = new ArrayDeque<>();
+    stack.push(entity);
+    while (!stack.isEmpty()) {
+      Entity next = stack.pop();
+      if (StringUtils.isEmpty(next.getIdentity())) {
+        next.setIdentity(next.generateId());
+      }
+      registry.validateRequiredMProperties(next);
+      if (!graph.hasEntity(next)) {
+        graph.addEntity(next);
+        added.add(next);
+        pushConnectedEntities(next, stack);
+      }
     }
-
-    registry.validateRequiredMProperties(entity);
-    if (!graph.hasEntity(entity)) {
-      graph.addEntity(entity);
-      getMRelations(entity, graph);
+    // build relations once all connected entity ids have been generated
+    List<Relation> relations = Lists.newArrayList();
+    for (Entity next : added) {
+      for (MRelationEntry relEntry : registry.getRelations(next.getClass())) {
+        relations.add(relEntry.buildRelation(next, config.getNamespace()));
+      }
     }
+    return relations;
   }
 
-  private void getMRelations(Entity entity, MClassWrapper graph) {
-    // get all MRelation entries
-    Collection<MRelationEntry> relationAttrs = registry.getRelations(
-        entity.getClass());
-    for (MRelationEntry relEntry : relationAttrs) {
-      for(Entity other : relEntry.getConnectedEntities(entity)) {
+  /**
+   * Push the entities connected to the given one that are not proxies so
+   * that they are popped in the order they are declared, as they would be
+   * visited by recursion
+   */
+  private void pushConnectedEntities(Entity entity, Deque<Entity> stack) {
+    List<Entity> connected = Lists.newArrayList();
+    for (MRelationEntry relEntry : registry.getRelations(entity.getClass())) {
+      for (Entity other : relEntry.getConnectedEntities(entity)) {
         if (!(other instanceof EndPointProxy)) {
-          getAllMClasses(other, graph);
+          connected.add(other);
+        }
+      }
+    }
+    for (Entity other : Lists.reverse(connected)) {
+      stack.push(other);
+    }
+  }
+
+  private void walkEntity(Entity entity, FingerprintSet seen,
+                          Visitor<Entity> visitor) throws IOException {
+    Deque<Entity> stack = new ArrayDeque<>();
+    stack.push(entity);
+    while (!stack.isEmpty()) {
+      Entity next = stack.pop();
+      if (StringUtils.isEmpty(next.getIdentity())) {
+        next.setIdentity(next.generateId());
+      }
+
+      registry.validateRequiredMProperties(next);
+      if (seen.add(next.getIdentity())) {
+        visitor.visit(next);
+        pushConnectedEntities(next, stack);
+      }
+    }
+  }
+
+  private void walkImpliedRelations(Entity entity, FingerprintSet seenEntities,
+                                    FingerprintSet seenRelations,
+                                    Visitor<Relation> visitor)
+      throws IOException {
+    Deque<Entity> stack = new ArrayDeque<>();
+    stack.push(entity);
+    while (!stack.isEmpty()) {
+      Entity next = stack.pop();
+      if (!seenEntities.add(next.getIdentity())) {
+        continue;
+      }
+      for (MRelationEntry relEntry : registry.getRelations(next.getClass())) {
+        Relation relation = relEntry.buildRelation(next,
+            config.getNamespace());
+        if (seenRelations.add(relation.getIdentity())) {
+          visitor.visit(relation);
         }
       }
-      // add Relation after doing the getAllMClasses call so the connected
-      // entity id's have all been generated if necessary
-      graph.addRelation(relEntry.buildRelation(entity, config.getNamespace()));
+      pushConnectedEntities(next, stack);
     }
   }
 }
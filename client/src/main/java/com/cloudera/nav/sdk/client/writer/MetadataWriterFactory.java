@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -37,6 +38,8 @@ import org.apache.commons.net.util.Base64;
  */
 public class MetadataWriterFactory {
 
+  private static final int CHUNK_SIZE = 64 * 1024;
+
   private final ClientConfig config;
   private final boolean isSSL;
   private final SSLContext sslContext;
@@ -55,7 +58,11 @@ public class MetadataWriterFactory {
   public MetadataWriter newWriter() {
     try {
       HttpURLConnection conn = createHttpStream();
-      OutputStream stream = new BufferedOutputStream(conn.getOutputStream());
+      // Jackson buffers its output, so the compressor needs no buffer of
+      // its own in front of it
+      OutputStream stream = config.isWriteCompression() ?
+          new GZIPOutputStream(conn.getOutputStream(), CHUNK_SIZE) :
+          new BufferedOutputStream(conn.getOutputStream());
       return new JsonMetadataWriter(config, stream, conn);
     } catch (IOException e) {
       throw Throwables.propagate(e);
@@ -75,7 +82,18 @@ public class MetadataWriterFactory {
         userpass.getBytes()));
     conn.addRequestProperty("Authorization", basicAuth);
     conn.addRequestProperty("Content-Type", "application/json");
+    if (config.isWriteCompression()) {
+      conn.addRequestProperty("Content-Encoding", "gzip");
+    }
+    if (config.isResponseCompression()) {
+      conn.addRequestProperty("Accept-Encoding", "gzip");
+    }
     conn.setDoOutput(true);
+    if (config.isStreamingWrites()) {
+      // send the body as it is written instead of buffering all of it to
+      // compute the content length
+      conn.setChunkedStreamingMode(CHUNK_SIZE);
+    }
     return conn;
   }
 
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer;
+
+import com.cloudera.nav.sdk.model.relations.DataFlowRelation;
+import com.cloudera.nav.sdk.model.relations.LogicalPhysicalRelation;
+import com.cloudera.nav.sdk.model.relations.ParentChildRelation;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.cloudera.nav.sdk.model.relations.RelationIdGenerator;
+import com.cloudera.nav.sdk.model.relations.RelationType;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges relations that differ only in the ids of their second endpoint into
+ * a single relation with all of those ids, e.g. the parent-child relations
+ * built for each field of a dataset from the field's parent @MRelation. The
+ * merged relation gets an id generated from its endpoints. Instance-of
+ * relations can only have one instance and are never merged.
+ */
+final class RelationCoalescer {
+
+  private static final RelationIdGenerator ID_GENERATOR =
+      new RelationIdGenerator();
+
+  private RelationCoalescer() {
+  }
+
+  /**
+   * @return the given relations with those that have the same type,
+   *         namespace and first endpoint and the same type and source of the
+   *         second endpoint merged, in the order each was first seen
+   */
+  static Collection<Relation> coalesce(Collection<Relation> relations) {
+    Map<List<Object>, List<Relation>> groups = Maps.newLinkedHashMap();
+    for (Relation relation : relations) {
+      List<Object> key = relation.getType() == RelationType.INSTANCE_OF ?
+          Collections.<Object>singletonList(relation.getIdentity()) :
+          key(relation);
+      List<Relation> group = groups.get(key);
+      if (group == null) {
+        group = Lists.newArrayListWithCapacity(1);
+        groups.put(key, group);
+      }
+      group.add(relation);
+    }
+    if (groups.size() == relations.size()) {
+      return relations;
+    }
+    List<Relation> coalesced = Lists.newArrayListWithCapacity(groups.size());
+    for (List<Relation> group : groups.values()) {
+      coalesced.add(group.size() == 1 ? group.get(0) : merge(group));
+    }
+    return coalesced;
+  }
+
+  private static List<Object> key(Relation relation) {
+    Set<String> ep1Ids = Sets.newTreeSet(relation.getEp1Ids());
+    return ImmutableList.<Object>of(relation.getType(),
+        String.valueOf(relation.getNamespace()), ep1Ids,
+        String.valueOf(relation.getEp1Type()),
+        String.valueOf(relation.getEp1SourceType()),
+        String.valueOf(relation.getEp1SourceId()),
+        String.valueOf(relation.getEp2Type()),
+        String.valueOf(relation.getEp2SourceType()),
+        String.valueOf(relation.getEp2SourceId()),
+        relation.isUserSpecified());
+  }
+
+  private static Relation merge(List<Relation> group) {
+    Relation first = group.get(0);
+    Set<String> ep2Ids = Sets.newLinkedHashSet();
+    for (Relation relation : group) {
+      Iterables.addAll(ep2Ids, relation.getEp2Ids());
+    }
+    return builder(first.getType())
+        .namespace(first.getNamespace())
+        .ep1Ids(first.getEp1Ids())
+        .ep1Type(first.getEp1Type())
+        .ep1SourceType(first.getEp1SourceType())
+        .ep1SourceId(first.getEp1SourceId())
+        .ep2Ids(ep2Ids)
+        .ep2Type(first.getEp2Type())
+        .ep2SourceType(first.getEp2SourceType())
+        .ep2SourceId(first.getEp2SourceId())
+        .userSpecified(first.isUserSpecified())
+        .idGenerator(ID_GENERATOR)
+        .build();
+  }
+
+  private static Relation.Builder<?> builder(RelationType type) {
+    switch (type) {
+      case DATA_FLOW:
+        return DataFlowRelation.builder();
+      case PARENT_CHILD:
+        return ParentChildRelation.builder();
+      case LOGICAL_PHYSICAL:
+        return LogicalPhysicalRelation.builder();
+      default:
+        throw new IllegalArgumentException("Relations of type " + type +
+            " cannot be merged");
+    }
+  }
+}
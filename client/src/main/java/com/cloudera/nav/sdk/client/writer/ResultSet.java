@@ -20,8 +20,10 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.collections.CollectionUtils;
 
@@ -61,6 +63,37 @@ public class ResultSet {
     }
   }
 
+  /**
+   * Combine the results of several write requests into one. Counts are
+   * summed and errors are concatenated in request order. Error positions stay
+   * relative to the request that reported them.
+   */
+  public static ResultSet merge(Iterable<ResultSet> results) {
+    List<UpdateWrapper> entities = Lists.newArrayList();
+    List<UpdateWrapper> relations = Lists.newArrayList();
+    for (ResultSet result : results) {
+      if (result != null) {
+        entities.add(result.getEntities());
+        relations.add(result.getRelations());
+      }
+    }
+    return new ResultSet(merge(entities), merge(relations));
+  }
+
+  private static UpdateWrapper merge(List<UpdateWrapper> updates) {
+    int count = 0;
+    List<String> errors = Lists.newArrayList();
+    boolean found = false;
+    for (UpdateWrapper update : updates) {
+      if (update != null) {
+        found = true;
+        count += update.getCount();
+        errors.addAll(update.getErrors());
+      }
+    }
+    return found ? new UpdateWrapper(count, errors) : null;
+  }
+
   private final UpdateWrapper entities;
   private final UpdateWrapper relations;
 
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer;
+
+import com.cloudera.nav.sdk.client.ClientConfig;
+import com.cloudera.nav.sdk.client.writer.registry.MClassRegistry;
+import com.cloudera.nav.sdk.client.writer.registry.MRelationEntry;
+import com.cloudera.nav.sdk.model.entities.EndPointProxy;
+import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Splits the metadata implied by a collection of entities into graphs that
+ * are small enough to be written in a single request, by number of entities
+ * and relations and by estimated serialized size.
+ *
+ * The entities reachable from each given entity through @MRelation
+ * annotations are kept in the same graph as long as they fit in one. Either
+ * way a relation is never placed in a graph before one of its endpoints, so
+ * writing the graphs in order never refers to an entity that has not been
+ * written yet. Explicitly given relations are placed after all entities.
+ * If coalescing relations is configured, the implied relations placed in
+ * the same graph are merged as in {@link MetadataWriter#write}. Each
+ * instance splits a single write.
+ */
+public class WriteSplitter {
+
+  private final ClientConfig config;
+  private final MClassRegistry registry;
+  private final ObjectWriter writer;
+  private final int maxObjects;
+  private final long maxBytes;
+
+  private final List<MClassWrapper> graphs = Lists.newArrayList();
+  private final Set<String> seenEntities = Sets.newHashSet();
+  private final Set<String> seenRelations = Sets.newHashSet();
+  private MClassWrapper current;
+  private int currentObjects;
+  private long currentBytes;
+
+  public WriteSplitter(ClientConfig config) {
+    this.config = config;
+    WriterContext context = WriterContext.forConfig(config);
+    this.registry = context.getRegistry();
+    this.maxObjects = config.getWriteBatchSize();
+    this.maxBytes = config.getWriteBatchMaxBytes();
+    // sizes are only estimated when there is a limit on them
+    this.writer = maxBytes > 0 ? context.getWriter() : null;
+  }
+
+  /**
+   * Collect the given entities, the relations implied by them and the given
+   * relations into graphs to be written in order. Missing entity ids are
+   * generated along the way, and every entity is checked for its required
+   * properties so that an invalid write is rejected before any request.
+   */
+  public List<MClassWrapper> split(Collection<Entity> entities,
+                                   Collection<Relation> relations) {
+    Preconditions.checkState(graphs.isEmpty(),
+        "A WriteSplitter can only split a single write");
+    for (Entity entity : entities) {
+      Preconditions.checkNotNull(entity);
+      List<Object> component = Lists.newArrayList();
+      collect(entity, component);
+      add(component);
+    }
+    List<Object> explicit = Lists.newArrayList();
+    Set<String> explicitIds = Sets.newHashSet();
+    for (Relation relation : relations) {
+      if (seenRelations.add(relation.getIdentity())) {
+        explicit.add(relation);
+        explicitIds.add(relation.getIdentity());
+      }
+    }
+    add(explicit);
+    if (current != null) {
+      graphs.add(current);
+      current = null;
+    }
+    if (config.isCoalesceRelations()) {
+      for (int i = 0; i < graphs.size(); i++) {
+        graphs.set(i, coalesce(graphs.get(i), explicitIds));
+      }
+    }
+    return graphs;
+  }
+
+  /**
+   * @return the graph with its implied relations merged. They never refer to
+   *         entities of later graphs, so neither do the merged relations
+   */
+  private static MClassWrapper coalesce(MClassWrapper graph,
+                                        Set<String> explicitIds) {
+    List<Relation> implied = Lists.newArrayList();
+    List<Relation> explicit = Lists.newArrayList();
+    for (Relation relation : graph.getRelations()) {
+      if (explicitIds.contains(relation.getIdentity())) {
+        explicit.add(relation);
+      } else {
+        implied.add(relation);
+      }
+    }
+    Collection<Relation> coalesced = RelationCoalescer.coalesce(implied);
+    if (coalesced == implied) {
+      return graph;
+    }
+    MClassWrapper merged = new MClassWrapper();
+    merged.setAutocommit(graph.isAutocommit());
+    for (Entity entity : graph.getEntities()) {
+      merged.addEntity(entity);
+    }
+    merged.addRelations(coalesced);
+    merged.addRelations(explicit);
+    return merged;
+  }
+
+  private void collect(Entity entity, List<Object> component) {
+    List<Entity> collected = Lists.newArrayList();
+    Deque<Entity> stack = new ArrayDeque<>();
+    stack.push(entity);
+    while (!stack.isEmpty()) {
+      Entity next = stack.pop();
+      if (StringUtils.isEmpty(next.getIdentity())) {
+        next.setIdentity(next.generateId());
+      }
+      // reject the whole write before any of it is sent
+      registry.validateRequiredMProperties(next);
+      if (!seenEntities.add(next.getIdentity())) {
+        continue;
+      }
+      component.add(next);
+      collected.add(next);
+      List<Entity> connected = Lists.newArrayList();
+      for (MRelationEntry relEntry : registry.getRelations(next.getClass())) {
+        for (Entity other : relEntry.getConnectedEntities(next)) {
+          if (!(other instanceof EndPointProxy)) {
+            connected.add(other);
+          }
+        }
+      }
+      for (Entity other : Lists.reverse(connected)) {
+        stack.push(other);
+      }
+    }
+    // add relations after all entities of the component so that they are
+    // never split off ahead of their endpoints
+    for (Entity next : collected) {
+      for (MRelationEntry relEntry : registry.getRelations(next.getClass())) {
+        Relation relation = relEntry.buildRelation(next,
+            config.getNamespace());
+        if (seenRelations.add(relation.getIdentity())) {
+          component.add(relation);
+        }
+      }
+    }
+  }
+
+  private void add(List<Object> component) {
+    if (component.isEmpty()) {
+      return;
+    }
+    long[] sizes = new long[component.size()];
+    long componentBytes = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = sizeOf(component.get(i));
+      componentBytes += sizes[i];
+    }
+    // start a new graph rather than split the component if it fits in one
+    if (exceedsLimits(component.size(), componentBytes)) {
+      startGraph();
+    }
+    for (int i = 0; i < sizes.length; i++) {
+      if (exceedsLimits(1, sizes[i])) {
+        startGraph();
+      }
+      if (current == null) {
+        current = new MClassWrapper();
+        current.setAutocommit(config.isAutocommit());
+      }
+      Object value = component.get(i);
+      if (value instanceof Entity) {
+        current.addEntity((Entity) value);
+      } else {
+        current.addRelation((Relation) value);
+      }
+      currentObjects++;
+      currentBytes += sizes[i];
+    }
+  }
+
+  private boolean exceedsLimits(int objects, long bytes) {
+    return current != null &&
+        ((maxObjects > 0 && currentObjects + objects > maxObjects) ||
+            (maxBytes > 0 && currentBytes + bytes > maxBytes));
+  }
+
+  private void startGraph() {
+    if (current != null) {
+      graphs.add(current);
+      current = null;
+      currentObjects = 0;
+      currentBytes = 0;
+    }
+  }
+
+  private long sizeOf(Object value) {
+    if (writer == null) {
+      return 0;
+    }
+    CountingOutputStream out = new CountingOutputStream(
+        ByteStreams.nullOutputStream());
+    try {
+      writer.writeValue(out, value);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    return out.getCount();
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer;
+
+import com.cloudera.nav.sdk.client.ClientConfig;
+import com.cloudera.nav.sdk.client.writer.registry.MClassRegistry;
+import com.cloudera.nav.sdk.client.writer.serde.EntitySerializer;
+import com.cloudera.nav.sdk.client.writer.serde.EntityV9Serializer;
+import com.cloudera.nav.sdk.client.writer.serde.RelationSerializer;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The MClassRegistry and the Jackson configuration used to write metadata
+ * with a given namespace and API version.
+ *
+ * Building them means scanning the annotations of every written class and
+ * setting up serializers, which is worth doing once per process rather than
+ * once per write. The registry caches and the serializers are thread safe
+ * and the readers and writers handed out are immutable, so all writers with
+ * the same namespace and API version share one context, see
+ * {@link #forConfig(ClientConfig)}.
+ */
+public class WriterContext {
+
+  private static final ConcurrentMap<List<Object>, WriterContext> SHARED =
+      Maps.newConcurrentMap();
+
+  private final MClassRegistry registry;
+  private final ObjectWriter writer;
+  private final ObjectWriter streamingWriter;
+  private final ObjectReader resultSetReader;
+
+  /**
+   * @return the context shared by all writers with the namespace and API
+   *         version of the given configuration
+   */
+  public static WriterContext forConfig(ClientConfig config) {
+    List<Object> key = Arrays.<Object>asList(config.getNamespace(),
+        config.getApiVersion());
+    WriterContext context = SHARED.get(key);
+    if (context == null) {
+      WriterContext created = new WriterContext(config.getNamespace(),
+          config.getApiVersion());
+      context = SHARED.putIfAbsent(key, created);
+      if (context == null) {
+        context = created;
+      }
+    }
+    return context;
+  }
+
+  WriterContext(String namespace, int apiVersion) {
+    this.registry = new MClassRegistry(namespace);
+    ObjectMapper mapper = newMapper(apiVersion, registry);
+    this.writer = mapper.writer();
+    // values of a streamed request are flushed in chunks, not one by one
+    this.streamingWriter = writer.without(
+        SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    this.resultSetReader = mapper.reader(ResultSet.class);
+  }
+
+  private static ObjectMapper newMapper(int apiVersion,
+                                        MClassRegistry registry) {
+    ObjectMapper mapper = new ObjectMapper();
+    SimpleModule module = new SimpleModule("MetadataSerializer");
+    if (apiVersion < 9) {
+      module.addSerializer(new EntitySerializer(registry));
+    } else {
+      module.addSerializer(new EntityV9Serializer(registry));
+    }
+    module.addSerializer(new RelationSerializer(registry));
+    mapper.registerModule(module);
+    mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+    mapper.configure(DeserializationFeature.WRAP_EXCEPTIONS, false);
+    mapper.registerModule(new JodaModule());
+    return mapper;
+  }
+
+  public MClassRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * @return writer for whole requests and single entities or relations
+   */
+  public ObjectWriter getWriter() {
+    return writer;
+  }
+
+  /**
+   * @return writer for values of a request that is written one value at a
+   *         time
+   */
+  public ObjectWriter getStreamingWriter() {
+    return streamingWriter;
+  }
+
+  /**
+   * @return reader for the ResultSet returned by a write request
+   */
+  public ObjectReader getResultSetReader() {
+    return resultSetReader;
+  }
+}
@@ -16,10 +16,8 @@
 package com.cloudera.nav.sdk.client.writer.registry;
 
 import com.cloudera.nav.sdk.model.annotations.MProperty;
-import com.google.common.base.Throwables;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
 import org.apache.commons.lang.StringUtils;
@@ -32,6 +30,7 @@ public class MPropertyEntry {
   private final String attribute;
   private final Field field;
   private final Method getter;
+  private final PropertyAccessor accessor;
   private final MProperty ann;
 
   public MPropertyEntry(Field field, Method getter) {
@@ -40,6 +39,7 @@ public class MPropertyEntry {
     this.attribute = StringUtils.isEmpty(attr) ? field.getName() : attr;
     this.field = field;
     this.getter = getter;
+    this.accessor = PropertyAccessor.forGetter(getter);
   }
 
   /**
@@ -77,13 +77,7 @@ public class MPropertyEntry {
    * @return
    */
   public Object getValue(Object mClassObj) {
-    try {
-      return getter.invoke(mClassObj);
-    } catch (IllegalAccessException e) {
-      throw Throwables.propagate(e);
-    } catch (InvocationTargetException e) {
-      throw Throwables.propagate(e);
-    }
+    return accessor.get(mClassObj);
   }
 
   /**
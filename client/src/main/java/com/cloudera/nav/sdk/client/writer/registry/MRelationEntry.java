@@ -21,12 +21,10 @@ import com.cloudera.nav.sdk.model.relations.Relation;
 import com.cloudera.nav.sdk.model.relations.RelationRole;
 import com.cloudera.nav.sdk.model.relations.RelationType;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -40,13 +38,13 @@ import java.util.Map;
 public class MRelationEntry {
 
   private final Field field;
-  private final Method getter;
+  private final PropertyAccessor accessor;
   private final MRelation relationAnn;
   private final Map<RelationRole, RelationType> roleToTypeMap;
 
   public MRelationEntry(Field field, Method getter) {
     this.field = field;
-    this.getter = getter;
+    this.accessor = PropertyAccessor.forGetter(getter);
     this.relationAnn = field.getAnnotation(MRelation.class);
     roleToTypeMap = Maps.newHashMap();
     validateReturnType(getter);
@@ -94,13 +92,7 @@ public class MRelationEntry {
   }
 
   private Object getValue(Entity entity) {
-    try {
-      return getter.invoke(entity);
-    } catch (IllegalAccessException e) {
-      throw Throwables.propagate(e);
-    } catch (InvocationTargetException e) {
-      throw Throwables.propagate(e);
-    }
+    return accessor.get(entity);
   }
 
   private void validateReturnType(Method method) {
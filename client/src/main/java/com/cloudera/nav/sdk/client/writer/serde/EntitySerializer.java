@@ -17,9 +17,11 @@
 package com.cloudera.nav.sdk.client.writer.serde;
 
 import com.cloudera.nav.sdk.client.writer.registry.MClassRegistry;
-import com.cloudera.nav.sdk.model.annotations.MClass;
 import com.cloudera.nav.sdk.model.entities.Entity;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
 
 import java.io.IOException;
 
@@ -30,14 +32,19 @@ import java.io.IOException;
  */
 public class EntitySerializer extends MClassSerializer<Entity> {
 
+  protected static final SerializableString INTERNAL_TYPE =
+      new SerializedString("internalType");
+
   public EntitySerializer(MClassRegistry registry) {
     super(Entity.class, registry);
   }
 
   @Override
-  protected void writeProperties(Entity t, JsonGenerator jg) throws IOException {
-    super.writeProperties(t, jg);
-    String modelName = t.getClass().getAnnotation(MClass.class).model();
-    jg.writeStringField("internalType", modelName);
+  protected void writeProperties(Entity t, JsonGenerator jg,
+                                 SerializerProvider sp) throws IOException {
+    WritePlan plan = getPlan(t.getClass());
+    plan.writeProperties(t, jg, sp, false);
+    jg.writeFieldName(INTERNAL_TYPE);
+    jg.writeString(plan.getModelName());
   }
 }
@@ -17,17 +17,13 @@
 package com.cloudera.nav.sdk.client.writer.serde;
 
 import com.cloudera.nav.sdk.client.writer.registry.MClassRegistry;
-import com.cloudera.nav.sdk.client.writer.registry.MPropertyEntry;
-import com.cloudera.nav.sdk.model.annotations.MClass;
-import com.cloudera.nav.sdk.model.annotations.MProperty;
 import com.cloudera.nav.sdk.model.entities.Entity;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.google.common.collect.Maps;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
 
 import java.io.IOException;
-import java.util.Map;
-
-import org.apache.commons.collections.MapUtils;
 
 /**
  * JSON serializer for Entity instances. It writes managed custom properties
@@ -37,41 +33,42 @@ import org.apache.commons.collections.MapUtils;
  * by the server to map the meta-model
  */
 public class EntityV9Serializer extends EntitySerializer {
+
+  private static final SerializableString META_CLASS_NAME =
+      new SerializedString("metaClassName");
+  private static final SerializableString CUSTOM_PROPERTIES =
+      new SerializedString("customProperties");
+
+  private final SerializableString namespace;
+
   public EntityV9Serializer(MClassRegistry registry) {
     super(registry);
+    this.namespace = new SerializedString(registry.getNamespace());
   }
 
   @Override
-  protected void writeProperties(Entity t, JsonGenerator jg) throws IOException {
-    Map<String, Map<String, Object>> customProperties = Maps.newHashMap();
-    for (MPropertyEntry p : registry.getProperties(t.getClass())) {
-      MProperty ann = p.getAnnotation();
-      if (ann.register()) {
-        addCustom(customProperties, p, t);
-      } else {
-        Object v = p.getValue(t);
-        if (v != null) {
-          jg.writeObjectField(p.getAttribute(), p.getValue(t));
-        }
-      }
-    }
-    String modelName = t.getClass().getAnnotation(MClass.class).model();
-    jg.writeStringField("internalType", modelName);
+  protected void writeProperties(Entity t, JsonGenerator jg,
+                                 SerializerProvider sp) throws IOException {
+    WritePlan plan = getPlan(t.getClass());
+    plan.writeProperties(t, jg, sp, true);
+    jg.writeFieldName(INTERNAL_TYPE);
+    jg.writeString(plan.getModelName());
 
-    jg.writeStringField("metaClassName", modelName);
-    if (MapUtils.isNotEmpty(customProperties)) {
-      jg.writeObjectField("customProperties", customProperties);
+    jg.writeFieldName(META_CLASS_NAME);
+    jg.writeString(plan.getModelName());
+    if (plan.hasCustomProperties()) {
+      jg.writeFieldName(CUSTOM_PROPERTIES);
+      jg.writeStartObject();
+      jg.writeFieldName(namespace);
+      jg.writeStartObject();
+      plan.writeCustomProperties(t, jg, sp);
+      jg.writeEndObject();
+      jg.writeEndObject();
     }
   }
 
-  private void addCustom(Map<String, Map<String, Object>> customProperties,
-                         MPropertyEntry prop, Entity t) {
-    String namespace = registry.getNamespace();
-    Map<String, Object> propMap = customProperties.get(namespace);
-    if (propMap == null) {
-      propMap = Maps.newHashMap();
-      customProperties.put(namespace, propMap);
-    }
-    propMap.put(prop.getAttribute(), prop.getValue(t));
+  @Override
+  protected boolean splitsCustomProperties() {
+    return true;
   }
 }
@@ -17,20 +17,25 @@
 package com.cloudera.nav.sdk.client.writer.serde;
 
 import com.cloudera.nav.sdk.client.writer.registry.MClassRegistry;
-import com.cloudera.nav.sdk.client.writer.registry.MPropertyEntry;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * JSON serializer for MClass objects, which writes out an object
- * containing the MProperty entries as key-value pairs
+ * containing the MProperty entries as key-value pairs. The properties of
+ * each class are written by a WritePlan that is built the first time the
+ * class is serialized.
  */
 public class MClassSerializer<T> extends StdSerializer<T> {
 
   protected final MClassRegistry registry;
+  private final ConcurrentMap<Class<?>, WritePlan> plans =
+      new ConcurrentHashMap<>();
 
   public MClassSerializer(Class<T> aClass, MClassRegistry registry) {
     super(aClass);
@@ -41,13 +46,32 @@ public class MClassSerializer<T> extends StdSerializer<T> {
   public void serialize(T t, JsonGenerator jg, SerializerProvider sp)
       throws IOException {
     jg.writeStartObject();
-    writeProperties(t, jg);
+    writeProperties(t, jg, sp);
     jg.writeEndObject();
   }
 
-  protected void writeProperties(T t, JsonGenerator jg) throws IOException {
-    for (MPropertyEntry p : registry.getProperties(t.getClass())) {
-      jg.writeObjectField(p.getAttribute(), p.getValue(t));
+  protected void writeProperties(T t, JsonGenerator jg, SerializerProvider sp)
+      throws IOException {
+    getPlan(t.getClass()).writeProperties(t, jg, sp, false);
+  }
+
+  /**
+   * @return whether properties with register() set are written separately
+   *         as custom properties
+   */
+  protected boolean splitsCustomProperties() {
+    return false;
+  }
+
+  WritePlan getPlan(Class<?> aClass) {
+    WritePlan plan = plans.get(aClass);
+    if (plan == null) {
+      plan = WritePlan.create(aClass, registry, splitsCustomProperties());
+      WritePlan existing = plans.putIfAbsent(aClass, plan);
+      if (existing != null) {
+        plan = existing;
+      }
     }
+    return plan;
   }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer.serde;
+
+import com.cloudera.nav.sdk.client.writer.registry.MClassRegistry;
+import com.cloudera.nav.sdk.client.writer.registry.MPropertyEntry;
+import com.cloudera.nav.sdk.model.annotations.MClass;
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.List;
+
+import org.joda.time.Instant;
+
+/**
+ * Precompiled description of how to write the @MProperty values of one
+ * MClass: the properties in registry order, with their field names already
+ * encoded and a writer chosen for the declared type of each property.
+ * Plans are immutable and built once per class by each serializer.
+ */
+final class WritePlan {
+
+  private final List<Slot> properties;
+  private final List<Slot> customProperties;
+  private final SerializableString modelName;
+
+  private WritePlan(List<Slot> properties, List<Slot> customProperties,
+                    SerializableString modelName) {
+    this.properties = properties;
+    this.customProperties = customProperties;
+    this.modelName = modelName;
+  }
+
+  /**
+   * @param splitCustom whether properties with register() set are kept apart
+   *                    to be written as custom properties
+   */
+  static WritePlan create(Class<?> aClass, MClassRegistry registry,
+                          boolean splitCustom) {
+    ImmutableList.Builder<Slot> properties = ImmutableList.builder();
+    ImmutableList.Builder<Slot> customProperties = ImmutableList.builder();
+    for (MPropertyEntry p : registry.getProperties(aClass)) {
+      Slot slot = new Slot(p);
+      if (splitCustom && p.getAnnotation().register()) {
+        customProperties.add(slot);
+      } else {
+        properties.add(slot);
+      }
+    }
+    MClass mClass = aClass.getAnnotation(MClass.class);
+    return new WritePlan(properties.build(), customProperties.build(),
+        mClass == null ? null : new SerializedString(mClass.model()));
+  }
+
+  /**
+   * Write each property as a field of the current object
+   *
+   * @param skipNulls whether properties without a value are left out
+   */
+  void writeProperties(Object t, JsonGenerator jg, SerializerProvider sp,
+                       boolean skipNulls) throws IOException {
+    write(properties, t, jg, sp, skipNulls);
+  }
+
+  /**
+   * Write each custom property, including those without a value, as a field
+   * of the current object
+   */
+  void writeCustomProperties(Object t, JsonGenerator jg, SerializerProvider sp)
+      throws IOException {
+    write(customProperties, t, jg, sp, false);
+  }
+
+  boolean hasCustomProperties() {
+    return !customProperties.isEmpty();
+  }
+
+  /**
+   * @return model name of the @MClass, null if the class is not annotated
+   */
+  SerializableString getModelName() {
+    return modelName;
+  }
+
+  private static void write(List<Slot> slots, Object t, JsonGenerator jg,
+                            SerializerProvider sp, boolean skipNulls)
+      throws IOException {
+    for (Slot slot : slots) {
+      Object value = slot.entry.getValue(t);
+      if (value == null) {
+        if (!skipNulls) {
+          jg.writeFieldName(slot.name);
+          jg.writeNull();
+        }
+      } else {
+        jg.writeFieldName(slot.name);
+        slot.writer.write(value, jg, sp);
+      }
+    }
+  }
+
+  private static class Slot {
+    final SerializableString name;
+    final MPropertyEntry entry;
+    final ValueWriter writer;
+
+    Slot(MPropertyEntry entry) {
+      this.name = new SerializedString(entry.getAttribute());
+      this.entry = entry;
+      this.writer = ValueWriter.forGetter(entry.getReadMethod());
+    }
+  }
+
+  /**
+   * Writes non-null values of one declared type
+   */
+  private enum ValueWriter {
+    STRING {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        jg.writeString((String) v);
+      }
+    },
+    LONG {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        jg.writeNumber((Long) v);
+      }
+    },
+    INTEGER {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        jg.writeNumber((Integer) v);
+      }
+    },
+    BOOLEAN {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        jg.writeBoolean((Boolean) v);
+      }
+    },
+    INSTANT {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        // same output as the Joda module
+        if (sp.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)) {
+          jg.writeNumber(((Instant) v).getMillis());
+        } else {
+          jg.writeString(v.toString());
+        }
+      }
+    },
+    ENUM {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        Enum<?> e = (Enum<?>) v;
+        if (sp.isEnabled(SerializationFeature.WRITE_ENUMS_USING_TO_STRING)) {
+          jg.writeString(e.toString());
+        } else if (sp.isEnabled(
+            SerializationFeature.WRITE_ENUMS_USING_INDEX)) {
+          jg.writeNumber(e.ordinal());
+        } else {
+          jg.writeString(e.name());
+        }
+      }
+    },
+    STRING_COLLECTION {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        jg.writeStartArray();
+        for (Object s : (Collection<?>) v) {
+          if (s == null) {
+            jg.writeNull();
+          } else {
+            jg.writeString((String) s);
+          }
+        }
+        jg.writeEndArray();
+      }
+    },
+    GENERIC {
+      @Override
+      void write(Object v, JsonGenerator jg, SerializerProvider sp)
+          throws IOException {
+        sp.defaultSerializeValue(v, jg);
+      }
+    };
+
+    abstract void write(Object v, JsonGenerator jg, SerializerProvider sp)
+        throws IOException;
+
+    static ValueWriter forGetter(Method getter) {
+      Class<?> type = getter.getReturnType();
+      if (type == String.class) {
+        return STRING;
+      } else if (type == Long.class || type == long.class) {
+        return LONG;
+      } else if (type == Integer.class || type == int.class) {
+        return INTEGER;
+      } else if (type == Boolean.class || type == boolean.class) {
+        return BOOLEAN;
+      } else if (type == Instant.class) {
+        return INSTANT;
+      } else if (type.isEnum() && !hasJsonValue(type)) {
+        return ENUM;
+      } else if (Collection.class.isAssignableFrom(type) &&
+          isStringCollection(getter.getGenericReturnType())) {
+        return STRING_COLLECTION;
+      }
+      return GENERIC;
+    }
+
+    private static boolean hasJsonValue(Class<?> enumClass) {
+      for (Method m : enumClass.getMethods()) {
+        if (m.isAnnotationPresent(JsonValue.class)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static boolean isStringCollection(Type type) {
+      if (!(type instanceof ParameterizedType)) {
+        return false;
+      }
+      Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+      return args.length == 1 && args[0] == String.class;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ConcurrencyLimiterTest {
+
+  @Test
+  public void testBackoffAndRecovery() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 0, 100);
+    assertEquals(8, limiter.getLimit());
+
+    limiter.acquire();
+    limiter.release(0, true);
+    assertEquals(4, limiter.getLimit());
+
+    limiter.acquire();
+    limiter.release(TimeUnit.MILLISECONDS.toNanos(200), false);
+    assertEquals(3, limiter.getLimit()); // 3.6
+
+    limiter.acquire();
+    limiter.release(0, true);
+    limiter.acquire();
+    limiter.release(0, true);
+    limiter.acquire();
+    limiter.release(0, true);
+    assertEquals(1, limiter.getLimit());
+
+    // grows by about one per round of requests
+    for (int i = 0; i < 20; i++) {
+      limiter.acquire();
+      limiter.release(0, false);
+    }
+    assertTrue(limiter.getLimit() >= 5);
+    for (int i = 0; i < 100; i++) {
+      limiter.acquire();
+      limiter.release(0, false);
+    }
+    assertEquals(8, limiter.getLimit());
+    assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  public void testUnlimited() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(0, 0, 0);
+    for (int i = 0; i < 100; i++) {
+      limiter.acquire();
+    }
+    assertEquals(100, limiter.getInFlight());
+    limiter.release(0, true);
+    assertEquals(Integer.MAX_VALUE, limiter.getLimit());
+  }
+
+  @Test
+  public void testBlocksAtLimit() throws Exception {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 0, 0);
+    limiter.acquire();
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final AtomicBoolean acquired = new AtomicBoolean();
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        started.countDown();
+        limiter.acquire();
+        acquired.set(true);
+      }
+    };
+    waiter.start();
+    started.await();
+    Thread.sleep(50);
+    assertFalse(acquired.get());
+
+    limiter.release(0, false);
+    waiter.join(5000);
+    assertTrue(acquired.get());
+    assertEquals(1, limiter.getInFlight());
+  }
+
+  @After
+  public void tearDown() {
+    ConcurrencyLimiter.clearShared();
+  }
+
+  @Test
+  public void testSharedPerServer() {
+    ClientConfig config = new ClientConfig();
+    config.setNavigatorUrl("http://limited:7187/");
+    config.setMaxConcurrentRequests(2);
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.forConfig(config);
+    ClientConfig other = new ClientConfig();
+    other.setNavigatorUrl("http://limited:7187");
+    other.setMaxConcurrentRequests(2);
+    assertSame(limiter, ConcurrencyLimiter.forConfig(other));
+    assertEquals(2, limiter.getLimit());
+    // other limits for the same server are not ignored
+    other.setMaxConcurrentRequests(4);
+    assertEquals(4, ConcurrencyLimiter.forConfig(other).getLimit());
+    ConcurrencyLimiter.clearShared();
+    assertNotSame(limiter, ConcurrencyLimiter.forConfig(config));
+
+    // starts at the connections per route and adapts by default
+    other.setNavigatorUrl("http://default:7187");
+    other.setMaxConcurrentRequests(0);
+    limiter = ConcurrencyLimiter.forConfig(other);
+    assertEquals(other.getMaxConnectionsPerRoute(), limiter.getLimit());
+    limiter.acquire();
+    limiter.release(0, true);
+    assertEquals(other.getMaxConnectionsPerRoute() / 2, limiter.getLimit());
+
+    other = new ClientConfig();
+    other.setNavigatorUrl("http://unlimited:7187");
+    other.setMaxConcurrentRequests(-1);
+    assertEquals(Integer.MAX_VALUE,
+        ConcurrencyLimiter.forConfig(other).getLimit());
+  }
+}
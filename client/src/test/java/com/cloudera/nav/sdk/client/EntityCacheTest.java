@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class EntityCacheTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return now.get();
+    }
+  };
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    EntityCache cache = new EntityCache(2, Long.MAX_VALUE, 0, ticker);
+    cache.put("a", entity("a"));
+    cache.put("b", entity("b"));
+    assertNotNull(cache.get("a"));
+    cache.put("c", entity("c"));
+    assertEquals(2, cache.size());
+    assertNull(cache.get("b"));
+    assertEquals("a", cache.get("a").get("identity"));
+    assertEquals("c", cache.get("c").get("identity"));
+
+    CacheStats stats = cache.stats();
+    assertEquals(3, stats.hitCount());
+    assertEquals(1, stats.missCount());
+    assertEquals(1, stats.evictionCount());
+  }
+
+  @Test
+  public void testEvictByWeight() {
+    long weight = EntityCache.estimateBytes("a") +
+        EntityCache.estimateBytes(entity("a"));
+    EntityCache cache = new EntityCache(100, 2 * weight, 0, ticker);
+    cache.put("a", entity("a"));
+    cache.put("b", entity("b"));
+    assertEquals(2 * weight, cache.getWeight());
+    cache.put("c", entity("c"));
+    assertEquals(2, cache.size());
+    assertNull(cache.get("a"));
+
+    // too large to cache at all
+    cache.put("large", ImmutableMap.<String, Object>of("identity",
+        new String(new char[(int) weight])));
+    assertNull(cache.get("large"));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testExpiryAndInvalidation() {
+    EntityCache cache = new EntityCache(10, Long.MAX_VALUE, 1000, ticker);
+    cache.put("a", entity("a"));
+    cache.put("b", entity("b"));
+    cache.put("c", entity("c"));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+    assertNotNull(cache.get("a"));
+    cache.invalidate(Lists.newArrayList("b"));
+    assertNull(cache.get("b"));
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+    assertNull(cache.get("a"));
+    assertEquals(1, cache.size());
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getWeight());
+  }
+
+  @Test
+  public void testCachesUnmodifiableCopies() {
+    EntityCache cache = new EntityCache(10, Long.MAX_VALUE, 0, ticker);
+    Map<String, Object> entity = Maps.newHashMap(entity("a"));
+    List<Object> tags = Lists.<Object>newArrayList("tag", null);
+    entity.put("tags", tags);
+    cache.put("a", entity);
+    entity.put("identity", "b");
+    tags.add("other");
+
+    Map<String, Object> cached = cache.get("a");
+    assertEquals("a", cached.get("identity"));
+    assertEquals(Lists.newArrayList("tag", null), cached.get("tags"));
+    try {
+      cached.put("identity", "b");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      ((List<?>) cached.get("tags")).clear();
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testSkipPutAfterInvalidation() {
+    EntityCache cache = new EntityCache(10, Long.MAX_VALUE, 0, ticker);
+    long generation = cache.getGeneration();
+    cache.put("a", entity("a"), generation);
+    assertNotNull(cache.get("a"));
+    // fetched before a write invalidated it
+    cache.invalidate(Lists.newArrayList("b"));
+    cache.put("b", entity("b"), generation);
+    assertNull(cache.get("b"));
+    cache.put("b", entity("b"), cache.getGeneration());
+    assertNotNull(cache.get("b"));
+  }
+
+  private static Map<String, Object> entity(String identity) {
+    return ImmutableMap.<String, Object>of("identity", identity);
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class ExtractorRunIdsTest {
+
+  private static final Pattern RANGE = Pattern.compile(
+      "\\(\\[(\\S+) TO (\\S+)\\] AND (\\S+)\\)");
+
+  @Test
+  public void testIterate() {
+    ExtractorRunIds runIds = ExtractorRunIds.between(
+        ImmutableMap.of("a", 3L, "b", 5L, "c", 2L),
+        ImmutableMap.of("a", 5L, "b", 5L, "c", 1L));
+    assertEquals(Lists.newArrayList("a##3", "a##4", "a##5", "b##5"),
+        Lists.newArrayList(runIds));
+    assertFalse(runIds.isEmpty());
+    assertTrue(ExtractorRunIds.between(ImmutableMap.of("a", 3L),
+        ImmutableMap.of("a", 2L)).isEmpty());
+  }
+
+  @Test
+  public void testQueryValues() {
+    assertEquals(Lists.newArrayList("s##7", "s##8"), Lists.newArrayList(
+        ExtractorRunIds.between(ImmutableMap.of("s", 7L),
+            ImmutableMap.of("s", 8L)).queryValues()));
+    assertEquals(Lists.newArrayList(
+        "([s##5 TO s##9] AND s##?)",
+        "([s##10 TO s##99] AND s##??)",
+        "([s##100 TO s##999] AND s##???)",
+        "([s##1000 TO s##1234] AND s##????)"),
+        Lists.newArrayList(ExtractorRunIds.between(ImmutableMap.of("s", 5L),
+            ImmutableMap.of("s", 1234L)).queryValues()));
+  }
+
+  @Test
+  public void testQueryValuesMatchExactly() {
+    long[][] ranges = {{0, 0}, {9, 10}, {8, 11}, {95, 105}, {98, 1003},
+        {250, 2500}};
+    for (long[] range : ranges) {
+      List<String> values = Lists.newArrayList(ExtractorRunIds.between(
+          ImmutableMap.of("s", range[0]), ImmutableMap.of("s", range[1]))
+          .queryValues());
+      for (long i = 0; i < 5000; i++) {
+        assertEquals(values + " for " + i, i >= range[0] && i <= range[1],
+            matches(values, "s##" + i));
+      }
+    }
+  }
+
+  // evaluates the query values the way Solr does for a string field
+  private static boolean matches(List<String> values, String runId) {
+    for (String value : values) {
+      Matcher m = RANGE.matcher(value);
+      if (m.matches()) {
+        if (runId.compareTo(m.group(1)) >= 0 &&
+            runId.compareTo(m.group(2)) <= 0 &&
+            runId.length() == m.group(3).length()) {
+          return true;
+        }
+      } else if (value.equals(runId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
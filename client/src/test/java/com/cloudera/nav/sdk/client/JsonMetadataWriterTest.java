@@ -17,34 +17,53 @@
 package com.cloudera.nav.sdk.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
 import com.cloudera.nav.sdk.client.writer.JsonMetadataWriter;
+import com.cloudera.nav.sdk.client.writer.WriterContext;
+import com.cloudera.nav.sdk.client.writer.registry.MPropertyEntry;
 import com.cloudera.nav.sdk.model.Source;
 import com.cloudera.nav.sdk.model.SourceType;
+import com.cloudera.nav.sdk.model.annotations.MClass;
+import com.cloudera.nav.sdk.model.annotations.MProperty;
+import com.cloudera.nav.sdk.model.annotations.MRelation;
+import com.cloudera.nav.sdk.model.entities.EndPointProxy;
+import com.cloudera.nav.sdk.model.entities.Entity;
 import com.cloudera.nav.sdk.model.entities.EntityType;
 import com.cloudera.nav.sdk.model.entities.HdfsEntity;
 import com.cloudera.nav.sdk.model.relations.DataFlowRelation;
 import com.cloudera.nav.sdk.model.relations.Relation;
 import com.cloudera.nav.sdk.model.relations.RelationIdGenerator;
+import com.cloudera.nav.sdk.model.relations.RelationRole;
 import com.cloudera.nav.sdk.model.relations.RelationType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.joda.time.Instant;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -224,6 +243,253 @@ public class JsonMetadataWriterTest {
     assertEquals(relations.size(), 3);
   }
 
+  @Test
+  public void testStreamComposite() throws IOException {
+    doReturn(true).when(config).isStreamingWrites();
+    doReturn(true).when(config).isAutocommit();
+    Source source = new Source("ExternalApp", SourceType.SDK, "ExternalApp",
+        "http://appHost:port", 0L);
+    CustomOperationExecution exec = prepExec(source);
+    JsonMetadataWriter mWriter = new JsonMetadataWriter(config, stream,
+        mockConn);
+    // the operation is also reachable from the execution so it is only
+    // written once
+    mWriter.write(ImmutableList.<Entity>of(exec, exec.getTemplate()));
+
+    ObjectMapper mapper = new ObjectMapper();
+    String value = new String(stream.toByteArray());
+    Map<?, ?> data = mapper.readValue(value, Map.class);
+    Collection<?> entities = (Collection<?>) data.get("entities");
+    Collection<?> relations = (Collection<?>) data.get("relations");
+
+    assertEquals(2, entities.size());
+    assertEquals(3, relations.size());
+    assertEquals(Boolean.TRUE, data.get("autocommit"));
+  }
+
+  @Test
+  public void testCompressedWrite() throws IOException {
+    doReturn(true).when(config).isStreamingWrites();
+    doReturn("gzip").when(mockConn).getContentEncoding();
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    try (OutputStream gzip = new GZIPOutputStream(response)) {
+      gzip.write("{\"entities\":{\"count\":2,\"errors\":[]}}".getBytes(
+          StandardCharsets.UTF_8));
+    }
+    doReturn(new ByteArrayInputStream(response.toByteArray()))
+        .when(mockConn).getInputStream();
+    Source source = new Source("ExternalApp", SourceType.SDK, "ExternalApp",
+        "http://appHost:port", 0L);
+    JsonMetadataWriter mWriter = new JsonMetadataWriter(config,
+        new GZIPOutputStream(stream), mockConn);
+    mWriter.write(ImmutableList.<Entity>of(prepExec(source)));
+    mWriter.flush();
+
+    // the body is complete once flushed
+    Map<?, ?> data = new ObjectMapper().readValue(new GZIPInputStream(
+        new ByteArrayInputStream(stream.toByteArray())), Map.class);
+    assertEquals(2, ((Collection<?>) data.get("entities")).size());
+    assertEquals(2, mWriter.getLastResultSet().getEntities().getCount());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testWriteV9Entity() throws IOException {
+    doReturn(9).when(config).getApiVersion();
+    ManagedEntity entity = new ManagedEntity();
+    entity.setIdentity("managed");
+    entity.setSourceType(SourceType.SDK);
+    entity.setEntityType(EntityType.OPERATION);
+    entity.setCreated(new Instant(0L));
+    entity.setTags(ImmutableList.of("foo"));
+    entity.setCount(5);
+    entity.setLabels(ImmutableList.of("a", "b"));
+
+    JsonMetadataWriter mWriter = new JsonMetadataWriter(config, stream,
+        mockConn);
+    mWriter.write(entity);
+
+    String value = new String(stream.toByteArray());
+    ObjectMapper mapper = new ObjectMapper();
+    Map<String, Object> values = ((List<Map<String, Object>>)mapper.readValue(
+        value, Map.class).get("entities")).get(0);
+    assertEquals("managed", values.get("identity"));
+    assertEquals(SourceType.SDK.name(), values.get("sourceType"));
+    assertEquals(EntityType.OPERATION.name(), values.get("type"));
+    assertEquals(new Instant(0L).toString(), values.get("created"));
+    assertEquals(false, values.get("deleted"));
+    assertEquals("managed_model", values.get("internalType"));
+    assertEquals("managed_model", values.get("metaClassName"));
+    // null properties are skipped, null custom properties are not
+    assertFalse(values.containsKey("owner"));
+    assertFalse(values.containsKey("count"));
+    Map<String, Object> custom = (Map<String, Object>)((Map<String, Object>)
+        values.get("customProperties")).get("test");
+    assertEquals(5, custom.get("count"));
+    assertEquals(ImmutableList.of("a", "b"), custom.get("labels"));
+    assertTrue(custom.containsKey("note"));
+    assertNull(custom.get("note"));
+    Map<String, Object> tChanges = (Map<String, Object>)values.get("tags");
+    assertEquals(ImmutableList.of("foo"), tChanges.get("set"));
+  }
+
+  @MClass(model="managed_model")
+  public static class ManagedEntity extends HdfsEntity {
+    @MProperty(register = true)
+    private Long count;
+    @MProperty(register = true)
+    private Collection<String> labels;
+    @MProperty(register = true)
+    private String note;
+
+    public Long getCount() {
+      return count;
+    }
+
+    public void setCount(long count) {
+      this.count = count;
+    }
+
+    public Collection<String> getLabels() {
+      return labels;
+    }
+
+    public void setLabels(Collection<String> labels) {
+      this.labels = labels;
+    }
+
+    public String getNote() {
+      return note;
+    }
+
+    public void setNote(String note) {
+      this.note = note;
+    }
+  }
+
+  @Test
+  public void testWritersShareContext() {
+    WriterContext context = WriterContext.forConfig(config);
+    Collection<MPropertyEntry> properties =
+        context.getRegistry().getProperties(HdfsEntity.class);
+
+    HdfsEntity entity = new HdfsEntity("/user/test", EntityType.DIRECTORY,
+        new Source("HDFS-1", SourceType.HDFS, "Cluster", "http://ns1", 0L)
+            .getIdentity());
+    JsonMetadataWriter mWriter = new JsonMetadataWriter(config, stream,
+        mockConn);
+    mWriter.write(entity);
+    mWriter.close();
+
+    // closing a writer keeps the scanned classes for the next one
+    assertSame(context, WriterContext.forConfig(config));
+    assertSame(properties,
+        context.getRegistry().getProperties(HdfsEntity.class));
+
+    ClientConfig other = mock(ClientConfig.class);
+    doReturn("other").when(other).getNamespace();
+    assertNotSame(context, WriterContext.forConfig(other));
+    doReturn(9).when(config).getApiVersion();
+    assertNotSame(context, WriterContext.forConfig(config));
+  }
+
+  @Test
+  public void testWriteDeepChain() throws IOException {
+    Entity entity = ChainEntity.ROOT;
+    for (int i = 0; i < 20000; i++) {
+      ChainEntity child = new ChainEntity("node" + i);
+      child.setParent(entity);
+      entity = child;
+    }
+    JsonMetadataWriter mWriter = new JsonMetadataWriter(config, stream,
+        mockConn);
+    mWriter.write(entity);
+    Map<?, ?> data = new ObjectMapper().readValue(stream.toByteArray(),
+        Map.class);
+    assertEquals(20000, ((Collection<?>) data.get("entities")).size());
+    assertEquals(20000, ((Collection<?>) data.get("relations")).size());
+
+    doReturn(true).when(config).isStreamingWrites();
+    stream = new ByteArrayOutputStream();
+    mWriter = new JsonMetadataWriter(config, stream, mockConn);
+    mWriter.write(entity);
+    data = new ObjectMapper().readValue(stream.toByteArray(), Map.class);
+    assertEquals(20000, ((Collection<?>) data.get("entities")).size());
+    assertEquals(20000, ((Collection<?>) data.get("relations")).size());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testCoalesceRelations() throws IOException {
+    ChainEntity parent = new ChainEntity("parent");
+    parent.setParent(ChainEntity.ROOT);
+    List<Entity> children = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      ChainEntity child = new ChainEntity("child" + i);
+      child.setParent(parent);
+      children.add(child);
+    }
+    JsonMetadataWriter mWriter = new JsonMetadataWriter(config, stream,
+        mockConn);
+    mWriter.write(children);
+    Map<?, ?> data = new ObjectMapper().readValue(stream.toByteArray(),
+        Map.class);
+    assertEquals(101, ((Collection<?>) data.get("relations")).size());
+
+    doReturn(true).when(config).isCoalesceRelations();
+    stream = new ByteArrayOutputStream();
+    mWriter = new JsonMetadataWriter(config, stream, mockConn);
+    mWriter.write(children);
+    data = new ObjectMapper().readValue(stream.toByteArray(), Map.class);
+    assertEquals(101, ((Collection<?>) data.get("entities")).size());
+    // the parent's own relation has another first endpoint
+    Collection<?> relations = (Collection<?>) data.get("relations");
+    assertEquals(2, relations.size());
+    Map<?, ?> relation = null;
+    for (Object value : relations) {
+      if (((Map<?, ?>) value).get("endpoint1Ids").equals(
+          ImmutableList.of("parent"))) {
+        relation = (Map<?, ?>) value;
+      }
+    }
+    assertEquals(RelationType.PARENT_CHILD.name(), relation.get("type"));
+    assertEquals(ImmutableList.of("parent"), relation.get("endpoint1Ids"));
+    assertEquals(100, ((Collection<?>) relation.get("endpoint2Ids")).size());
+    assertEquals(new RelationIdGenerator().generateRelationIdentity(
+        ImmutableList.of("parent"), SourceType.SDK,
+        (Collection<String>) relation.get("endpoint2Ids"), SourceType.SDK,
+        RelationType.PARENT_CHILD, "test"), relation.get("identity"));
+  }
+
+  @MClass(model="chain_model")
+  public static class ChainEntity extends Entity {
+    static final Entity ROOT = new EndPointProxy("root", SourceType.SDK,
+        EntityType.DATASET);
+
+    @MRelation(role = RelationRole.PARENT)
+    private Entity parent;
+
+    public ChainEntity(String name) {
+      setName(name);
+      setIdentity(name);
+      setSourceType(SourceType.SDK);
+      setEntityType(EntityType.DATASET);
+    }
+
+    @Override
+    public String generateId() {
+      return getName();
+    }
+
+    public Entity getParent() {
+      return parent;
+    }
+
+    public void setParent(Entity parent) {
+      this.parent = parent;
+    }
+  }
+
   private CustomOperationExecution prepExec(Source source) {
     CustomOperation op = new CustomOperation();
     op.setName("JobName");
@@ -18,13 +18,19 @@ package com.cloudera.nav.sdk.client;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import com.cloudera.nav.sdk.model.MetadataType;
 import com.cloudera.nav.sdk.model.Source;
 import com.cloudera.nav.sdk.model.SourceType;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
+import java.util.List;
+import java.util.Map;
+
 import org.apache.commons.lang.StringUtils;
 import org.junit.*;
 import org.junit.runner.*;
+import org.mockito.ArgumentCaptor;
 import org.mockito.runners.*;
 
 /**
@@ -77,5 +83,54 @@ public class MetadataExtractorTest {
     String res = extractor.getMarker();
     assertEquals(res, marker1Rep);
   }
-}
 
+  @Test
+  public void testSingleSourceFetch() {
+    extractor.extractMetadata(marker1Rep);
+    verify(client, times(1)).getAllSources();
+  }
+
+  @Test
+  public void testReuseSourceSnapshot() {
+    SourceCache.Snapshot sources = extractor.takeSourceSnapshot();
+    MetadataResultSet hdfs = extractor.extractMetadata(sources, marker1Rep,
+        null, "sourceType:HDFS", null);
+    MetadataResultSet hive = extractor.extractMetadata(sources, marker1Rep,
+        null, "sourceType:HIVE", null);
+    assertEquals(hdfs.getMarker(), hive.getMarker());
+    assertEquals(hdfs.getMarker(), extractor.getMarker(sources));
+    verify(client, times(1)).getAllSources();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testExtractByTerms() {
+    ClientConfig config = new ClientConfig();
+    config.setMaxQueryLength(128);
+    when(client.getConfig()).thenReturn(config);
+    List<String> ids = Lists.newArrayList();
+    for (int i = 0; i < 40; i++) {
+      ids.add("id" + i);
+    }
+    EntityResultsBatch batch = new EntityResultsBatch();
+    batch.setResults(Lists.<Map<String, Object>>newArrayList(
+        ImmutableMap.<String, Object>of("identity", "id0")));
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenReturn(batch);
+
+    TermsQueryIterable results = extractor.extractByTerms(
+        MetadataType.ENTITIES, "deleted:false", "identity", ids);
+    int queries = results.getQueryCount();
+    assertEquals(2, queries);
+    // nothing is fetched before iterating
+    verify(client, never()).getEntityBatch(any(MetadataQuery.class));
+    assertEquals(queries, Lists.newArrayList(results).size());
+
+    ArgumentCaptor<MetadataQuery> sent =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(client, times(queries)).getEntityBatch(sent.capture());
+    assertEquals("deleted:false AND {!terms f=identity v=\"id0,id1,id2,id3," +
+        "id4,id5,id6,id7,id8,id9,id10,id11,id12,id13,id14,id15,id16,id17," +
+        "id18,id19,id20,id21,id22\"}",
+        sent.getAllValues().get(0).getQuery());
+  }
+}
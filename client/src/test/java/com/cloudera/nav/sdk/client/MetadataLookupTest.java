@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.*;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for MetadataLookup
+ */
+public class MetadataLookupTest {
+
+  private static final Pattern ID = Pattern.compile("id\\d+");
+
+  private NavApiCient client;
+
+  @Before
+  public void setUp() {
+    ClientConfig config = new ClientConfig();
+    config.setMaxQueryLength(128);
+    config.setLookupParallelism(2);
+    client = mock(NavApiCient.class);
+    when(client.getConfig()).thenReturn(config);
+    // every query finds the entities it names plus a shared one
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<EntityResultsBatch>() {
+          @Override
+          public EntityResultsBatch answer(InvocationOnMock invocation) {
+            String query = ((MetadataQuery) invocation.getArguments()[0])
+                .getQuery();
+            List<Map<String, Object>> results = Lists.newArrayList();
+            Matcher ids = ID.matcher(query);
+            while (ids.find()) {
+              results.add(ImmutableMap.<String, Object>of("identity",
+                  ids.group()));
+            }
+            results.add(ImmutableMap.<String, Object>of("identity", "shared"));
+            EntityResultsBatch batch = new EntityResultsBatch();
+            batch.setResults(results);
+            return batch;
+          }
+        });
+  }
+
+  @Test
+  public void testGetEntities() {
+    when(client.getEntities(anyCollectionOf(String.class))).thenCallRealMethod();
+    List<String> ids = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      ids.add("id" + i);
+    }
+    // duplicates are only looked up once
+    ids.addAll(ids.subList(0, 10));
+    MetadataLookup lookup = client.getEntities(ids);
+    assertTrue(lookup.getQueryCount() > 2);
+    verify(client, never()).getEntityBatch(any(MetadataQuery.class));
+
+    Map<String, Map<String, Object>> entities = lookup.toMap();
+    assertEquals(101, entities.size());
+    assertEquals("id42", entities.get("id42").get("identity"));
+    verify(client, times(lookup.getQueryCount()))
+        .getEntityBatch(any(MetadataQuery.class));
+
+    // shared results are returned once
+    List<Map<String, Object>> results = Lists.newArrayList(lookup);
+    assertEquals(101, results.size());
+    assertEquals(101, Sets.newHashSet(results).size());
+  }
+
+  @Test
+  public void testEmptyLookup() {
+    MetadataLookup lookup = new MetadataLookup(client, MetadataType.ENTITIES,
+        null, "identity", Lists.<String>newArrayList(), null);
+    assertEquals(0, lookup.getQueryCount());
+    assertFalse(lookup.iterator().hasNext());
+  }
+
+  @Test
+  public void testCachedLookups() {
+    EntityCache cache = new EntityCache(1000, Long.MAX_VALUE, 0);
+    List<String> ids = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      ids.add("id" + i);
+    }
+    MetadataLookup lookup = new MetadataLookup(client, MetadataType.ENTITIES,
+        null, "identity", ids, cache);
+    assertEquals(21, lookup.toMap().size());
+    assertEquals(21, cache.size());
+    verify(client, times(1)).getEntityBatch(any(MetadataQuery.class));
+
+    // only the identities that are no longer cached are queried
+    cache.invalidate(Lists.newArrayList("id3"));
+    Map<String, Map<String, Object>> entities = lookup.toMap();
+    assertEquals(21, entities.size());
+    assertTrue(entities.containsKey("id3"));
+    ArgumentCaptor<MetadataQuery> queries =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(client, times(2)).getEntityBatch(queries.capture());
+    assertEquals("identity:(id3)", queries.getValue().getQuery());
+
+    assertSame(cache.get("id0"), lookup.iterator().next());
+  }
+
+  @Test
+  public void testLookupPageSize() {
+    client.getConfig().setLookupPageSize(5);
+    MetadataLookup lookup = new MetadataLookup(client, MetadataType.ENTITIES,
+        null, "identity", Lists.newArrayList("id0"), null);
+    assertEquals(2, lookup.toMap().size());
+    ArgumentCaptor<MetadataQuery> queries =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(client).getEntityBatch(queries.capture());
+    assertEquals(5, queries.getValue().getLimit().intValue());
+  }
+
+  @Test
+  public void testInvalidatedDuringLookup() {
+    final EntityCache cache = new EntityCache(1000, Long.MAX_VALUE, 0);
+    // a write invalidates the entities while the lookup is running
+    doAnswer(new Answer<EntityResultsBatch>() {
+      @Override
+      public EntityResultsBatch answer(InvocationOnMock invocation) {
+        cache.invalidateAll();
+        List<Map<String, Object>> results = Lists.newArrayList();
+        results.add(ImmutableMap.<String, Object>of("identity", "id0"));
+        EntityResultsBatch batch = new EntityResultsBatch();
+        batch.setResults(results);
+        return batch;
+      }
+    }).when(client).getEntityBatch(any(MetadataQuery.class));
+    MetadataLookup lookup = new MetadataLookup(client, MetadataType.ENTITIES,
+        null, "identity", Lists.newArrayList("id0"), cache);
+    assertEquals(1, lookup.toMap().size());
+    assertEquals(0, cache.size());
+  }
+}
@@ -20,17 +20,29 @@ import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.*;
 
 import com.cloudera.nav.sdk.model.MetadataType;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.*;
 import org.mockito.*;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.*;
+import org.mockito.stubbing.Answer;
 
 /**
  * Unit tests for IncrementalExtractIterator
@@ -38,6 +50,8 @@ import org.mockito.runners.*;
 @RunWith(MockitoJUnitRunner.class)
 @SuppressWarnings("unchecked")
 public class MetadataResultIteratorTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
   private NavApiCient client;
   private EntityResultsBatch entityBatch;
   private RelationResultsBatch relationBatch;
@@ -45,6 +59,7 @@ public class MetadataResultIteratorTest {
   @Before
   public void setUp(){
     client = mock(NavApiCient.class);
+    when(client.getConfig()).thenReturn(new ClientConfig());
     List<Map<String, Object>> result = Lists.newArrayList();
     entityBatch = new EntityResultsBatch();
     entityBatch.setCursorMark("nextCursor");
@@ -105,5 +120,268 @@ public class MetadataResultIteratorTest {
     metadataResultIterator.getNextBatch();
     assertTrue(metadataResultIterator.hasNext());
   }
-}
 
+  @Test
+  public void testPrefetchPages(){
+    List<String> extractorRunIds = Lists.newArrayList("x##0", "x##1", "x##2");
+    Map<String, Object> first = Maps.newHashMap();
+    first.put("field", "first");
+    Map<String, Object> second = Maps.newHashMap();
+    second.put("field", "second");
+    Map<String, Object> third = Maps.newHashMap();
+    third.put("field", "third");
+    EntityResultsBatch fullBatch = new EntityResultsBatch();
+    fullBatch.setCursorMark("nextCursor");
+    fullBatch.setResults(Lists.newArrayList(first, second));
+    entityBatch.setResults(Lists.newArrayList(third));
+    when(client.getEntityBatch(any(MetadataQuery.class)))
+        .thenReturn(fullBatch, entityBatch);
+    MetadataResultIterator metadataResultIterator = new MetadataResultIterator(
+        client, MetadataType.ENTITIES, "identity:*", 2, extractorRunIds,
+        extractionConfig(2, 1, true));
+    assertEquals(Lists.newArrayList(first, second, third),
+        Lists.newArrayList(metadataResultIterator));
+    assertFalse(metadataResultIterator.hasNext());
+    verify(client, times(2)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testAdaptivePageSize(){
+    Map<String, Object> first = Maps.newHashMap();
+    first.put("field", "first");
+    Map<String, Object> second = Maps.newHashMap();
+    second.put("field", "second");
+    Map<String, Object> third = Maps.newHashMap();
+    third.put("field", "third");
+    EntityResultsBatch fullBatch = new EntityResultsBatch();
+    fullBatch.setCursorMark("nextCursor");
+    fullBatch.setResults(Lists.newArrayList(first, second));
+    entityBatch.setResults(Lists.newArrayList(third));
+    when(client.getEntityBatch(any(MetadataQuery.class)))
+        .thenReturn(fullBatch, entityBatch);
+    ClientConfig config = new ClientConfig();
+    config.setAdaptivePageSize(true);
+    config.setMinPageSize(2);
+    config.setMaxPageSize(2);
+    // a full page of the adapted size is not the last one
+    MetadataResultIterator metadataResultIterator = new MetadataResultIterator(
+        client, MetadataType.ENTITIES, "identity:*", 5,
+        Lists.<String>newArrayList(), config);
+    assertEquals(Lists.newArrayList(first, second, third),
+        Lists.newArrayList(metadataResultIterator));
+    ArgumentCaptor<MetadataQuery> queries =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(client, times(2)).getEntityBatch(queries.capture());
+    for (MetadataQuery query : queries.getAllValues()) {
+      assertEquals(2, query.getLimit().intValue());
+    }
+  }
+
+  @Test
+  public void testParallelOrdered(){
+    List<String> extractorRunIds = partitionedRunIds(5);
+    stubBatchPerQuery();
+    MetadataResultIterator metadataResultIterator = new MetadataResultIterator(
+        client, MetadataType.ENTITIES, "identity:*", 100, extractorRunIds,
+        extractionConfig(1, 3, true));
+    List<Object> queries = Lists.newArrayList();
+    while (metadataResultIterator.hasNext()) {
+      queries.add(metadataResultIterator.next().get("query"));
+    }
+    assertEquals(5, queries.size());
+    for (int i = 0; i < queries.size(); i++) {
+      assertTrue(queries.get(i).toString().contains(
+          extractorRunIds.get(i * MetadataResultIterator
+              .MAX_QUERY_PARTITION_SIZE)));
+    }
+  }
+
+  @Test
+  public void testParallelOrderedBounded() throws InterruptedException {
+    final AtomicInteger claimed = new AtomicInteger();
+    Iterator<Iterator<ResultsBatch<Map<String, Object>>>> partitions =
+        new AbstractIterator<Iterator<ResultsBatch<Map<String, Object>>>>() {
+          @Override
+          protected Iterator<ResultsBatch<Map<String, Object>>>
+              computeNext() {
+            int i = claimed.getAndIncrement();
+            if (i >= 50) {
+              return endOfData();
+            }
+            Map<String, Object> result = Maps.newHashMap();
+            result.put("partition", i);
+            EntityResultsBatch batch = new EntityResultsBatch();
+            batch.setResults(Collections.singletonList(result));
+            return Iterators.<ResultsBatch<Map<String, Object>>>
+                singletonIterator(batch);
+          }
+        };
+    ParallelBatchFetcher fetcher = new ParallelBatchFetcher(partitions, 3, 1,
+        true);
+    assertEquals(0, fetcher.take().getResults().get(0).get("partition"));
+    // a stalled consumer holds back single batch partitions
+    Thread.sleep(300);
+    assertEquals(3, claimed.get());
+    for (int i = 1; i < 50; i++) {
+      assertEquals(i, fetcher.take().getResults().get(0).get("partition"));
+    }
+    assertNull(fetcher.take());
+  }
+
+  @Test
+  public void testParallelUnordered(){
+    List<String> extractorRunIds = partitionedRunIds(5);
+    stubBatchPerQuery();
+    MetadataResultIterator metadataResultIterator = new MetadataResultIterator(
+        client, MetadataType.ENTITIES, "identity:*", 100, extractorRunIds,
+        extractionConfig(0, 3, false));
+    List<Map<String, Object>> results =
+        Lists.newArrayList(metadataResultIterator);
+    assertEquals(5, Sets.newHashSet(results).size());
+    verify(client, times(5)).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testStreaming(){
+    List<String> extractorRunIds = Lists.newArrayList("x##0", "x##1", "x##2");
+    when(client.streamEntityBatch(any(MetadataQuery.class))).thenReturn(
+        streamedBatch("{\"cursorMark\":\"c1\",\"results\":" +
+            "[{\"field\":\"first\"},{\"field\":\"second\"}]}"),
+        streamedBatch("{\"results\":[{\"field\":\"third\"}]," +
+            "\"cursorMark\":\"c2\"}"));
+    ClientConfig config = new ClientConfig();
+    config.setStreamingExtraction(true);
+    MetadataResultIterator metadataResultIterator = new MetadataResultIterator(
+        client, MetadataType.ENTITIES, "identity:*", 2, extractorRunIds,
+        config);
+    List<Object> fields = Lists.newArrayList();
+    while (metadataResultIterator.hasNext()) {
+      fields.add(metadataResultIterator.next().get("field"));
+    }
+    assertEquals(Lists.<Object>newArrayList("first", "second", "third"),
+        fields);
+    ArgumentCaptor<MetadataQuery> queries =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(client, times(2)).streamEntityBatch(queries.capture());
+    assertEquals("*", queries.getAllValues().get(0).getCursorMark());
+    assertEquals("c1", queries.getAllValues().get(1).getCursorMark());
+    verify(client, never()).getEntityBatch(any(MetadataQuery.class));
+  }
+
+  @Test
+  public void testResumeFromCheckpoint() throws IOException {
+    List<String> extractorRunIds = Lists.newArrayList("x##0", "x##1", "x##2");
+    Map<String, Object> first = Maps.newHashMap();
+    first.put("field", "first");
+    Map<String, Object> second = Maps.newHashMap();
+    second.put("field", "second");
+    Map<String, Object> third = Maps.newHashMap();
+    third.put("field", "third");
+    EntityResultsBatch fullBatch = new EntityResultsBatch();
+    fullBatch.setCursorMark("nextCursor");
+    fullBatch.setResults(Lists.newArrayList(first, second));
+    entityBatch.setResults(Lists.newArrayList(third));
+    when(client.getEntityBatch(any(MetadataQuery.class)))
+        .thenReturn(fullBatch, entityBatch);
+    File file = folder.newFile("checkpoints");
+    ClientConfig config = new ClientConfig();
+
+    // stop after the first batch
+    MetadataResultIterator metadataResultIterator = new MetadataResultIterator(
+        client, MetadataType.ENTITIES, "identity:*", 2, extractorRunIds,
+        config, new ExtractionCheckpoints(file));
+    assertEquals(first, metadataResultIterator.next());
+    assertEquals(second, metadataResultIterator.next());
+    metadataResultIterator.close();
+
+    // resume from the second batch
+    metadataResultIterator = new MetadataResultIterator(client,
+        MetadataType.ENTITIES, "identity:*", 2, extractorRunIds, config,
+        new ExtractionCheckpoints(file));
+    assertEquals(Lists.newArrayList(third),
+        Lists.newArrayList(metadataResultIterator));
+    ArgumentCaptor<MetadataQuery> queries =
+        ArgumentCaptor.forClass(MetadataQuery.class);
+    verify(client, times(3)).getEntityBatch(queries.capture());
+    assertEquals("nextCursor", queries.getAllValues().get(2).getCursorMark());
+    ExtractionCheckpoints.Checkpoint checkpoint =
+        new ExtractionCheckpoints(file).get(MetadataType.ENTITIES.name());
+    assertTrue(checkpoint.isDone());
+    assertEquals(3, checkpoint.getDelivered());
+
+    // nothing left after the extraction finished
+    metadataResultIterator = new MetadataResultIterator(client,
+        MetadataType.ENTITIES, "identity:*", 2, extractorRunIds, config,
+        new ExtractionCheckpoints(file));
+    assertFalse(metadataResultIterator.hasNext());
+    verify(client, times(3)).getEntityBatch(any(MetadataQuery.class));
+
+    // a new extraction only forgets the checkpoints it replaces
+    ExtractionCheckpoints checkpoints = new ExtractionCheckpoints(file);
+    checkpoints.save("other", checkpoint);
+    checkpoints.startExtraction("signature", "marker",
+        MetadataType.ENTITIES.name());
+    checkpoints = new ExtractionCheckpoints(file);
+    assertNull(checkpoints.get(MetadataType.ENTITIES.name()));
+    assertEquals(3, checkpoints.get("other").getDelivered());
+    assertEquals("marker", checkpoints.getMarker("signature"));
+  }
+
+  @Test
+  public void testPartitionByLength() {
+    List<String> values = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      values.add("x##0" + i);
+    }
+    values.add("a value longer than the limit");
+    // two values of 5 characters and one " OR " fit in 17 characters
+    List<List<String>> partitions = Lists.newArrayList(
+        MetadataResultIterator.partition(values.iterator(), 17));
+    assertEquals(6, partitions.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(values.subList(i * 2, i * 2 + 2), partitions.get(i));
+    }
+    assertEquals(values.subList(10, 11), partitions.get(5));
+  }
+
+  private StreamingResultsReader streamedBatch(String json) {
+    return new StreamingResultsReader(
+        new ByteArrayInputStream(json.getBytes()));
+  }
+
+  private ClientConfig extractionConfig(int prefetchDepth, int parallelism,
+                                        boolean ordered) {
+    ClientConfig config = new ClientConfig();
+    config.setPrefetchDepth(prefetchDepth);
+    config.setExtractionParallelism(parallelism);
+    config.setOrderedExtraction(ordered);
+    return config;
+  }
+
+  private List<String> partitionedRunIds(int partitions) {
+    List<String> extractorRunIds = Lists.newArrayList();
+    for (int i = 0;
+         i < partitions * MetadataResultIterator.MAX_QUERY_PARTITION_SIZE;
+         i++) {
+      extractorRunIds.add("x##" + i);
+    }
+    return extractorRunIds;
+  }
+
+  private void stubBatchPerQuery() {
+    // one result per query that records which query produced it
+    when(client.getEntityBatch(any(MetadataQuery.class))).thenAnswer(
+        new Answer<EntityResultsBatch>() {
+          @Override
+          public EntityResultsBatch answer(InvocationOnMock invocation) {
+            MetadataQuery query = (MetadataQuery) invocation.getArguments()[0];
+            Map<String, Object> result = Maps.newHashMap();
+            result.put("query", query.getQuery());
+            EntityResultsBatch batch = new EntityResultsBatch();
+            batch.setCursorMark("nextCursor");
+            batch.setResults(Collections.singletonList(result));
+            return batch;
+          }
+        });
+  }
+}
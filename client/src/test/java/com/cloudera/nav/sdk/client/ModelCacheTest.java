@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.model.MetadataModel;
+import com.cloudera.nav.sdk.model.custom.CustomProperty;
+import com.cloudera.nav.sdk.model.custom.CustomPropertyType;
+import com.cloudera.nav.sdk.model.custom.MetaClass;
+import com.cloudera.nav.sdk.model.custom.MetaClassPackage;
+import com.cloudera.nav.sdk.model.custom.Namespace;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ModelCacheTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testUnchangedModelsSkipped() {
+    ModelCache cache = newCache(0);
+    MetadataModel model = newModel("a", "b");
+    assertNull(cache.read());
+    assertSame(model, ModelCache.diff(null, model));
+    cache.save(null, model, model);
+
+    // same model built in another order
+    ModelCache.Entry registered = newCache(0).read();
+    assertNull(ModelCache.diff(registered, newModel("b", "a")));
+    assertEquals(ModelCache.hash(model), registered.getModelHash());
+  }
+
+  @Test
+  public void testChangesOnly() {
+    ModelCache cache = newCache(0);
+    MetadataModel model = newModel("a");
+    cache.save(null, model, model);
+
+    MetadataModel changed = newModel("a", "b");
+    ModelCache.Entry registered = cache.read();
+    MetadataModel changes = ModelCache.diff(registered, changed);
+    assertEquals("b", Iterables.getOnlyElement(changes.getClasses()).getName());
+    assertEquals("b",
+        Iterables.getOnlyElement(changes.getProperties()).getName());
+    assertEquals(Sets.newHashSet("test.b"),
+        changes.getMappings().get("test.b"));
+    assertEquals(1, changes.getMappings().size());
+    assertEquals(1, changes.getPackages().size());
+    cache.save(registered, changed, changes);
+
+    registered = cache.read();
+    assertEquals(2, registered.getModel().getClasses().size());
+    assertEquals(2, registered.getModel().getMappings().size());
+    assertNull(ModelCache.diff(registered, newModel("b", "a")));
+
+    // a changed property is sent again, with its package and namespace
+    MetadataModel updated = newModel("a", "b");
+    Iterables.getOnlyElement(Iterables.filter(updated.getProperties(),
+        new Predicate<CustomProperty>() {
+          @Override
+          public boolean apply(CustomProperty input) {
+            return input.getName().equals("a");
+          }
+        })).setMaxLength(10);
+    changes = ModelCache.diff(registered, updated);
+    assertTrue(changes.getClasses().isEmpty());
+    assertEquals(Integer.valueOf(10),
+        Iterables.getOnlyElement(changes.getProperties()).getMaxLength());
+    assertTrue(changes.getMappings().isEmpty());
+    assertEquals(1, changes.getNamespaces().size());
+  }
+
+  @Test
+  public void testExpired() throws Exception {
+    ModelCache cache = newCache(50);
+    MetadataModel model = newModel("a");
+    cache.save(null, model, model);
+    assertNotNull(cache.read());
+    Thread.sleep(100);
+    assertNull(cache.read());
+  }
+
+  private ModelCache newCache(long ttlMillis) {
+    return new ModelCache(folder.getRoot(), "http://localhost:7187", 9,
+        "test", ttlMillis);
+  }
+
+  private MetadataModel newModel(String... names) {
+    Set<MetaClass> classes = Sets.newLinkedHashSet();
+    Set<CustomProperty> properties = Sets.newLinkedHashSet();
+    Map<String, Set<String>> mappings = Maps.newLinkedHashMap();
+    for (String name : names) {
+      classes.add(MetaClass.newClass("test", name));
+      properties.add(CustomProperty.newProperty("test", name,
+          CustomPropertyType.TEXT, false, null));
+      mappings.put("test." + name, Sets.newHashSet("test." + name));
+    }
+    MetadataModel model = new MetadataModel();
+    model.setPackages(Sets.newHashSet(MetaClassPackage.newPackage("test")));
+    model.setNamespaces(Sets.newHashSet(Namespace.newNamespace("test")));
+    model.setClasses(classes);
+    model.setProperties(properties);
+    model.setMappings(mappings);
+    return model;
+  }
+}
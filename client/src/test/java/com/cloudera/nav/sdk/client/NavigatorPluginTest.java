@@ -19,21 +19,36 @@ package com.cloudera.nav.sdk.client;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import com.cloudera.nav.sdk.client.writer.AsyncMetadataWriter;
+import com.cloudera.nav.sdk.client.writer.MClassWrapper;
 import com.cloudera.nav.sdk.client.writer.MetadataWriter;
 import com.cloudera.nav.sdk.client.writer.MetadataWriterFactory;
+import com.cloudera.nav.sdk.client.writer.ResultSet;
+import com.cloudera.nav.sdk.model.MClassIndex;
 import com.cloudera.nav.sdk.model.MetadataModel;
+import com.cloudera.nav.sdk.model.SourceType;
 import com.cloudera.nav.sdk.model.annotations.MClass;
 import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.entities.EntityType;
 import com.cloudera.nav.sdk.model.entities.HdfsEntity;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.Files;
 
+import java.io.File;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import org.junit.*;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.*;
 import org.mockito.*;
 import org.mockito.runners.*;
@@ -41,6 +56,7 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -49,9 +65,11 @@ public class NavigatorPluginTest {
   private MetadataWriter mockWriter;
   private MetadataWriterFactory mockFactory;
   @Captor
-  private ArgumentCaptor<Collection<Entity>> captor;
+  private ArgumentCaptor<MClassWrapper> captor;
   private ClientConfig config;
   private NavigatorPlugin plugin;
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
 
   @Before
   public void setUp() {
@@ -66,21 +84,134 @@ public class NavigatorPluginTest {
 
   @Test
   public void testWrite() {
-    HdfsEntity entity = new HdfsEntity();
-    entity.setIdentity("foo");
+    HdfsEntity entity = newEntity("foo");
     plugin.write(entity);
-    verify(mockWriter).write(captor.capture());
-    assertEquals(Iterables.getOnlyElement(captor.getValue()), entity);
+    verify(mockWriter).writeGraph(captor.capture());
+    assertEquals(Iterables.getOnlyElement(captor.getValue().getEntities()),
+        entity);
     verify(mockWriter).flush();
     verify(mockWriter).close();
   }
 
+  @Test
+  public void testAsyncWriter() throws Exception {
+    config.setSkipUnchangedWrites(true);
+    plugin = spy(new NavigatorPlugin(config, mockFactory));
+    HdfsEntity entity = newEntity("foo");
+    AsyncMetadataWriter writer = plugin.newAsyncWriter();
+    writer.write(entity).get();
+    // batches go through the plugin, so unchanged entities are skipped
+    writer.write(entity).get();
+    writer.close();
+    verify(mockWriter, times(1)).writeGraph(any(MClassWrapper.class));
+    try {
+      writer.write(entity);
+      fail();
+    } catch (IllegalStateException e) {
+      // closed
+    }
+  }
+
+  @Test
+  public void testSplitWrite() {
+    config.setWriteBatchSize(1);
+    config.setWriteMaxRetries(1);
+    config.setRetryBackoffMillis(0);
+    doReturn(new ResultSet(new ResultSet.UpdateWrapper(1,
+        Collections.<String>emptyList()), null))
+        .when(mockWriter).getLastResultSet();
+    // the first request of the second entity fails and is retried
+    doNothing().doThrow(new RuntimeException(
+        new SocketTimeoutException("timeout"))).doNothing()
+        .when(mockWriter).flush();
+    HdfsEntity foo = newEntity("foo");
+    HdfsEntity bar = newEntity("bar");
+    ResultSet results = plugin.write(ImmutableList.<Entity>of(foo, bar));
+    verify(mockFactory, times(3)).newWriter();
+    verify(mockWriter, times(3)).writeGraph(any(MClassWrapper.class));
+    verify(mockWriter, times(3)).close();
+    assertEquals(2, results.getEntities().getCount());
+    assertNull(results.getRelations());
+  }
+
+  @Test
+  public void testNoRetryOnRejectedWrite() {
+    config.setRetryBackoffMillis(0);
+    doThrow(new HttpClientErrorException(HttpStatus.BAD_REQUEST))
+        .when(mockWriter).flush();
+    HdfsEntity entity = newEntity("foo");
+    try {
+      plugin.write(entity);
+      fail();
+    } catch (HttpClientErrorException e) {
+      verify(mockWriter, times(1)).writeGraph(any(MClassWrapper.class));
+      verify(mockWriter, times(1)).close();
+    }
+  }
+
+  @Test
+  public void testSkipUnchangedWrites() {
+    config.setSkipUnchangedWrites(true);
+    config.setWriteDigestFile(folder.getRoot().getPath() + "/digests.json");
+    plugin = spy(new NavigatorPlugin(config, mockFactory));
+    HdfsEntity entity = newEntity("foo");
+    plugin.write(entity);
+    verify(mockWriter).writeGraph(any(MClassWrapper.class));
+
+    ResultSet results = plugin.write(entity);
+    verify(mockWriter, times(1)).writeGraph(any(MClassWrapper.class));
+    assertEquals(0, results.getEntities().getCount());
+
+    // digests are read back by another plugin
+    plugin = spy(new NavigatorPlugin(config, mockFactory));
+    plugin.write(entity);
+    verify(mockWriter, times(1)).writeGraph(any(MClassWrapper.class));
+    entity.setDescription("changed");
+    plugin.write(entity);
+    verify(mockWriter, times(2)).writeGraph(any(MClassWrapper.class));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSkipUnchangedStreamingWrites() {
+    config.setSkipUnchangedWrites(true);
+    config.setStreamingWrites(true);
+    new NavigatorPlugin(config, mockFactory);
+  }
+
   @Test
   public void testRegisterModels() {
     assertModelRegistration();
   }
 
-  private void assertModelRegistration() {
+  @Test
+  public void testRestTemplateReused() {
+    NavApiCient client = assertModelRegistration();
+    plugin.registerModel(TestMClass.class);
+    verify(client, times(1)).newRestTemplate();
+    client.close();
+    plugin.registerModel(TestMClass.class);
+    verify(client, times(2)).newRestTemplate();
+  }
+
+  @Test
+  public void testRegisterModelsCached() throws Exception {
+    config.setModelCacheDir(folder.getRoot().getPath());
+    NavApiCient client = assertModelRegistration();
+    RestTemplate template = client.getRestTemplate();
+    // unchanged models are not sent again
+    MetadataModel response = plugin.registerModel(TestMClass.class);
+    assertEquals(1, response.getClasses().size());
+    verify(template, times(1)).exchange(anyString(), eq(HttpMethod.POST),
+        any(HttpEntity.class), eq(MetadataModel.class));
+
+    // other namespaces are registered separately
+    config.setNamespace("other");
+    plugin.registerModel(TestMClass.class);
+    verify(template, times(2)).exchange(anyString(), eq(HttpMethod.POST),
+        any(HttpEntity.class), eq(MetadataModel.class));
+  }
+
+  private NavApiCient assertModelRegistration() {
     RestTemplate mockTemplate = mock(RestTemplate.class);
     NavApiCient client = spy(plugin.getClient());
     when(plugin.getClient()).thenReturn(client);
@@ -93,6 +224,45 @@ public class NavigatorPluginTest {
         .thenReturn(new ResponseEntity<>(mockResponse, HttpStatus.OK));
     MetadataModel response = plugin.registerModel(TestMClass.class);
     assertEquals(mockResponse, response);
+    return client;
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRegisterIndexedAndScannedModels() throws Exception {
+    // another root indexes one class, the test classes are not indexed
+    File index = new File(folder.getRoot(), MClassIndex.RESOURCE);
+    Files.createParentDirs(index);
+    Files.write(TestMClass.class.getName() + "\n", index, Charsets.UTF_8);
+    Thread thread = Thread.currentThread();
+    ClassLoader loader = thread.getContextClassLoader();
+    try (URLClassLoader indexed = new URLClassLoader(
+        new URL[] {folder.getRoot().toURI().toURL()}, loader)) {
+      thread.setContextClassLoader(indexed);
+      doReturn(null).when(plugin).registerModels(any(Collection.class));
+      plugin.registerModels(getClass().getPackage().getName());
+    } finally {
+      thread.setContextClassLoader(loader);
+    }
+    ArgumentCaptor<Collection> classes =
+        ArgumentCaptor.forClass(Collection.class);
+    verify(plugin).registerModels(classes.capture());
+    assertTrue(classes.getValue().contains(TestMClass.class));
+    assertTrue(classes.getValue().contains(CustomOperation.class));
+  }
+
+  @Test
+  public void testRejectInvalidSplitWrite() {
+    config.setWriteBatchSize(1);
+    HdfsEntity invalid = newEntity("bar");
+    invalid.setSourceType(null);
+    try {
+      plugin.write(ImmutableList.<Entity>of(newEntity("foo"), invalid));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // nothing is sent if any entity is invalid
+      verify(mockWriter, never()).flush();
+    }
   }
 
   @Test(expected = IllegalArgumentException.class)
@@ -103,6 +273,14 @@ public class NavigatorPluginTest {
     assertModelRegistration();
   }
 
+  private static HdfsEntity newEntity(String identity) {
+    HdfsEntity entity = new HdfsEntity();
+    entity.setIdentity(identity);
+    entity.setSourceType(SourceType.HDFS);
+    entity.setEntityType(EntityType.FILE);
+    return entity;
+  }
+
   @MClass(model="test")
   private static class TestMClass extends Entity {
     @Override
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PageSizerTest {
+
+  @Test
+  public void testAdjustTowardTargetTime() {
+    PageSizer sizer = new PageSizer(1000, 100, 3000, 1000, Long.MAX_VALUE);
+    // four times faster than the target, grows by at most a factor of two
+    sizer.record(1000, results(1000), millis(250));
+    assertEquals(2000, sizer.getPageSize());
+    // capped by the maximum page size
+    sizer.record(2000, results(2000), millis(100));
+    assertEquals(3000, sizer.getPageSize());
+    sizer.record(3000, results(3000), millis(2000));
+    assertEquals(1500, sizer.getPageSize());
+    // the last page of a query is ignored
+    sizer.record(1500, results(10), millis(1));
+    assertEquals(1500, sizer.getPageSize());
+  }
+
+  @Test
+  public void testAdjustTowardTargetBytes() {
+    long pageBytes = EntityCache.estimateBytes(results(1000));
+    PageSizer sizer = new PageSizer(1000, 100, 10000, 1000, pageBytes * 3 / 4);
+    sizer.record(1000, results(1000), millis(1));
+    assertEquals(750, sizer.getPageSize());
+  }
+
+  @Test
+  public void testInitialSizeWithinBounds() {
+    assertEquals(5000, new PageSizer(500000, 100, 5000, 1000, 1000)
+        .getPageSize());
+    assertEquals(100, new PageSizer(1, 100, 5000, 1000, 1000).getPageSize());
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static List<Map<String, Object>> results(int count) {
+    List<Map<String, Object>> results = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      results.add(ImmutableMap.<String, Object>of("identity", "id"));
+    }
+    return results;
+  }
+}
@@ -18,8 +18,10 @@ package com.cloudera.nav.sdk.client;
 
 import static org.junit.Assert.*;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.*;
@@ -47,4 +49,57 @@ public class QueryUtilsTest {
         "AND identity:(foo OR bar OR baz)";
     assertEquals(ans, fullQuery);
   }
+
+  @Test
+  public void testEscapeQueryChars() {
+    assertEquals("a\\:b\\ c\\\\d\\*", QueryUtils.escapeQueryChars("a:b c\\d*"));
+  }
+
+  @Test
+  public void testSmallTermsClause() {
+    String clause = QueryUtils.buildTermsClause("identity",
+        Arrays.asList("a:1", "b"));
+    assertEquals("identity:(a\\:1 OR b)", clause);
+  }
+
+  @Test
+  public void testLargeTermsClause() {
+    List<String> values = Lists.newArrayList();
+    for (int i = 0; i < QueryUtils.TERMS_THRESHOLD; i++) {
+      values.add("id" + i);
+    }
+    values.add("a\"b");
+    values.add("c,d");
+    String clause = QueryUtils.buildTermsClause("identity", values);
+    assertEquals("({!terms f=identity v=\"id0,id1,id2,id3,id4,id5,id6,id7," +
+        "id8,id9,id10,id11,id12,id13,id14,id15,a\\\"b\"} OR identity:(c,d))",
+        clause);
+  }
+
+  @Test
+  public void testSplitTermsClauses() {
+    List<String> values = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      values.add(String.format("id%04d", i));
+    }
+    List<String> clauses = QueryUtils.buildTermsClauses("identity", values,
+        1024);
+    // 143 values of 6 bytes and their separators fill the limit exactly
+    assertEquals(7, clauses.size());
+    assertEquals(1024, clauses.get(0).getBytes(Charsets.UTF_8).length);
+    List<String> matched = Lists.newArrayList();
+    for (String clause : clauses) {
+      assertTrue(clause.getBytes(Charsets.UTF_8).length <= 1024);
+      assertTrue(clause.startsWith("{!terms f=identity v=\""));
+      matched.addAll(Arrays.asList(clause.substring(
+          clause.indexOf('"') + 1, clause.lastIndexOf('"')).split(",")));
+    }
+    assertEquals(values, matched);
+
+    // values too long to share a clause get one each
+    clauses = QueryUtils.buildTermsClauses("identity",
+        Arrays.asList("a b c d", "e f g h"), 25);
+    assertEquals(Lists.newArrayList("identity:(a\\ b\\ c\\ d)",
+        "identity:(e\\ f\\ g\\ h)"), clauses);
+  }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+public class RequestRetrierTest {
+
+  @Test
+  public void testRetry() {
+    RequestRetrier retrier = new RequestRetrier(3, 0, 0, false, new Random());
+    final AtomicInteger calls = new AtomicInteger();
+    String result = retrier.call("test", new Callable<String>() {
+      @Override
+      public String call() {
+        switch (calls.incrementAndGet()) {
+          case 1:
+            throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+          case 2:
+            throw new ResourceAccessException("reset",
+                new IOException("Connection reset"));
+          default:
+            return "page";
+        }
+      }
+    }, false);
+    assertEquals("page", result);
+    assertEquals(3, calls.get());
+  }
+
+  @Test
+  public void testGiveUp() {
+    RequestRetrier retrier = new RequestRetrier(2, 0, 0, false, new Random());
+    final AtomicInteger calls = new AtomicInteger();
+    Callable<String> failing = new Callable<String>() {
+      @Override
+      public String call() {
+        calls.incrementAndGet();
+        throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+      }
+    };
+    try {
+      retrier.call("test", failing, false);
+      fail();
+    } catch (HttpServerErrorException e) {
+      assertEquals(3, calls.get());
+    }
+  }
+
+  @Test
+  public void testNoRetryOnClientError() {
+    RequestRetrier retrier = new RequestRetrier(3, 0, 0, false, new Random());
+    final AtomicInteger calls = new AtomicInteger();
+    try {
+      retrier.call("test", new Callable<String>() {
+        @Override
+        public String call() {
+          calls.incrementAndGet();
+          throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        }
+      }, false);
+      fail();
+    } catch (HttpClientErrorException e) {
+      assertEquals(1, calls.get());
+    }
+    assertTrue(RequestRetrier.isRetriable(
+        new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+    assertFalse(RequestRetrier.isRetriable(new IllegalStateException()));
+    assertFalse(RequestRetrier.isRetriable(new RuntimeException(
+        new JsonMappingException("No serializer found"))));
+  }
+
+  @Test
+  public void testBackoff() {
+    RequestRetrier retrier = new RequestRetrier(10, 100, 1000, false,
+        new Random(42));
+    long max = 0;
+    for (int i = 0; i < 100; i++) {
+      long wait = retrier.backoff(0);
+      assertTrue(wait >= 0 && wait < 100);
+      max = Math.max(max, retrier.backoff(3));
+      assertTrue(retrier.backoff(40) < 1000);
+    }
+    // up to 800 for the 4th retry
+    assertTrue(max > 100 && max < 800);
+  }
+
+  @Test
+  public void testHedging() throws Exception {
+    RequestRetrier retrier = new RequestRetrier(0, 0, 0, true, new Random());
+    final AtomicInteger calls = new AtomicInteger();
+    final CountDownLatch stuck = new CountDownLatch(1);
+    Callable<String> request = new Callable<String>() {
+      @Override
+      public String call() throws InterruptedException {
+        if (calls.incrementAndGet() == RequestRetrier.MIN_HEDGE_SAMPLES + 1) {
+          stuck.await();
+          return "slow";
+        }
+        return "fast";
+      }
+    };
+    for (int i = 0; i < RequestRetrier.MIN_HEDGE_SAMPLES; i++) {
+      assertEquals("fast", retrier.call("test", request, true));
+    }
+    assertTrue(retrier.getHedgeDelayNanos() >= 0);
+
+    long start = System.nanoTime();
+    assertEquals("fast", retrier.call("test", request, true));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertEquals(RequestRetrier.MIN_HEDGE_SAMPLES + 2, calls.get());
+
+    stuck.countDown();
+    retrier.close();
+  }
+}
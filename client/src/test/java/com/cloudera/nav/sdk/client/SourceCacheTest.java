@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.model.Source;
+import com.cloudera.nav.sdk.model.SourceType;
+import com.google.common.base.Ticker;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class SourceCacheTest {
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Test
+  public void testSnapshotLookups() {
+    SourceCache cache = new SourceCache(loader(null), 0);
+    SourceCache.Snapshot snapshot = cache.get();
+    assertEquals(2, snapshot.getAllSources().size());
+    assertEquals("hdfs1",
+        snapshot.getSourceForUrl("hdfs://host:8020").getIdentity());
+    assertEquals("hive1", Iterables.getOnlyElement(
+        snapshot.getSourcesForType(SourceType.HIVE)).getIdentity());
+    assertNull(snapshot.getSourcesForType(SourceType.PIG));
+    assertSame(snapshot, cache.get());
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testSingleFlight() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final SourceCache cache = new SourceCache(loader(release), 0);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<SourceCache.Snapshot>> results = Lists.newArrayList();
+    for (int i = 0; i < 8; i++) {
+      results.add(executor.submit(new Callable<SourceCache.Snapshot>() {
+        @Override
+        public SourceCache.Snapshot call() {
+          return cache.get();
+        }
+      }));
+    }
+    // give every caller a chance to join the load in progress
+    Thread.sleep(200);
+    release.countDown();
+    SourceCache.Snapshot first = results.get(0).get(5, TimeUnit.SECONDS);
+    for (Future<SourceCache.Snapshot> result : results) {
+      assertSame(first, result.get(5, TimeUnit.SECONDS));
+    }
+    executor.shutdown();
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void testRefreshAndExpiry() throws Exception {
+    final AtomicLong now = new AtomicLong();
+    Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return now.get();
+      }
+    };
+    SourceCache cache = new SourceCache(loader(null), 1000, ticker);
+    SourceCache.Snapshot first = cache.get();
+
+    now.set(TimeUnit.MILLISECONDS.toNanos(500));
+    assertSame(first, cache.get());
+    assertEquals(1, loads.get());
+
+    // refreshed in the background while the old snapshot is still served
+    now.set(TimeUnit.MILLISECONDS.toNanos(800));
+    assertSame(first, cache.get());
+    for (int i = 0; i < 100 && cache.get() == first; i++) {
+      Thread.sleep(20);
+    }
+    SourceCache.Snapshot second = cache.get();
+    assertNotSame(first, second);
+    assertEquals(2, loads.get());
+
+    // expired snapshots are reloaded before returning
+    now.set(TimeUnit.MILLISECONDS.toNanos(2000));
+    assertNotSame(second, cache.get());
+    assertEquals(3, loads.get());
+  }
+
+  @Test
+  public void testInvalidateWhileExpiring() {
+    final AtomicLong now = new AtomicLong();
+    final AtomicBoolean invalidate = new AtomicBoolean();
+    final SourceCache[] cache = new SourceCache[1];
+    Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        // invalidated after get() found the snapshot expired
+        if (invalidate.getAndSet(false)) {
+          cache[0].invalidate();
+        }
+        return now.get();
+      }
+    };
+    cache[0] = new SourceCache(loader(null), 1000, ticker);
+    SourceCache.Snapshot first = cache[0].get();
+    now.set(TimeUnit.MILLISECONDS.toNanos(2000));
+    invalidate.set(true);
+    SourceCache.Snapshot second = cache[0].get();
+    assertNotNull(second);
+    assertNotSame(first, second);
+    assertEquals(2, loads.get());
+  }
+
+  private Callable<Collection<Source>> loader(final CountDownLatch release) {
+    return new Callable<Collection<Source>>() {
+      @Override
+      public Collection<Source> call() throws Exception {
+        loads.incrementAndGet();
+        if (release != null) {
+          release.await();
+        }
+        return Lists.newArrayList(
+            new Source("hdfs", SourceType.HDFS, "cluster1", "hdfs://host:8020",
+                "hdfs1", 10L),
+            new Source("hive", SourceType.HIVE, "cluster1",
+                "thrift://host:9083", "hive1", 10L));
+      }
+    };
+  }
+}
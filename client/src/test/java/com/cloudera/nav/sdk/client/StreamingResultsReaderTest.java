@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.*;
+
+public class StreamingResultsReaderTest {
+
+  @Test
+  public void testReadResults() {
+    StreamingResultsReader reader = newReader("{\"cursorMark\":\"next\"," +
+        "\"results\":[{\"identity\":\"a\",\"tags\":[\"x\"]},{\"identity\":" +
+        "\"b\",\"properties\":{\"k\":\"v\"}}]}");
+    List<Map<String, Object>> results = Lists.newArrayList(reader);
+    assertEquals(2, results.size());
+    assertEquals("a", results.get(0).get("identity"));
+    assertEquals(Lists.newArrayList("x"), results.get(0).get("tags"));
+    assertEquals(ImmutableMap.of("k", "v"), results.get(1).get("properties"));
+    assertEquals("next", reader.getCursorMark());
+    assertEquals(2, reader.getCount());
+  }
+
+  @Test
+  public void testCursorMarkAfterResults() {
+    StreamingResultsReader reader = newReader("{\"entities\":[{\"identity\":" +
+        "\"a\"}],\"other\":{\"nested\":[1,2]},\"cursorMark\":\"next\"}");
+    assertTrue(reader.hasNext());
+    assertNull(reader.getCursorMark());
+    assertEquals("a", reader.next().get("identity"));
+    assertFalse(reader.hasNext());
+    assertEquals("next", reader.getCursorMark());
+  }
+
+  @Test
+  public void testEmptyResults() {
+    StreamingResultsReader reader = newReader(
+        "{\"cursorMark\":\"same\",\"results\":[]}");
+    assertFalse(reader.hasNext());
+    assertEquals("same", reader.getCursorMark());
+    assertEquals(0, reader.getCount());
+  }
+
+  private StreamingResultsReader newReader(String json) {
+    return new StreamingResultsReader(
+        new ByteArrayInputStream(json.getBytes()));
+  }
+}
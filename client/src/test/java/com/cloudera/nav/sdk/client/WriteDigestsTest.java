@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.client.writer.MClassWrapper;
+import com.cloudera.nav.sdk.client.writer.WriterContext;
+import com.cloudera.nav.sdk.model.SourceType;
+import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.entities.EntityType;
+import com.cloudera.nav.sdk.model.entities.HdfsEntity;
+import com.cloudera.nav.sdk.model.relations.ParentChildRelation;
+import com.cloudera.nav.sdk.model.relations.RelationIdGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WriteDigestsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final String URL = "http://navigator:7187";
+
+  private ClientConfig config;
+
+  @Before
+  public void setUp() {
+    config = new ClientConfig();
+    config.setNamespace("test");
+  }
+
+  @Test
+  public void testRemoveUnchanged() {
+    WriteDigests digests = new WriteDigests(
+        WriterContext.forConfig(config).getWriter(), null, URL, "test");
+    HdfsEntity parent = newEntity("parent");
+    HdfsEntity child = newEntity("child");
+    List<MClassWrapper> graphs = ImmutableList.of(newGraph(parent, child));
+    assertEquals(2, Iterables.getOnlyElement(
+        digests.removeUnchanged(graphs)).getEntities().size());
+    digests.record(graphs.get(0));
+    assertEquals(3, digests.size());
+    assertTrue(digests.removeUnchanged(graphs).isEmpty());
+
+    // the order of custom properties does not matter
+    parent.setProperties(ImmutableMap.of("a", "1", "b", "2"));
+    digests.record(newGraph(parent, child));
+    parent.setProperties(ImmutableMap.of("b", "2", "a", "1"));
+    assertTrue(digests.removeUnchanged(graphs).isEmpty());
+
+    child.setDescription("changed");
+    MClassWrapper changed = Iterables.getOnlyElement(
+        digests.removeUnchanged(graphs));
+    assertEquals(child, Iterables.getOnlyElement(changed.getEntities()));
+    assertTrue(changed.getRelations().isEmpty());
+  }
+
+  @Test
+  public void testSave() {
+    File file = new File(folder.getRoot(), "digests/writes.json");
+    ObjectWriter writer = WriterContext.forConfig(config).getWriter();
+    WriteDigests digests = new WriteDigests(writer, file, URL, "test");
+    HdfsEntity entity = newEntity("foo");
+    List<MClassWrapper> graphs = ImmutableList.of(newGraph(entity));
+    digests.record(graphs.get(0));
+    digests.save();
+
+    digests = new WriteDigests(writer, file, URL, "test");
+    assertEquals(1, digests.size());
+    assertTrue(digests.removeUnchanged(graphs).isEmpty());
+
+    // other servers and namespaces keep their own digests in the same file
+    WriteDigests other = new WriteDigests(writer, file, URL, "other");
+    assertEquals(0, other.size());
+    other.record(newGraph(newEntity("bar"), newEntity("baz")));
+    other.save();
+    assertEquals(0, new WriteDigests(writer, file, "http://other:7187",
+        "test").size());
+    assertEquals(1, new WriteDigests(writer, file, URL, "test").size());
+    assertEquals(3, new WriteDigests(writer, file, URL, "other").size());
+    assertEquals(1, file.getParentFile().list().length);
+  }
+
+  private HdfsEntity newEntity(String identity) {
+    HdfsEntity entity = new HdfsEntity();
+    entity.setIdentity(identity);
+    entity.setSourceType(SourceType.HDFS);
+    entity.setEntityType(EntityType.DIRECTORY);
+    return entity;
+  }
+
+  private MClassWrapper newGraph(Entity... entities) {
+    MClassWrapper graph = new MClassWrapper();
+    for (Entity entity : entities) {
+      graph.addEntity(entity);
+    }
+    if (entities.length > 1) {
+      graph.addRelation(ParentChildRelation.builder()
+          .parent(entities[0]).child(entities[1])
+          .idGenerator(new RelationIdGenerator()).namespace("test").build());
+    }
+    return graph;
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.client.writer.MClassWrapper;
+import com.cloudera.nav.sdk.client.writer.WriteSplitter;
+import com.cloudera.nav.sdk.model.SourceType;
+import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.entities.EntityType;
+import com.cloudera.nav.sdk.model.entities.HdfsEntity;
+import com.cloudera.nav.sdk.model.relations.ParentChildRelation;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.cloudera.nav.sdk.model.relations.RelationIdGenerator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteSplitterTest {
+
+  private ClientConfig config;
+
+  @Before
+  public void setUp() {
+    config = new ClientConfig();
+    config.setNamespace("test");
+    config.setApiVersion(9);
+  }
+
+  @Test
+  public void testSingleGraph() {
+    List<MClassWrapper> graphs = new WriteSplitter(config).split(
+        ImmutableList.<Entity>of(prepExec("JobName")),
+        Collections.<Relation>emptyList());
+    MClassWrapper graph = Iterables.getOnlyElement(graphs);
+    assertEquals(2, graph.getEntities().size());
+    assertEquals(3, graph.getRelations().size());
+  }
+
+  @Test
+  public void testSplitBySize() {
+    config.setWriteBatchSize(2);
+    Entity exec = prepExec("JobName");
+    // the operation is also reachable from the execution
+    List<MClassWrapper> graphs = new WriteSplitter(config).split(
+        ImmutableList.of(exec, ((CustomOperationExecution) exec).getTemplate()),
+        Collections.<Relation>emptyList());
+    assertEquals(3, graphs.size());
+    Set<String> written = Sets.newHashSet();
+    int entities = 0;
+    int relations = 0;
+    for (MClassWrapper graph : graphs) {
+      assertTrue(graph.getEntities().size() +
+          graph.getRelations().size() <= 2);
+      for (Entity entity : graph.getEntities()) {
+        written.add(entity.getIdentity());
+      }
+      for (Relation relation : graph.getRelations()) {
+        // endpoints are written in the same or an earlier request
+        assertEndpointsWritten(relation.getEp1Ids(), written);
+        assertEndpointsWritten(relation.getEp2Ids(), written);
+      }
+      entities += graph.getEntities().size();
+      relations += graph.getRelations().size();
+    }
+    assertEquals(2, entities);
+    assertEquals(3, relations);
+  }
+
+  @Test
+  public void testKeepComponentsTogether() {
+    config.setWriteBatchSize(6);
+    List<MClassWrapper> graphs = new WriteSplitter(config).split(
+        ImmutableList.<Entity>of(prepExec("job1"), prepExec("job2")),
+        Collections.<Relation>emptyList());
+    // 5 objects each, the second execution does not fit in the first request
+    assertEquals(2, graphs.size());
+    for (MClassWrapper graph : graphs) {
+      assertEquals(2, graph.getEntities().size());
+      assertEquals(3, graph.getRelations().size());
+    }
+  }
+
+  @Test
+  public void testSplitByBytes() {
+    config.setWriteBatchMaxBytes(1);
+    List<MClassWrapper> graphs = new WriteSplitter(config).split(
+        ImmutableList.<Entity>of(newHdfsEntity("/user/a"),
+            newHdfsEntity("/user/b")),
+        Collections.<Relation>emptyList());
+    assertEquals(2, graphs.size());
+  }
+
+  @Test
+  public void testCoalesceSplitRelations() {
+    config.setWriteBatchSize(50);
+    config.setCoalesceRelations(true);
+    JsonMetadataWriterTest.ChainEntity parent =
+        new JsonMetadataWriterTest.ChainEntity("parent");
+    parent.setParent(JsonMetadataWriterTest.ChainEntity.ROOT);
+    List<Entity> children = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      JsonMetadataWriterTest.ChainEntity child =
+          new JsonMetadataWriterTest.ChainEntity("child" + i);
+      child.setParent(parent);
+      children.add(child);
+    }
+    // could be merged with the implied relations of the parent
+    Relation explicit = ParentChildRelation.builder()
+        .parent(parent).child(JsonMetadataWriterTest.ChainEntity.ROOT)
+        .idGenerator(new RelationIdGenerator()).namespace("test").build();
+    List<MClassWrapper> graphs = new WriteSplitter(config).split(children,
+        ImmutableList.of(explicit));
+    assertTrue(graphs.size() > 1);
+    Set<String> written = Sets.newHashSet();
+    Set<String> children2 = Sets.newHashSet();
+    for (MClassWrapper graph : graphs) {
+      for (Entity entity : graph.getEntities()) {
+        written.add(entity.getIdentity());
+      }
+      int merged = 0;
+      for (Relation relation : graph.getRelations()) {
+        if (relation.getIdentity().equals(explicit.getIdentity())) {
+          continue;
+        }
+        assertEndpointsWritten(relation.getEp2Ids(), written);
+        if (relation.getEp1Ids().equals(ImmutableList.of("parent"))) {
+          merged++;
+          Iterables.addAll(children2, relation.getEp2Ids());
+        }
+      }
+      // the children of each request share one relation
+      assertEquals(1, merged);
+    }
+    assertEquals(100, children2.size());
+    // explicit relations are never merged
+    assertTrue(Iterables.getLast(graphs).getRelations().contains(explicit));
+  }
+
+  private void assertEndpointsWritten(Iterable<String> ids,
+                                      Set<String> written) {
+    for (String id : ids) {
+      // the pig operation and execution are proxies for existing entities
+      if (!id.startsWith("pig")) {
+        assertTrue(written.contains(id));
+      }
+    }
+  }
+
+  private HdfsEntity newHdfsEntity(String path) {
+    HdfsEntity entity = new HdfsEntity(path, EntityType.FILE, "hdfs1");
+    entity.setNamespace("test");
+    return entity;
+  }
+
+  private Entity prepExec(String jobName) {
+    CustomOperation op = new CustomOperation();
+    op.setName(jobName);
+    op.setPigOperationId("pigOperationId");
+    op.setScript("LOAD data; DoStuff(data)");
+    op.setNamespace("test");
+    op.setSourceId("sourceId");
+    op.setOwner("owner");
+    op.setIdentity(op.generateId());
+    CustomOperationExecution exec = new CustomOperationExecution();
+    exec.setPigExecutionId("pigExecId");
+    exec.setTemplate(op);
+    exec.setNamespace("test");
+    exec.setSourceId("sourceId");
+    exec.setSourceType(SourceType.SDK);
+    return exec;
+  }
+}
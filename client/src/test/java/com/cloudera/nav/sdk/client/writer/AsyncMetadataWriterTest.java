@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.*;
+
+import com.cloudera.nav.sdk.client.ClientConfig;
+import com.cloudera.nav.sdk.model.entities.Entity;
+import com.cloudera.nav.sdk.model.entities.HdfsEntity;
+import com.cloudera.nav.sdk.model.relations.Relation;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.mockito.*;
+import org.mockito.runners.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AsyncMetadataWriterTest {
+
+  private MetadataWriter mockWriter;
+  private MetadataWriterFactory mockFactory;
+  private ResultSet resultSet;
+  private ClientConfig config;
+  @Captor
+  private ArgumentCaptor<Collection<Entity>> captor;
+
+  @Before
+  public void setUp() {
+    mockWriter = mock(MetadataWriter.class);
+    mockFactory = mock(MetadataWriterFactory.class);
+    doReturn(mockWriter).when(mockFactory).newWriter();
+    resultSet = new ResultSet(null, null);
+    doReturn(resultSet).when(mockWriter).getLastResultSet();
+    config = new ClientConfig();
+    config.setAsyncWriteBatchSize(3);
+    config.setAsyncWriteFlushIntervalMillis(60000);
+  }
+
+  @Test
+  public void testBatchBySize() throws Exception {
+    AsyncMetadataWriter writer = new AsyncMetadataWriter(config, mockFactory);
+    ListenableFuture<ResultSet> first = writer.write(newEntity("a"));
+    ListenableFuture<ResultSet> second = writer.write(
+        ImmutableList.of(newEntity("b"), newEntity("c")));
+    assertSame(resultSet, first.get());
+    assertSame(resultSet, second.get());
+    verify(mockWriter).write(captor.capture(),
+        anyCollectionOf(Relation.class));
+    assertEquals(3, captor.getValue().size());
+    verify(mockWriter).flush();
+    verify(mockWriter).close();
+    writer.close();
+    verify(mockFactory, times(1)).newWriter();
+  }
+
+  @Test
+  public void testFlush() throws Exception {
+    AsyncMetadataWriter writer = new AsyncMetadataWriter(config, mockFactory);
+    ListenableFuture<ResultSet> future = writer.write(newEntity("a"));
+    writer.flush();
+    assertTrue(future.isDone());
+    assertSame(resultSet, future.get());
+    writer.close();
+  }
+
+  @Test
+  public void testFlushInterval() throws Exception {
+    config.setAsyncWriteFlushIntervalMillis(10);
+    AsyncMetadataWriter writer = new AsyncMetadataWriter(config, mockFactory);
+    assertSame(resultSet, writer.write(newEntity("a")).get());
+    writer.close();
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    doThrow(new IllegalStateException("failed")).when(mockWriter).flush();
+    AsyncMetadataWriter writer = new AsyncMetadataWriter(config, mockFactory);
+    ListenableFuture<ResultSet> future = writer.write(newEntity("a"));
+    writer.close();
+    try {
+      future.get();
+      fail("Expected write failure");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    verify(mockWriter).close();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testWriteAfterClose() {
+    AsyncMetadataWriter writer = new AsyncMetadataWriter(config, mockFactory);
+    writer.close();
+    writer.write(newEntity("a"));
+  }
+
+  private Entity newEntity(String id) {
+    HdfsEntity entity = new HdfsEntity();
+    entity.setIdentity(id);
+    return entity;
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.client.writer;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FingerprintSetTest {
+
+  @Test
+  public void testAddAcrossResizes() {
+    FingerprintSet set = new FingerprintSet(4);
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(set.add("id" + i));
+    }
+    for (int i = 0; i < 10000; i++) {
+      assertFalse(set.add("id" + i));
+    }
+    assertEquals(10000, set.size());
+    assertTrue(set.add(""));
+    assertFalse(set.add(""));
+    assertEquals(10001, set.size());
+  }
+}
@@ -19,6 +19,9 @@ package com.cloudera.nav.sdk.client.writer.registry;
 import com.cloudera.nav.sdk.model.SourceType;
 import com.cloudera.nav.sdk.model.entities.EntityType;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
 
 import org.junit.*;
 
@@ -49,6 +52,20 @@ public class MClassRegistryTest {
     registry.validateRequiredMProperties(mclassObj);
   }
 
+  @Test
+  public void testPropertyValues() {
+    Map<String, Object> values = Maps.newHashMap();
+    for (MPropertyEntry prop : registry.getProperties(MetadataClass.class)) {
+      values.put(prop.getAttribute(), prop.getValue(mclassObj));
+    }
+    Assert.assertEquals(ImmutableList.of("foo", "bar"), values.get("coll"));
+    Assert.assertEquals(5, values.get("intField"));
+    Assert.assertEquals(10L, values.get("longField"));
+    Assert.assertEquals("foo", values.get("strField"));
+    Assert.assertTrue(values.containsKey("optional"));
+    Assert.assertNull(values.get("optional"));
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testBadColl() {
     mclassObj.setColl(null);
@@ -440,42 +440,34 @@ public class QueryExtraction {
 
     // Collect MR operations so that we can collect the elapsed time.
     if (sourceType.equals("hive")) {
-      collectElapsedTimes(extractor, opExecs);
+      collectElapsedTimes(client, opExecs);
     }
 
     // Collect operation Ids.
     Map<String, Operation> operations = Maps.newHashMap();
 
     int index = 0;
-    Iterable<List<String>> partitions = Iterables.partition
-        (opExecs.keySet(), 10000);
-    for(List<String> partition : partitions) {
-      LOG.info("Processed {} operation executions", index);
-
-      String entityIds = Joiner.on(",").join(partition);
-      String relationsQuery = "type:INSTANCE_OF AND {!terms f=endpoint2Ids}" + entityIds + ",dummy";
-      resultSet = extractor.extractMetadata(null, null, null, relationsQuery);
-      iterator = resultSet.getRelations().iterator();
-      while(iterator.hasNext()) {
-        Map<String, Object> obj = iterator.next();
-        @SuppressWarnings("unchecked")
-        Map<String, Object> template = (Map<String, Object>) obj.get("template");
-        String opId = (String) template.get("entityId");
-        @SuppressWarnings("unchecked")
-        Map<String, Object> instances = (Map<String, Object>) obj.get("instances");
-        @SuppressWarnings("unchecked")
-        List<String> execIds = (List<String>) instances.get("entityIds");
-
-        Operation operation = operations.get(opId);
-        if (operation == null) {
-          operation = new Operation(opId);
-          operations.put(opId, operation);
-        }
-        operation.addOperationInstances(execIds, opExecs);
-
-        index++;
+    for (Map<String, Object> obj : client.getRelationsByEndpoint(
+        "type:INSTANCE_OF", "endpoint2Ids", opExecs.keySet()).toMap()
+        .values()) {
+      @SuppressWarnings("unchecked")
+      Map<String, Object> template = (Map<String, Object>) obj.get("template");
+      String opId = (String) template.get("entityId");
+      @SuppressWarnings("unchecked")
+      Map<String, Object> instances = (Map<String, Object>) obj.get("instances");
+      @SuppressWarnings("unchecked")
+      List<String> execIds = (List<String>) instances.get("entityIds");
+
+      Operation operation = operations.get(opId);
+      if (operation == null) {
+        operation = new Operation(opId);
+        operations.put(opId, operation);
       }
+      operation.addOperationInstances(execIds, opExecs);
+
+      index++;
     }
+    LOG.info("Processed {} operation executions", index);
 
     for (Operation operation : operations.values()) {
       operation.computeDurations();
@@ -483,24 +475,15 @@ public class QueryExtraction {
 
     index = 0;
     LOG.info("Obtained {} operations", operations.size());
-    partitions = Iterables.partition(operations.keySet(), 10000);
-    for(List<String> partition : partitions) {
-      LOG.info("Processed {} operations", index);
-
-      // Get the operation Ids now.
-      String entityIds = Joiner.on(",").join(partition);
-      entityQuery = "{!terms f=identity}" + entityIds + ",dummy";
-      resultSet = extractor.extractMetadata(null, null, entityQuery, null);
-      iterator = resultSet.getEntities().iterator();
-      while(iterator.hasNext()) {
-        Map<String, Object> obj = iterator.next();
-        String queryText = (String) obj.get("queryText");
-        String identity = (String) obj.get("identity");
-
-        Operation operation = operations.get(identity);
-        operation.queryText = queryText;
-        index++;
-      }
+    // Get the operation Ids now.
+    for (Map<String, Object> obj :
+        client.getEntities(operations.keySet()).toMap().values()) {
+      String queryText = (String) obj.get("queryText");
+      String identity = (String) obj.get("identity");
+
+      Operation operation = operations.get(identity);
+      operation.queryText = queryText;
+      index++;
     }
     LOG.info("Total Processed {} operations", index);
 
@@ -522,7 +505,7 @@ public class QueryExtraction {
   }
 
   @SuppressWarnings({ "unused", "unchecked" })
-  private static void collectElapsedTimes(MetadataExtractor extractor,
+  private static void collectElapsedTimes(NavApiCient client,
                                           Map<String, OperationExecution> opExecs) {
     LOG.info("Processing elapsed times");
 
@@ -530,54 +513,35 @@ public class QueryExtraction {
     Map<String, OperationExecution> mrIdToOpExecs = Maps.newHashMap();
 
     int index = 0;
-    Iterable<List<String>> partitions = Iterables.partition
-        (opExecs.keySet(), 10000);
-    for(List<String> partition : partitions) {
-      LOG.info("Processed {} operation executions", index);
-
-      String entityIds = Joiner.on(",").join(partition);
-      String relationsQuery = "type:LOGICAL_PHYSICAL AND {!terms f=endpoint1Ids}" + entityIds + ",dummy";
-
-      MetadataResultSet resultSet = extractor.extractMetadata(null, null,
-          null, relationsQuery);
-      MetadataResultIterator iterator = resultSet.getRelations().iterator();
-      while(iterator.hasNext()) {
-        Map<String, Object> relation = iterator.next();
-        Map<String, Object> ep1 = (Map<String, Object>) relation.get("logical");
-        String opExecId = (String) ep1.get("entityId");
-
-        Map<String, Object> ep2 = (Map<String, Object>) relation.get("physical");
-        List<String> mrExecIds = (List<String>) ep2.get("entityIds");
-
-        for(String mrId : mrExecIds) {
-          mrIdToOpExecs.put(mrId, opExecs.get(opExecId));
-        }
-        index++;
+    for (Map<String, Object> relation : client.getRelationsByEndpoint(
+        "type:LOGICAL_PHYSICAL", "endpoint1Ids", opExecs.keySet()).toMap()
+        .values()) {
+      Map<String, Object> ep1 = (Map<String, Object>) relation.get("logical");
+      String opExecId = (String) ep1.get("entityId");
+
+      Map<String, Object> ep2 = (Map<String, Object>) relation.get("physical");
+      List<String> mrExecIds = (List<String>) ep2.get("entityIds");
+
+      for(String mrId : mrExecIds) {
+        mrIdToOpExecs.put(mrId, opExecs.get(opExecId));
       }
+      index++;
     }
+    LOG.info("Processed {} operation executions", index);
 
     LOG.info("Obtained {} MR job executions", mrIdToOpExecs.size());
 
     index = 0;
     // Now collect all the entities for these MRIds.
-    partitions = Iterables.partition(mrIdToOpExecs.keySet(), 10000);
-    for(List<String> partition : partitions) {
-      LOG.info("Processed {} Mr job executions", index);
-
-      String entityIds = Joiner.on(",").join(partition);
-      String entitisQuery = "{!terms f=identity}" + entityIds + ",dummy";
-      MetadataResultSet resultSet = extractor.extractMetadata(null, null,
-          entitisQuery, null);
-      MetadataResultIterator iterator = resultSet.getEntities().iterator();
-      while(iterator.hasNext()) {
-        Map<String, Object> mrJobExec = iterator.next();
-        String mrId = (String) mrJobExec.get("identity");
-
-        OperationExecution opExecution = mrIdToOpExecs.get(mrId);
-        opExecution.addMrJob(mrJobExec);
-        index++;
-      }
+    for (Map<String, Object> mrJobExec :
+        client.getEntities(mrIdToOpExecs.keySet()).toMap().values()) {
+      String mrId = (String) mrJobExec.get("identity");
+
+      OperationExecution opExecution = mrIdToOpExecs.get(mrId);
+      opExecution.addMrJob(mrJobExec);
+      index++;
     }
+    LOG.info("Processed {} MR job executions", index);
 
     for(OperationExecution operationExecution : opExecs.values()) {
       operationExecution.computeDuration();
@@ -16,6 +16,7 @@
 package com.cloudera.nav.sdk.examples.lineage3;
 
 import com.cloudera.nav.sdk.client.ClientConfig;
+import com.cloudera.nav.sdk.client.ConcurrencyLimiter;
 import com.cloudera.nav.sdk.client.MetadataQuery;
 import com.cloudera.nav.sdk.client.NavApiCient;
 import com.cloudera.nav.sdk.client.NavigatorPlugin;
@@ -34,6 +35,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
@@ -41,6 +43,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
@@ -142,10 +145,19 @@ public class LineageExport {
   @SuppressWarnings("unchecked")
   private void fetchAndWriteLineage(Set<String> entityIds, FileWriter fw,
                                     ClientConfig config) throws IOException {
-    HttpURLConnection connection = createHttpConnection(config, entityIds);
+    ConcurrencyLimiter limiter = ConcurrencyLimiter.forConfig(config);
+    limiter.acquire();
+    long start = System.nanoTime();
+    HttpURLConnection connection = null;
 
     try {
+      connection = createHttpConnection(config, entityIds);
       InputStream stream = connection.getInputStream();
+      limiter.release(System.nanoTime() - start, false);
+      start = -1;
+      if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+        stream = new GZIPInputStream(stream);
+      }
 
       ObjectMapper mapper = new ObjectMapper();
       mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
@@ -169,8 +181,24 @@ public class LineageExport {
         }
       }
     } catch (IOException ioe) {
+      if (start >= 0) {
+        boolean overloaded = ioe instanceof SocketTimeoutException;
+        if (!overloaded && connection != null) {
+          try {
+            overloaded = ConcurrencyLimiter.isOverloadStatus(
+                connection.getResponseCode());
+          } catch (IOException e) {
+            // no response to inspect
+          }
+        }
+        limiter.release(System.nanoTime() - start, overloaded);
+        start = -1;
+      }
       Throwables.propagate(ioe);
     } finally {
+      if (start >= 0) {
+        limiter.release(System.nanoTime() - start, false);
+      }
       IOUtils.close(connection);
     }
   }
@@ -206,6 +234,9 @@ public class LineageExport {
     conn.addRequestProperty("Authorization", basicAuth);
     conn.addRequestProperty("Content-Type", "application/json");
     conn.addRequestProperty("Accept", "application/json");
+    if (config.isResponseCompression()) {
+      conn.addRequestProperty("Accept-Encoding", "gzip");
+    }
     conn.setReadTimeout(0);
     conn.setRequestMethod("POST");
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.model;
+
+import java.util.List;
+
+/**
+ * The @MProperty and @MRelation fields of an @MClass class and their
+ * getters, generated at compile time by the annotation processor in
+ * navigator-sdk-processor. MClassUtil uses the descriptor of a class instead
+ * of discovering its properties through bean introspection when it is
+ * present.
+ *
+ * The descriptor of class com.example.Foo is com.example.Foo_MClassDescriptor
+ * and must have a public no argument constructor.
+ */
+public interface MClassDescriptor {
+
+  String SUFFIX = "_MClassDescriptor";
+
+  /**
+   * @param annotationName name of the annotation class, e.g. MProperty
+   * @return the fields of the class and its superclasses that have the
+   *         given annotation
+   */
+  List<Property> getProperties(String annotationName);
+
+  /**
+   * Calls a getter directly, without reflection
+   */
+  interface Accessor {
+    Object get(Object target);
+  }
+
+  /**
+   * An annotated field, the name of its getter and, if the getter can be
+   * called from the descriptor, an accessor that calls it
+   */
+  class Property {
+
+    private final String declaringClass;
+    private final String field;
+    private final String getter;
+    private final Accessor accessor;
+
+    /**
+     * @param declaringClass binary name of the class that declares the field
+     * @param field field name
+     * @param getter name of the public getter of the field
+     */
+    public Property(String declaringClass, String field, String getter) {
+      this(declaringClass, field, getter, null);
+    }
+
+    /**
+     * @param accessor calls the getter on instances of the class that
+     *                 declares the getter, may be null
+     */
+    public Property(String declaringClass, String field, String getter,
+                    Accessor accessor) {
+      this.declaringClass = declaringClass;
+      this.field = field;
+      this.getter = getter;
+      this.accessor = accessor;
+    }
+
+    public String getDeclaringClass() {
+      return declaringClass;
+    }
+
+    public String getField() {
+      return field;
+    }
+
+    public String getGetter() {
+      return getter;
+    }
+
+    public Accessor getAccessor() {
+      return accessor;
+    }
+  }
+}
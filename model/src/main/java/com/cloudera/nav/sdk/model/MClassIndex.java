@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.model;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Sets;
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Set;
+
+/**
+ * Reads the index of @MClass classes written by the annotation processor in
+ * navigator-sdk-processor. Every jar or class directory compiled with the
+ * processor contains a {@link #RESOURCE} file that lists the binary names of
+ * its @MClass classes, one per line.
+ */
+public class MClassIndex {
+
+  public static final String RESOURCE = "META-INF/navigator-sdk/mclasses";
+
+  /**
+   * @param packageName package to look in, including its subpackages
+   * @param loader class loader to find the index files and classes with
+   * @return the indexed @MClass classes in the package, empty if none of
+   *         them were compiled with the annotation processor
+   */
+  public static Collection<Class<?>> getClasses(String packageName,
+                                                ClassLoader loader) {
+    String prefix = packageName + ".";
+    Set<Class<?>> classes = Sets.newLinkedHashSet();
+    try {
+      Enumeration<URL> resources = loader.getResources(RESOURCE);
+      while (resources.hasMoreElements()) {
+        for (String line : Resources.readLines(resources.nextElement(),
+            Charsets.UTF_8)) {
+          String name = line.trim();
+          if (name.startsWith(prefix)) {
+            classes.add(loadClass(name, loader));
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    classes.remove(null);
+    return classes;
+  }
+
+  /**
+   * @param loader class loader to find the index files with
+   * @return the class path roots that have an index, as URLs of their root
+   *         directory, e.g. "file:/app/classes/" or
+   *         "jar:file:/app/lib/models.jar!/"
+   */
+  public static Set<String> getIndexedRoots(ClassLoader loader) {
+    Set<String> roots = Sets.newHashSet();
+    try {
+      Enumeration<URL> resources = loader.getResources(RESOURCE);
+      while (resources.hasMoreElements()) {
+        String url = resources.nextElement().toExternalForm();
+        if (url.endsWith(RESOURCE)) {
+          roots.add(url.substring(0, url.length() - RESOURCE.length()));
+        }
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    return roots;
+  }
+
+  private static Class<?> loadClass(String name, ClassLoader loader) {
+    try {
+      return Class.forName(name, false, loader);
+    } catch (ClassNotFoundException e) {
+      // left behind by an incremental build after the class was removed
+      return null;
+    }
+  }
+}
@@ -29,13 +29,20 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utilities for retrieving @MProperty and @MRelation fields
- * and matching them with getters
+ * and matching them with getters. Classes compiled with the annotation
+ * processor in navigator-sdk-processor are looked up in their generated
+ * {@link MClassDescriptor}, others through bean introspection.
  */
 public class MClassUtil {
 
+  // generated accessors of the getters found in descriptors
+  private static final ConcurrentMap<Method, MClassDescriptor.Accessor>
+      ACCESSORS = Maps.newConcurrentMap();
+
   /**
    * @param mclass the metadata object class
    * @param annClass the annotation class
@@ -43,6 +50,10 @@ public class MClassUtil {
    */
   public static Map<Field, Method> getAnnotatedProperties(
       Class<?> mclass, Class<? extends Annotation> annClass) {
+    MClassDescriptor descriptor = getDescriptor(mclass);
+    if (descriptor != null) {
+      return getDescribedProperties(mclass, descriptor, annClass);
+    }
     Map<String, Method> getters = Maps.newHashMap();
     try {
       for (PropertyDescriptor pd : Introspector.getBeanInfo(mclass)
@@ -62,6 +73,54 @@ public class MClassUtil {
     return properties;
   }
 
+  /**
+   * @param getter a getter returned by getAnnotatedProperties
+   * @return accessor generated at compile time that calls the getter
+   *         directly, or null if there is none
+   */
+  public static MClassDescriptor.Accessor getAccessor(Method getter) {
+    return ACCESSORS.get(getter);
+  }
+
+  /**
+   * @param mclass the metadata object class
+   * @return the descriptor generated for the class at compile time, or null
+   *         if it was not compiled with the annotation processor
+   */
+  public static MClassDescriptor getDescriptor(Class<?> mclass) {
+    try {
+      return Class.forName(mclass.getName() + MClassDescriptor.SUFFIX, true,
+          mclass.getClassLoader()).asSubclass(MClassDescriptor.class)
+          .getDeclaredConstructor().newInstance();
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (ReflectiveOperationException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private static Map<Field, Method> getDescribedProperties(
+      Class<?> mclass, MClassDescriptor descriptor,
+      Class<? extends Annotation> annClass) {
+    Map<Field, Method> properties = Maps.newHashMap();
+    try {
+      for (MClassDescriptor.Property property :
+          descriptor.getProperties(annClass.getName())) {
+        Class<?> declaringClass = Class.forName(property.getDeclaringClass(),
+            false, mclass.getClassLoader());
+        Method getter = mclass.getMethod(property.getGetter());
+        properties.put(declaringClass.getDeclaredField(property.getField()),
+            getter);
+        if (property.getAccessor() != null) {
+          ACCESSORS.putIfAbsent(getter, property.getAccessor());
+        }
+      }
+    } catch (ReflectiveOperationException e) {
+      throw Throwables.propagate(e);
+    }
+    return properties;
+  }
+
   private static Collection<Field> getValidFields(
       Class<?> mclass, Class<? extends Annotation> annClass) {
     Collection<Field> fields = Lists.newLinkedList();
@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.processor;
+
+import com.cloudera.nav.sdk.model.MClassDescriptor;
+import com.cloudera.nav.sdk.model.MClassIndex;
+import com.cloudera.nav.sdk.model.annotations.MClass;
+import com.cloudera.nav.sdk.model.annotations.MProperty;
+import com.cloudera.nav.sdk.model.annotations.MRelation;
+
+import java.beans.Introspector;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates a {@link MClassDescriptor} for every @MClass class being
+ * compiled, so that its @MProperty and @MRelation fields and their getters
+ * are known without bean introspection at runtime, and an
+ * {@link MClassIndex} of the @MClass classes, so that models can be found
+ * without scanning the classpath.
+ *
+ * Getters are matched to fields the way java.beans.Introspector does. A
+ * class with an annotated field that has no getter gets no descriptor and a
+ * warning, and fails at runtime as it would without the processor. Getters
+ * of classes that the descriptor can refer to are also given an accessor
+ * that calls them directly, so that their values are read without
+ * reflection.
+ */
+@SupportedAnnotationTypes("com.cloudera.nav.sdk.model.annotations.MClass")
+public class MClassProcessor extends AbstractProcessor {
+
+  private static final List<String> ANNOTATIONS = Arrays.asList(
+      MProperty.class.getName(), MRelation.class.getName());
+
+  // binary names of the @MClass classes compiled so far
+  private final Set<String> indexed = new TreeSet<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations,
+                         RoundEnvironment roundEnv) {
+    for (Element element : roundEnv.getElementsAnnotatedWith(MClass.class)) {
+      if (element.getKind() == ElementKind.CLASS) {
+        TypeElement type = (TypeElement) element;
+        indexed.add(binaryName(type));
+        writeDescriptor(type);
+      }
+    }
+    if (roundEnv.processingOver() && !indexed.isEmpty()) {
+      writeIndex();
+    }
+    return false;
+  }
+
+  private void writeDescriptor(TypeElement type) {
+    List<List<String[]>> properties = new ArrayList<>();
+    for (String annotation : ANNOTATIONS) {
+      List<String[]> annotated = getAnnotatedFields(type, annotation);
+      if (annotated == null) {
+        return;
+      }
+      properties.add(annotated);
+    }
+
+    String packageName = getPackage(type).getQualifiedName().toString();
+    String binaryName = binaryName(type);
+    String simpleName = (packageName.isEmpty() ? binaryName :
+        binaryName.substring(packageName.length() + 1)) +
+        MClassDescriptor.SUFFIX;
+    try (Writer out = processingEnv.getFiler().createSourceFile(
+        (packageName.isEmpty() ? "" : packageName + ".") + simpleName, type)
+        .openWriter();
+         PrintWriter pw = new PrintWriter(out)) {
+      pw.println("// Generated by " + getClass().getName() + ", do not edit");
+      if (!packageName.isEmpty()) {
+        pw.println("package " + packageName + ";");
+        pw.println();
+      }
+      pw.println("import " + MClassDescriptor.class.getCanonicalName() + ";");
+      pw.println();
+      pw.println("import java.util.Arrays;");
+      pw.println("import java.util.Collections;");
+      pw.println("import java.util.List;");
+      pw.println();
+      pw.println("public final class " + simpleName +
+          " implements MClassDescriptor {");
+      for (int i = 0; i < ANNOTATIONS.size(); i++) {
+        pw.println();
+        writeList(pw, fieldsConstant(i), properties.get(i));
+      }
+      pw.println();
+      pw.println("  @Override");
+      pw.println("  public List<Property> getProperties(" +
+          "String annotationName) {");
+      for (int i = 0; i < ANNOTATIONS.size(); i++) {
+        pw.println("    if (" + literal(ANNOTATIONS.get(i)) +
+            ".equals(annotationName)) {");
+        pw.println("      return " + fieldsConstant(i) + ";");
+        pw.println("    }");
+      }
+      pw.println("    return Collections.emptyList();");
+      pw.println("  }");
+      pw.println("}");
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+          "Could not write descriptor: " + e, type);
+    }
+  }
+
+  private static String fieldsConstant(int annotation) {
+    String name = ANNOTATIONS.get(annotation);
+    return name.substring(name.lastIndexOf('.') + 1).toUpperCase() +
+        "_FIELDS";
+  }
+
+  private static void writeList(PrintWriter pw, String name,
+                                List<String[]> properties) {
+    if (properties.isEmpty()) {
+      pw.println("  private static final List<Property> " + name + " =");
+      pw.println("      Collections.emptyList();");
+      return;
+    }
+    pw.println("  private static final List<Property> " + name +
+        " = Arrays.asList(");
+    for (int i = 0; i < properties.size(); i++) {
+      String[] p = properties.get(i);
+      String end = i < properties.size() - 1 ? "," : ");";
+      if (p[3] == null) {
+        pw.println("      new Property(" + literal(p[0]) + ", " +
+            literal(p[1]) + ", " + literal(p[2]) + ")" + end);
+        continue;
+      }
+      pw.println("      new Property(" + literal(p[0]) + ", " +
+          literal(p[1]) + ", " + literal(p[2]) + ", new Accessor() {");
+      pw.println("        @Override");
+      pw.println("        public Object get(Object target) {");
+      pw.println("          return ((" + p[3] + ") target)." + p[2] + "();");
+      pw.println("        }");
+      pw.println("      })" + end);
+    }
+  }
+
+  /**
+   * @return declaring class, field and getter names of the fields of the
+   *         type and its superclasses with the given annotation and the
+   *         type to cast to to call the getter, null if it cannot be called
+   *         from the descriptor, or null if one of the fields has no getter
+   */
+  private List<String[]> getAnnotatedFields(TypeElement type,
+                                            String annotation) {
+    List<String[]> fields = new ArrayList<>();
+    for (TypeElement current = type; current != null;
+         current = getSuperclass(current)) {
+      for (Element field : ElementFilter.fieldsIn(
+          current.getEnclosedElements())) {
+        if (!hasAnnotation(field, annotation)) {
+          continue;
+        }
+        String fieldName = field.getSimpleName().toString();
+        ExecutableElement getter = findGetter(type, fieldName);
+        if (getter == null) {
+          processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+              "No getter method found for " + fieldName + ", " +
+                  type.getQualifiedName() + " is introspected at runtime",
+              field);
+          return null;
+        }
+        fields.add(new String[] {binaryName(current), fieldName,
+            getter.getSimpleName().toString(),
+            castType((TypeElement) getter.getEnclosingElement(),
+                getPackage(type))});
+      }
+    }
+    return fields;
+  }
+
+  private static boolean hasAnnotation(Element element, String annotation) {
+    for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+      TypeElement annotationType =
+          (TypeElement) mirror.getAnnotationType().asElement();
+      if (annotationType.getQualifiedName().contentEquals(annotation)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the type to cast to to call a getter declared in the given type
+   *         from the given package, or null if the type is not accessible
+   *         there
+   */
+  private static String castType(TypeElement owner, PackageElement from) {
+    for (Element current = owner; current.getKind() != ElementKind.PACKAGE;
+         current = current.getEnclosingElement()) {
+      if (!current.getKind().isClass() && !current.getKind().isInterface()) {
+        // local and anonymous classes cannot be named
+        return null;
+      }
+      Set<Modifier> modifiers = current.getModifiers();
+      if (modifiers.contains(Modifier.PRIVATE) ||
+          (!modifiers.contains(Modifier.PUBLIC) &&
+              !getPackage(current).equals(from))) {
+        return null;
+      }
+    }
+    StringBuilder name = new StringBuilder(owner.getQualifiedName());
+    int typeParameters = owner.getTypeParameters().size();
+    if (typeParameters > 0) {
+      name.append('<');
+      for (int i = 0; i < typeParameters; i++) {
+        name.append(i > 0 ? ", ?" : "?");
+      }
+      name.append('>');
+    }
+    return name.toString();
+  }
+
+  /**
+   * @return the public getter that Introspector would find for the given
+   *         property of the type, or null if there is none
+   */
+  private ExecutableElement findGetter(TypeElement type, String property) {
+    for (ExecutableElement method : ElementFilter.methodsIn(
+        processingEnv.getElementUtils().getAllMembers(type))) {
+      if (!method.getModifiers().contains(Modifier.PUBLIC) ||
+          method.getModifiers().contains(Modifier.STATIC) ||
+          !method.getParameters().isEmpty()) {
+        continue;
+      }
+      String name = method.getSimpleName().toString();
+      TypeMirror returnType = method.getReturnType();
+      String suffix;
+      if (name.startsWith("get") && returnType.getKind() != TypeKind.VOID) {
+        suffix = name.substring(3);
+      } else if (name.startsWith("is") &&
+          returnType.getKind() == TypeKind.BOOLEAN) {
+        suffix = name.substring(2);
+      } else {
+        continue;
+      }
+      if (!suffix.isEmpty() &&
+          Introspector.decapitalize(suffix).equals(property)) {
+        return method;
+      }
+    }
+    return null;
+  }
+
+  private static TypeElement getSuperclass(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    return superclass.getKind() == TypeKind.DECLARED ?
+        (TypeElement) ((DeclaredType) superclass).asElement() : null;
+  }
+
+  private static PackageElement getPackage(Element element) {
+    while (element.getKind() != ElementKind.PACKAGE) {
+      element = element.getEnclosingElement();
+    }
+    return (PackageElement) element;
+  }
+
+  private String binaryName(TypeElement type) {
+    return processingEnv.getElementUtils().getBinaryName(type).toString();
+  }
+
+  private static String literal(String value) {
+    return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+
+  private void writeIndex() {
+    // an incremental build only compiles some of the classes, keep the ones
+    // indexed before that still exist
+    try {
+      FileObject previous = processingEnv.getFiler().getResource(
+          StandardLocation.CLASS_OUTPUT, "", MClassIndex.RESOURCE);
+      try (BufferedReader in = new BufferedReader(
+          previous.openReader(true))) {
+        String line;
+        while ((line = in.readLine()) != null) {
+          String name = line.trim();
+          TypeElement type = processingEnv.getElementUtils()
+              .getTypeElement(name.replace('$', '.'));
+          if (type != null && type.getAnnotation(MClass.class) != null) {
+            indexed.add(name);
+          }
+        }
+      }
+    } catch (IOException e) {
+      // no previous index
+    }
+    try {
+      FileObject index = processingEnv.getFiler().createResource(
+          StandardLocation.CLASS_OUTPUT, "", MClassIndex.RESOURCE);
+      try (Writer out = index.openWriter()) {
+        for (String name : indexed) {
+          out.write(name);
+          out.write('\n');
+        }
+      }
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+          "Could not write " + MClassIndex.RESOURCE + ": " + e);
+    }
+  }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2015 Cloudera, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cloudera.nav.sdk.processor;
+
+import static org.junit.Assert.*;
+
+import com.cloudera.nav.sdk.model.MClassDescriptor;
+import com.cloudera.nav.sdk.model.MClassIndex;
+import com.cloudera.nav.sdk.model.MClassUtil;
+import com.cloudera.nav.sdk.model.annotations.MProperty;
+import com.cloudera.nav.sdk.model.annotations.MRelation;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MClassProcessorTest {
+
+  private static final String WIDGET = Joiner.on('\n').join(
+      "package test.models;",
+      "import com.cloudera.nav.sdk.model.annotations.*;",
+      "import com.cloudera.nav.sdk.model.entities.*;",
+      "import com.cloudera.nav.sdk.model.relations.RelationRole;",
+      "@MClass(model = \"widget\")",
+      "public class Widget extends Entity {",
+      "  @MProperty(required = true) private String color;",
+      "  @MProperty private boolean shiny;",
+      "  @MProperty(attribute = \"url\") private String URL;",
+      "  @MRelation(role = RelationRole.CHILD) private Entity part;",
+      "  public String getColor() { return color; }",
+      "  public boolean isShiny() { return shiny; }",
+      "  public String getURL() { return URL; }",
+      "  public Entity getPart() { return part; }",
+      "  public String generateId() { return color; }",
+      "  @MClass(model = \"gadget\")",
+      "  public static class Gadget extends Widget {",
+      "    @MProperty private String size;",
+      "    public String getSize() { return size; }",
+      "  }",
+      "}");
+
+  private static final String BROKEN = Joiner.on('\n').join(
+      "package test.models.broken;",
+      "import com.cloudera.nav.sdk.model.annotations.*;",
+      "import com.cloudera.nav.sdk.model.entities.Entity;",
+      "@MClass(model = \"broken\")",
+      "public class NoGetter extends Entity {",
+      "  @MProperty private String hidden;",
+      "  public String generateId() { return hidden; }",
+      "}");
+
+  private File dir;
+
+  @Before
+  public void setUp() {
+    dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    delete(dir);
+  }
+
+  @Test
+  public void testGeneratedDescriptors() throws Exception {
+    DiagnosticCollector<JavaFileObject> diagnostics = compile(
+        "test/models/Widget.java", WIDGET,
+        "test/models/broken/NoGetter.java", BROKEN);
+    assertEquals(1, diagnostics.getDiagnostics().size());
+    assertTrue(diagnostics.getDiagnostics().get(0).getMessage(null)
+        .contains("No getter method found for hidden"));
+
+    try (URLClassLoader loader = new URLClassLoader(
+        new URL[] {new File(dir, "classes").toURI().toURL()},
+        getClass().getClassLoader())) {
+      Class<?> widget = loader.loadClass("test.models.Widget");
+      Class<?> gadget = loader.loadClass("test.models.Widget$Gadget");
+      Class<?> noGetter = loader.loadClass("test.models.broken.NoGetter");
+      assertNotNull(MClassUtil.getDescriptor(widget));
+      assertNotNull(MClassUtil.getDescriptor(gadget));
+      assertNull(MClassUtil.getDescriptor(noGetter));
+
+      // same as found through introspection, inherited fields included
+      Map<String, String> properties = getterNames(
+          MClassUtil.getAnnotatedProperties(gadget, MProperty.class));
+      assertEquals("getSize", properties.get("size"));
+      assertEquals("getColor", properties.get("color"));
+      assertEquals("isShiny", properties.get("shiny"));
+      assertEquals("getURL", properties.get("URL"));
+      assertEquals("getIdentity", properties.get("identity"));
+      List<MClassDescriptor.Property> declared = MClassUtil.getDescriptor(
+          gadget).getProperties(MProperty.class.getName());
+      assertEquals(properties.size(), declared.size());
+
+      // getters are called through the generated accessors
+      for (MClassDescriptor.Property property : declared) {
+        assertNotNull(property.getField(), property.getAccessor());
+      }
+      Object instance = gadget.newInstance();
+      Field size = gadget.getDeclaredField("size");
+      size.setAccessible(true);
+      size.set(instance, "small");
+      MClassDescriptor.Accessor accessor =
+          MClassUtil.getAccessor(gadget.getMethod("getSize"));
+      assertNotNull(accessor);
+      assertEquals("small", accessor.get(instance));
+      assertEquals(Collections.singletonMap("part", "getPart"), getterNames(
+          MClassUtil.getAnnotatedProperties(widget, MRelation.class)));
+
+      Collection<Class<?>> models = MClassIndex.getClasses("test", loader);
+      assertEquals(Arrays.asList(widget, gadget, noGetter),
+          Lists.newArrayList(models));
+      assertEquals(Collections.singletonList(noGetter), Lists.newArrayList(
+          MClassIndex.getClasses("test.models.broken", loader)));
+      assertTrue(MClassIndex.getClasses("other", loader).isEmpty());
+      assertTrue(MClassIndex.getIndexedRoots(loader).contains(
+          new File(dir, "classes").toURI().toURL().toExternalForm()));
+    }
+  }
+
+  @Test
+  public void testIncrementalIndex() throws Exception {
+    compile("test/models/Widget.java", WIDGET,
+        "test/models/broken/NoGetter.java", BROKEN);
+    // recompile one class, the other is still on the class path
+    compile("test/models/broken/NoGetter.java", BROKEN);
+    List<String> index = Files.readLines(
+        new File(dir, "classes/" + MClassIndex.RESOURCE), Charsets.UTF_8);
+    assertEquals(Arrays.asList("test.models.Widget", "test.models.Widget$Gadget",
+        "test.models.broken.NoGetter"), index);
+  }
+
+  private DiagnosticCollector<JavaFileObject> compile(String... sources)
+      throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    DiagnosticCollector<JavaFileObject> diagnostics =
+        new DiagnosticCollector<>();
+    File src = new File(dir, "src");
+    File classes = new File(dir, "classes");
+    classes.mkdirs();
+    List<File> files = Lists.newArrayList();
+    for (int i = 0; i < sources.length; i += 2) {
+      File file = new File(src, sources[i]);
+      Files.createParentDirs(file);
+      Files.write(sources[i + 1], file, Charsets.UTF_8);
+      files.add(file);
+    }
+    String classPath = System.getProperty("surefire.test.class.path",
+        System.getProperty("java.class.path")) + File.pathSeparator + classes;
+    try (StandardJavaFileManager fileManager =
+             compiler.getStandardFileManager(null, null, Charsets.UTF_8)) {
+      JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager,
+          diagnostics, Arrays.asList("-classpath", classPath,
+              "-d", classes.getPath(), "-s", src.getPath(), "-proc:only"),
+          null, fileManager.getJavaFileObjectsFromFiles(files));
+      task.setProcessors(Collections.singleton(new MClassProcessor()));
+      assertTrue(diagnostics.getDiagnostics().toString(), task.call());
+    }
+    // compile the sources and generated descriptors without the processor
+    try (StandardJavaFileManager fileManager =
+             compiler.getStandardFileManager(null, null, Charsets.UTF_8)) {
+      List<File> all = Lists.newArrayList();
+      addSources(src, all);
+      DiagnosticCollector<JavaFileObject> errors = new DiagnosticCollector<>();
+      StringWriter out = new StringWriter();
+      JavaCompiler.CompilationTask task = compiler.getTask(out, fileManager,
+          errors, Arrays.asList("-classpath", classPath,
+              "-d", classes.getPath(), "-proc:none"),
+          null, fileManager.getJavaFileObjectsFromFiles(all));
+      assertTrue(errors.getDiagnostics().toString() + out, task.call());
+    }
+    return diagnostics;
+  }
+
+  private static void addSources(File dir, List<File> sources) {
+    for (File file : dir.listFiles()) {
+      if (file.isDirectory()) {
+        addSources(file, sources);
+      } else if (file.getName().endsWith(".java")) {
+        sources.add(file);
+      }
+    }
+  }
+
+  private static Map<String, String> getterNames(Map<Field, Method> map) {
+    Map<String, String> names = Maps.newHashMap();
+    for (Map.Entry<Field, Method> entry : map.entrySet()) {
+      names.put(entry.getKey().getName(), entry.getValue().getName());
+    }
+    return names;
+  }
+
+  private static void delete(File file) throws IOException {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    java.nio.file.Files.deleteIfExists(file.toPath());
+  }
+}